@@ -0,0 +1,58 @@
+package com.tuppari;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Clock;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the date formatting used to stamp every request.
+ * <p/>
+ * {@code sameSecond} hits the per-second cache of {@link DateUtil},
+ * {@code newSecond} formats a different second on every call.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DateUtilBenchmark {
+
+    private final Date date = new Date(1350000000000L);
+
+    private final Clock clock = Clock.systemUTC();
+
+    private long epochMillis = 1350000000000L;
+
+    @Benchmark
+    public String formatAsISO8601_sameSecond() {
+        return DateUtil.formatAsISO8601(date);
+    }
+
+    @Benchmark
+    public String formatAsISO8601_newSecond() {
+        epochMillis += 1000;
+        return DateUtil.formatAsISO8601(new Date(epochMillis));
+    }
+
+    @Benchmark
+    public String formatAsRFC3339_sameSecond() {
+        return DateUtil.formatAsRFC3339(date);
+    }
+
+    @Benchmark
+    public RequestDate now() {
+        return DateUtil.now(clock);
+    }
+
+}
@@ -0,0 +1,152 @@
+package com.tuppari;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end publish benchmark against an in-process HTTP endpoint on the loopback interface.
+ * <p/>
+ * It measures encoding, signing and the HTTP round trip of {@link TuppariChannel#send(String, String)};
+ * the endpoint answers every request with a fixed JSON response without verifying the signature.
+ * TCP_NODELAY is enabled on the endpoint so that Nagle's algorithm does not add delayed-ACK stalls
+ * to every round trip. {@code publishEvent} measures the fire-and-confirm path of {@link EventPublisher},
+ * which encodes into pooled direct buffers when {@code bufferPool} is true; narrow the parameters with
+ * {@code -p transport=http2 -p bufferPool=true}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dsun.net.httpserver.nodelay=true")
+@State(Scope.Benchmark)
+public class PublishBenchmark {
+
+    private static final byte[] RESPONSE = "{\"applicationId\":\"appId\",\"channel\":\"channel\",\"event\":\"event\",\"message\":\"ok\"}".getBytes(StandardCharsets.UTF_8);
+
+    @Param({"64", "4096"})
+    public int messageSize;
+
+    @Param({"jersey", "http2"})
+    public String transport;
+
+    @Param({"false", "true"})
+    public boolean bufferPool;
+
+    private HttpServer server;
+
+    private ExecutorService serverExecutor;
+
+    private TuppariClient client;
+
+    private TuppariChannel channel;
+
+    private EventPublisher eventPublisher;
+
+    private String message;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        server.createContext("/messages", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                drain(exchange.getRequestBody());
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, RESPONSE.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(RESPONSE);
+                out.close();
+            }
+        });
+        serverExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        server.setExecutor(serverExecutor);
+        server.start();
+
+        client = new TuppariClient("appId", "accessKeyId", "secretKey", URI.create("http://127.0.0.1:" + server.getAddress().getPort()));
+        if ("http2".equals(transport)) {
+            client.setTransport(new HttpClientTransport());
+        }
+        if (bufferPool) {
+            client.setBufferPool(new ByteBufferPool());
+        }
+        channel = client.join("channel");
+        eventPublisher = channel.event("event");
+
+        char[] chars = new char[messageSize];
+        Arrays.fill(chars, 'm');
+        message = new String(chars);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        client.close();
+        if ("http2".equals(transport)) {
+            client.getTransport().close();
+        }
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Benchmark
+    public Map<String, String> send() {
+        return channel.send("event", message);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Map<String, String> send_8threads() {
+        return channel.send("event", message);
+    }
+
+    @Benchmark
+    public PublishResult sendAsync() {
+        return channel.sendAsync("event", message).join();
+    }
+
+    @Benchmark
+    public void publishEvent() {
+        eventPublisher.publish(message);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void publishEvent_8threads() {
+        eventPublisher.publish(message);
+    }
+
+    private static void drain(InputStream in) throws IOException {
+        byte[] buf = new byte[8192];
+        while (in.read(buf) != -1) {
+            // discard
+        }
+        in.close();
+    }
+
+}
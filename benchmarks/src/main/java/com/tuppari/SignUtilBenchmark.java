@@ -0,0 +1,146 @@
+package com.tuppari;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.URI;
+import java.time.Clock;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of each stage of the signing pipeline, from the canonical request
+ * to the complete signed request config.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SignUtilBenchmark {
+
+    private static final String SECRET_KEY = "secretKey1234567890abcdefghijklmnopqrstu";
+
+    @Param({"4", "16"})
+    public int headerCount;
+
+    @Param({"none", "short", "long"})
+    public String query;
+
+    @Param({"64", "1024", "16384"})
+    public int bodySize;
+
+    private final Date requestDate = new Date(1350000000000L);
+
+    private final Signer signer = new Signer(SECRET_KEY);
+
+    private final Clock clock = Clock.systemUTC();
+
+    private final URI uri = URI.create("http://api.tuppari.com/messages");
+
+    private String queryString;
+
+    private Map<String, String> headers;
+
+    private Map<String, Object> body;
+
+    private byte[] encodedBody;
+
+    private String canonicalRequest;
+
+    private String stringToSign;
+
+    @Setup
+    public void setup() {
+        if ("short".equals(query)) {
+            queryString = "a=1&b=2";
+        } else if ("long".equals(query)) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 32; i > 0; --i) {
+                if (sb.length() > 0) {
+                    sb.append('&');
+                }
+                sb.append("param").append(i).append("=value%20").append(i);
+            }
+            queryString = sb.toString();
+        } else {
+            queryString = null;
+        }
+
+        headers = new HashMap<String, String>();
+        headers.put("Host", "api.tuppari.com");
+        headers.put("Content-Type", "application/json");
+        headers.put("X-Tuppari-Date", "Thu, 01 Jan 1970 00:00:00 GMT");
+        headers.put("X-Tuppari-Operation", "PublishMessage");
+        for (int i = headers.size(); i < headerCount; ++i) {
+            headers.put("X-Custom-Header-" + i, "value " + i);
+        }
+
+        char[] message = new char[bodySize];
+        Arrays.fill(message, 'm');
+        body = new LinkedHashMap<String, Object>();
+        body.put("applicationId", "appId");
+        body.put("channel", "channel");
+        body.put("event", "event");
+        body.put("message", new String(message));
+        encodedBody = SignUtil.encodeBody(body);
+
+        canonicalRequest = SignUtil.createCanonicalRequest("POST", "/messages", queryString, headers, encodedBody);
+        stringToSign = SignUtil.createStringToSign(canonicalRequest, requestDate);
+    }
+
+    @Benchmark
+    public byte[] encodeBody() {
+        return SignUtil.encodeBody(body);
+    }
+
+    @Benchmark
+    public String canonicalRequest() {
+        return SignUtil.createCanonicalRequest("POST", "/messages", queryString, headers, encodedBody);
+    }
+
+    @Benchmark
+    public String canonicalRequestDigest() {
+        return CanonicalRequestDigester.digest("POST", "/messages", queryString, headers, encodedBody);
+    }
+
+    @Benchmark
+    public String stringToSign() {
+        return SignUtil.createStringToSign(canonicalRequest, requestDate);
+    }
+
+    @Benchmark
+    public String signature() {
+        return SignUtil.createSignature(SECRET_KEY, stringToSign, requestDate, "api.tuppari.com");
+    }
+
+    @Benchmark
+    public String authorizationHeader() {
+        return SignUtil.createAuthorizationHeader("POST", "api.tuppari.com", "/messages", queryString, headers, encodedBody, requestDate, "accessKeyId", signer);
+    }
+
+    @Benchmark
+    public String authorizationHeader_fromMap() {
+        return SignUtil.createAuthorizationHeader("POST", "api.tuppari.com", "/messages", queryString, headers, body, requestDate, "accessKeyId", SECRET_KEY);
+    }
+
+    @Benchmark
+    public Map<String, Object> signedRequestConfig() {
+        return SignUtil.createSignedRequestConfig("POST", uri, "PublishMessage", encodedBody, "accessKeyId", signer, clock);
+    }
+
+}
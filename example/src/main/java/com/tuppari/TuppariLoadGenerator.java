@@ -0,0 +1,376 @@
+package com.tuppari;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Multi-threaded load generator publishing to Tuppari.
+ * <p/>
+ * With --rate the load is open-loop: messages are scheduled at a fixed interval and the latency is
+ * measured from the scheduled start, so a stalled server is not hidden by the generator slowing down
+ * (coordinated omission). The service time, measured from the actual start, is reported alongside.
+ * Without --rate the load is closed-loop: each thread publishes again as soon as the previous publish
+ * completes.
+ * <pre>
+ * Usage: java com.tuppari.TuppariLoadGenerator [options]
+ *   --url=URL[,URL...]      Target URL, or URLs of several nodes (default: https://api.tuppari.com)
+ *   --app=ID --key=ID --secret=KEY
+ *                           Application id, access key id and access secret key
+ *   --stub                  Start an in-process stub server and publish to it
+ *   --stub-latency=MIN-MAX  Latency of the stub in milliseconds (default: 0-0)
+ *   --stub-error-rate=RATE  Fraction of requests the stub fails with 503 (default: 0)
+ *   --rate=N                Target messages per second, open-loop (default: closed-loop)
+ *   --threads=N             Publisher threads, the maximum concurrency (default: 16)
+ *   --virtual-threads       Run the publisher threads as virtual threads (Java 21 or later)
+ *   --transport=NAME        jersey (pooled HTTP/1.1) or http2 (JDK HttpClient) (default: jersey)
+ *   --duration=SECONDS      Measured duration (default: 30)
+ *   --warmup=SECONDS        Unmeasured warm up before the measurement (default: 5)
+ *   --channels=N            Number of channels to spread messages over (default: 1)
+ *   --events=N              Number of event names per channel (default: 1)
+ *   --message-size=BYTES    Size of each message (default: 64)
+ *   --confirm-only          Check only the response status instead of decoding the response
+ *   --gzip-threshold=BYTES  Gzip request bodies of at least this size (default: 0, disabled)
+ * </pre>
+ */
+public class TuppariLoadGenerator {
+
+    private static final String USAGE = "Usage: java com.tuppari.TuppariLoadGenerator [--url=URL[,URL...]] [--app=ID --key=ID --secret=KEY] [--stub] "
+            + "[--stub-latency=MIN-MAX] [--stub-error-rate=RATE] [--rate=N] [--threads=N] [--virtual-threads] [--transport=jersey|http2] [--duration=SECONDS] [--warmup=SECONDS] "
+            + "[--channels=N] [--events=N] [--message-size=BYTES] [--confirm-only] [--gzip-threshold=BYTES]";
+
+    private static final String DEFAULT_TARGET_URL = "https://api.tuppari.com";
+
+    private final TuppariChannel[] channels;
+
+    private final String[] events;
+
+    private final String message;
+
+    private final int threads;
+
+    private final boolean confirmOnly;
+
+    private final long intervalNanos;
+
+    private final LongAdder succeeded = new LongAdder();
+
+    private final Map<String, LongAdder> errors = new ConcurrentHashMap<String, LongAdder>();
+
+    private volatile LatencyHistogram latency = new LatencyHistogram();
+
+    private volatile LatencyHistogram serviceTime = new LatencyHistogram();
+
+    private volatile LatencyHistogram intervalLatency = new LatencyHistogram();
+
+    private volatile boolean running = true;
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final Executor executor;
+
+    private long startNanos;
+
+    TuppariLoadGenerator(TuppariChannel[] channels, String[] events, String message, int threads, double rate, boolean confirmOnly, Executor executor) {
+        this.executor = executor;
+        this.confirmOnly = confirmOnly;
+        this.channels = channels;
+        this.events = events;
+        this.message = message;
+        this.threads = threads;
+        this.intervalNanos = rate > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / rate) : 0;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+
+        String applicationId = option(options, "app", "appId");
+        String accessKeyId = option(options, "key", "accessKeyId");
+        String accessSecretKey = option(options, "secret", "secretKey");
+        int threads = Integer.parseInt(option(options, "threads", "16"));
+        double rate = Double.parseDouble(option(options, "rate", "0"));
+        int duration = Integer.parseInt(option(options, "duration", "30"));
+        int warmup = Integer.parseInt(option(options, "warmup", "5"));
+        int channelCount = Integer.parseInt(option(options, "channels", "1"));
+        int eventCount = Integer.parseInt(option(options, "events", "1"));
+        int messageSize = Integer.parseInt(option(options, "message-size", "64"));
+
+        boolean virtualThreads = options.containsKey("virtual-threads");
+        if (virtualThreads && !TuppariClient.isVirtualThreadSupported()) {
+            throw new IllegalArgumentException("--virtual-threads requires Java 21 or later");
+        }
+
+        TuppariStubServer stub = null;
+        List<URI> targetUris = new ArrayList<URI>();
+        if (options.containsKey("stub")) {
+            stub = startStub(options, accessKeyId, accessSecretKey);
+            targetUris.add(stub.getUri());
+        } else {
+            for (String url : option(options, "url", DEFAULT_TARGET_URL).split(",")) {
+                targetUris.add(URI.create(url.trim()));
+            }
+        }
+        String targetUri = targetUris.size() == 1 ? targetUris.get(0).toString() : targetUris.toString();
+
+        TuppariClient client = new TuppariClient(applicationId, accessKeyId, accessSecretKey, targetUris);
+        client.getTransportConfig().setMaxConnectionsPerHost(Math.max(threads, client.getTransportConfig().getMaxConnectionsPerHost()));
+        client.getTransportConfig().setMaxConnections(Math.max(threads, client.getTransportConfig().getMaxConnections()));
+        String transport = option(options, "transport", "jersey");
+        HttpClientTransport httpClientTransport = null;
+        if ("http2".equals(transport)) {
+            httpClientTransport = new HttpClientTransport(client.getTransportConfig());
+            client.setTransport(httpClientTransport);
+        } else if (!"jersey".equals(transport)) {
+            throw new IllegalArgumentException("--transport must be jersey or http2");
+        }
+        client.setCompressionThreshold(Integer.parseInt(option(options, "gzip-threshold", "0")));
+        PublishMetrics metrics = new PublishMetrics();
+        client.setMetrics(metrics);
+        if (virtualThreads) {
+            client.setVirtualThreads(true);
+        }
+
+        TuppariChannel[] channels = new TuppariChannel[channelCount];
+        for (int i = 0; i < channelCount; ++i) {
+            channels[i] = client.join("load-channel-" + i);
+        }
+        String[] events = new String[eventCount];
+        for (int i = 0; i < eventCount; ++i) {
+            events[i] = "load-event-" + i;
+        }
+        char[] chars = new char[messageSize];
+        Arrays.fill(chars, 'x');
+
+        System.out.printf("Target %s, %s, %d %sthreads, %d channels, %d events, %d byte messages%n",
+                targetUri, rate > 0 ? String.format("open-loop at %.0f msg/s", rate) : "closed-loop", threads,
+                virtualThreads ? "virtual " : "", channelCount, eventCount, messageSize);
+
+        TuppariLoadGenerator generator = new TuppariLoadGenerator(channels, events, new String(chars), threads, rate,
+                options.containsKey("confirm-only"), virtualThreads ? client.getExecutor() : null);
+        try {
+            generator.run(warmup, duration);
+            System.out.println();
+            System.out.println("Client phases (us):");
+            MetricsSnapshot snapshot = metrics.snapshot();
+            for (PublishPhase phase : PublishPhase.values()) {
+                LatencyHistogram.Snapshot s = snapshot.getPhase(phase);
+                if (s.getCount() > 0) {
+                    System.out.printf("  %-16s %s%n", phase, micros(s));
+                }
+            }
+            if (client.getEndpoints().size() > 1) {
+                System.out.println("Nodes:");
+                for (Endpoint endpoint : client.getEndpoints()) {
+                    System.out.printf("  %-32s requests=%d, failures=%d, latency(us)=%d%s%n", endpoint.getUri(), endpoint.getRequestCount(),
+                            endpoint.getFailureCount(), toMicros(endpoint.getLatencyNanos()), endpoint.isEjected() ? ", ejected" : "");
+                }
+            }
+        } finally {
+            if (httpClientTransport != null) {
+                httpClientTransport.close();
+            }
+            client.close();
+            if (stub != null) {
+                System.out.printf("Stub: received=%d, accepted=%d, rejected=%d, injected errors=%d%n",
+                        stub.getRequestCount(), stub.getAcceptedCount(), stub.getRejectedCount(), stub.getInjectedErrorCount());
+                stub.close();
+            }
+        }
+    }
+
+    void run(int warmupSeconds, int durationSeconds) throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(threads);
+        startNanos = System.nanoTime();
+        for (int i = 0; i < threads; ++i) {
+            Runnable worker = new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        publishLoop();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            };
+            if (executor != null) {
+                executor.execute(worker);
+            } else {
+                Thread t = new Thread(worker, "tuppari-load-" + i);
+                t.setDaemon(true);
+                t.start();
+            }
+        }
+
+        if (warmupSeconds > 0) {
+            System.out.printf("Warming up for %d seconds%n", warmupSeconds);
+            Thread.sleep(TimeUnit.SECONDS.toMillis(warmupSeconds));
+        }
+        reset();
+
+        System.out.printf("%8s %10s %10s %10s %10s %10s%n", "time(s)", "msg/s", "errors", "p50(us)", "p99(us)", "max(us)");
+        long measureStart = System.nanoTime();
+        long lastSucceeded = 0;
+        long lastErrors = 0;
+        for (int second = 1; second <= durationSeconds; ++second) {
+            LockSupport.parkNanos(measureStart + TimeUnit.SECONDS.toNanos(second) - System.nanoTime());
+            long ok = succeeded.sum();
+            long failed = errorCount();
+            LatencyHistogram.Snapshot s = swapIntervalLatency().snapshot();
+            System.out.printf("%8d %10d %10d %10d %10d %10d%n", second, ok - lastSucceeded, failed - lastErrors,
+                    toMicros(s.getPercentile(0.5)), toMicros(s.getPercentile(0.99)), toMicros(s.getMax()));
+            lastSucceeded = ok;
+            lastErrors = failed;
+        }
+        double elapsedSeconds = (System.nanoTime() - measureStart) / 1e9;
+
+        running = false;
+        done.await(10, TimeUnit.SECONDS);
+
+        long ok = succeeded.sum();
+        long failed = errorCount();
+        System.out.println();
+        System.out.printf("Throughput: %.1f msg/s (%d succeeded, %d failed in %.1f s)%n", ok / elapsedSeconds, ok, failed, elapsedSeconds);
+        System.out.printf("Latency (us)%s: %s%n", intervalNanos > 0 ? ", from scheduled start" : "", micros(latency.snapshot()));
+        System.out.printf("Service time (us): %s%n", micros(serviceTime.snapshot()));
+        if (!errors.isEmpty()) {
+            System.out.println("Errors:");
+            for (Map.Entry<String, LongAdder> error : new TreeMap<String, LongAdder>(errors).entrySet()) {
+                System.out.printf("  %-40s %d%n", error.getKey(), error.getValue().sum());
+            }
+        }
+    }
+
+    private void publishLoop() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (running) {
+            long intended;
+            if (intervalNanos > 0) {
+                intended = startNanos + sequence.getAndIncrement() * intervalNanos;
+                long wait = intended - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                    if (!running) {
+                        return;
+                    }
+                }
+            } else {
+                intended = System.nanoTime();
+            }
+
+            long start = System.nanoTime();
+            TuppariChannel channel = channels[random.nextInt(channels.length)];
+            String event = events[random.nextInt(events.length)];
+            try {
+                if (confirmOnly) {
+                    channel.publish(event, message);
+                } else {
+                    channel.send(event, message);
+                }
+                long end = System.nanoTime();
+                latency.record(end - intended);
+                intervalLatency.record(end - intended);
+                serviceTime.record(end - start);
+                succeeded.increment();
+            } catch (TuppariException e) {
+                countError(e.getStatus() != 0 ? "HTTP " + e.getStatus() : "I/O " + rootCause(e).getClass().getName());
+            } catch (RuntimeException e) {
+                countError(e.getClass().getName());
+            }
+        }
+    }
+
+    private LatencyHistogram swapIntervalLatency() {
+        LatencyHistogram previous = intervalLatency;
+        intervalLatency = new LatencyHistogram();
+        return previous;
+    }
+
+    private void reset() {
+        latency = new LatencyHistogram();
+        serviceTime = new LatencyHistogram();
+        intervalLatency = new LatencyHistogram();
+        succeeded.reset();
+        errors.clear();
+    }
+
+    private void countError(String key) {
+        LongAdder counter = errors.get(key);
+        if (counter == null) {
+            LongAdder created = new LongAdder();
+            counter = errors.putIfAbsent(key, created);
+            if (counter == null) {
+                counter = created;
+            }
+        }
+        counter.increment();
+    }
+
+    private long errorCount() {
+        long n = 0;
+        for (LongAdder counter : errors.values()) {
+            n += counter.sum();
+        }
+        return n;
+    }
+
+    private static TuppariStubServer startStub(Map<String, String> options, String accessKeyId, String accessSecretKey) throws IOException {
+        TuppariStubServer stub = new TuppariStubServer();
+        stub.addCredentials(accessKeyId, accessSecretKey);
+        String[] latency = option(options, "stub-latency", "0-0").split("-");
+        stub.setLatency(Long.parseLong(latency[0]), Long.parseLong(latency[latency.length - 1]));
+        stub.setErrorInjection(Double.parseDouble(option(options, "stub-error-rate", "0")), 503);
+        return stub.start();
+    }
+
+    private static Throwable rootCause(Throwable t) {
+        while (t.getCause() != null && t.getCause() != t) {
+            t = t.getCause();
+        }
+        return t;
+    }
+
+    private static String micros(LatencyHistogram.Snapshot s) {
+        return String.format("count=%d, mean=%d, p50=%d, p90=%d, p99=%d, p999=%d, max=%d",
+                s.getCount(), toMicros((long) s.getMean()), toMicros(s.getPercentile(0.5)), toMicros(s.getPercentile(0.9)),
+                toMicros(s.getPercentile(0.99)), toMicros(s.getPercentile(0.999)), toMicros(s.getMax()));
+    }
+
+    private static long toMicros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<String, String>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException(USAGE);
+            }
+            int eq = arg.indexOf('=');
+            if (eq == -1) {
+                options.put(arg.substring(2), "true");
+            } else {
+                options.put(arg.substring(2, eq), arg.substring(eq + 1));
+            }
+        }
+        return options;
+    }
+
+    private static String option(Map<String, String> options, String name, String defaultValue) {
+        String value = options.get(name);
+        return value != null ? value : defaultValue;
+    }
+
+}
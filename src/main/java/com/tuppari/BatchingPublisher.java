@@ -0,0 +1,375 @@
+package com.tuppari;
+
+import net.arnx.jsonic.JSON;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publisher that groups messages per channel and sends each group as one signed request.
+ *
+ * Messages of a channel are collected until {@link #getMaxBatchSize()} messages are pending or
+ * {@link #getLingerMillis()} milliseconds have passed since the first pending message, whichever
+ * comes first. A group of one message is sent as a normal PublishMessage request; larger groups use
+ * the PublishMessages envelope:
+ *
+ * <pre>
+ * {
+ *   "applicationId": "...",
+ *   "channel": "...",
+ *   "messages": [ { "event": "...", "message": "..." }, ... ]
+ * }
+ * </pre>
+ *
+ * The envelope is an opt-in format: the server must support the PublishMessages operation.
+ * If the response has a "messages" array, each element is the result of the message at the same
+ * index; otherwise results are built from the published messages.
+ *
+ * Each request is an asynchronous publish of the client: it takes one permit of the rate limiters and counts
+ * against the in-flight limit. A batch sent while the client is at its in-flight limit is sent again once a slot
+ * may be free, so flushing more channels than the limit does not fail their messages.
+ * The pending messages of a channel are dropped once they are sent, so channels that are no longer
+ * published take no memory.
+ */
+public class BatchingPublisher implements Closeable {
+
+    static final int DEFAULT_MAX_BATCH_SIZE = 100;
+
+    static final long DEFAULT_LINGER_MILLIS = 10;
+
+    private final TuppariClient client;
+
+    private final int maxBatchSize;
+
+    private final long lingerMillis;
+
+    private final ConcurrentMap<String, Batch> batches = new ConcurrentHashMap<String, Batch>();
+
+    private final ScheduledExecutorService scheduler;
+
+    private volatile boolean flushOnClose = true;
+
+    private volatile boolean closed;
+
+    /**
+     * Construct with default batch size and linger time.
+     *
+     * @param client The client used to send requests
+     */
+    public BatchingPublisher(TuppariClient client) {
+        this(client, DEFAULT_MAX_BATCH_SIZE, DEFAULT_LINGER_MILLIS);
+    }
+
+    /**
+     * @param client       The client used to send requests
+     * @param maxBatchSize The maximum number of messages sent in one request
+     * @param lingerMillis The maximum time in milliseconds a message waits for other messages
+     */
+    public BatchingPublisher(TuppariClient client, int maxBatchSize, long lingerMillis) {
+        if (client == null) {
+            throw new IllegalArgumentException("client is null");
+        }
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("maxBatchSize must be positive");
+        }
+        if (lingerMillis < 0) {
+            throw new IllegalArgumentException("lingerMillis must not be negative");
+        }
+        this.client = client;
+        this.maxBatchSize = maxBatchSize;
+        this.lingerMillis = lingerMillis;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "tuppari-batch-linger");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public long getLingerMillis() {
+        return lingerMillis;
+    }
+
+    public boolean isFlushOnClose() {
+        return flushOnClose;
+    }
+
+    /**
+     * Set whether pending messages are sent on {@link #close()}.
+     * If false, pending messages are completed exceptionally instead. Default is true.
+     *
+     * @param flushOnClose true to flush on close
+     */
+    public void setFlushOnClose(boolean flushOnClose) {
+        this.flushOnClose = flushOnClose;
+    }
+
+    /**
+     * Add message to the batch of the channel.
+     *
+     * @param channelName The name of channel
+     * @param eventName   Event name
+     * @param message     Message string that send to server
+     * @return Future of the result of the message
+     */
+    public CompletableFuture<PublishResult> publish(String channelName, String eventName, String message) {
+        CompletableFuture<PublishResult> future = new CompletableFuture<PublishResult>();
+        if (closed) {
+            future.completeExceptionally(new TuppariException("Publisher is closed"));
+            return future;
+        }
+
+        Entry entry = new Entry(eventName, message, future);
+        Batch batch;
+        List<Entry> full;
+        do {
+            batch = batches.get(channelName);
+            if (batch == null) {
+                batch = new Batch(channelName);
+                Batch existing = batches.putIfAbsent(channelName, batch);
+                if (existing != null) {
+                    batch = existing;
+                }
+            }
+            // null if the batch was drained and removed concurrently
+            full = batch.add(entry);
+        } while (full == null);
+
+        if (!full.isEmpty()) {
+            dispatch(channelName, full);
+        } else if (closed) {
+            // closed while adding, the message may have missed the final flush
+            List<Entry> rest = batch.drain();
+            if (rest != null) {
+                if (flushOnClose) {
+                    dispatch(channelName, rest);
+                } else {
+                    fail(rest, new TuppariException("Publisher is closed"));
+                }
+            }
+        }
+        return future;
+    }
+
+    /**
+     * @return The number of channels with pending messages
+     */
+    int getBatchCount() {
+        return batches.size();
+    }
+
+    /**
+     * Send all pending messages now.
+     */
+    public void flush() {
+        for (Batch batch : batches.values()) {
+            List<Entry> entries = batch.drain();
+            if (entries != null) {
+                dispatch(batch.channelName, entries);
+            }
+        }
+    }
+
+    /**
+     * Stop accepting messages, then flush or fail pending messages depending on {@link #isFlushOnClose()}.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        scheduler.shutdownNow();
+        if (flushOnClose) {
+            flush();
+        } else {
+            for (Batch batch : batches.values()) {
+                List<Entry> entries = batch.drain();
+                if (entries != null) {
+                    fail(entries, new TuppariException("Publisher is closed"));
+                }
+            }
+        }
+    }
+
+    /**
+     * Send the entries as one publish of the client, bounded by its rate and in-flight limits.
+     * If the client is at its in-flight limit, the entries are sent again after a delay.
+     */
+    private void dispatch(final String channelName, final List<Entry> entries) {
+        client.submit(channelName, () -> send(channelName, entries)).whenComplete((results, error) -> {
+            if (error != null && TuppariClient.isInFlightRejection(error)) {
+                TuppariClient.IN_FLIGHT_RETRY_EXECUTOR.execute(() -> dispatch(channelName, entries));
+                return;
+            }
+            if (error != null) {
+                fail(entries, toTuppariException(error));
+                return;
+            }
+            for (int i = 0; i < entries.size(); ++i) {
+                entries.get(i).future.complete(results.get(i));
+            }
+        });
+    }
+
+    /**
+     * @return The results of the entries, in the same order
+     */
+    @SuppressWarnings("unchecked")
+    private List<PublishResult> send(String channelName, List<Entry> entries) {
+        if (entries.size() == 1) {
+            Entry entry = entries.get(0);
+            Map<String, Object> body = new LinkedHashMap<String, Object>();
+            body.put("applicationId", client.getApplicationId());
+            body.put("channel", channelName);
+            body.put("event", entry.eventName);
+            body.put("message", entry.message);
+            return Collections.singletonList(new PublishResult(client.post(TuppariClient.TUPPARI_MESSAGE_PUBLISH_API_METHOD, body)));
+        }
+
+        List<Map<String, Object>> messages = new ArrayList<Map<String, Object>>(entries.size());
+        for (Entry entry : entries) {
+            Map<String, Object> m = new LinkedHashMap<String, Object>();
+            m.put("event", entry.eventName);
+            m.put("message", entry.message);
+            messages.add(m);
+        }
+        Map<String, Object> body = new LinkedHashMap<String, Object>();
+        body.put("applicationId", client.getApplicationId());
+        body.put("channel", channelName);
+        body.put("messages", messages);
+
+        Map<String, Object> response = JSON.decode(client.post(TuppariClient.TUPPARI_MESSAGE_BATCH_PUBLISH_API_METHOD, body));
+        Object results = response != null ? response.get("messages") : null;
+        List<PublishResult> publishResults = new ArrayList<PublishResult>(entries.size());
+        for (int i = 0; i < entries.size(); ++i) {
+            Entry entry = entries.get(i);
+            Map<String, String> result;
+            if (results instanceof List && ((List<?>) results).size() == entries.size()) {
+                result = (Map<String, String>) ((List<?>) results).get(i);
+            } else {
+                result = new LinkedHashMap<String, String>();
+                result.put("applicationId", client.getApplicationId());
+                result.put("channel", channelName);
+                result.put("event", entry.eventName);
+                result.put("message", entry.message);
+            }
+            publishResults.add(new PublishResult(result));
+        }
+        return publishResults;
+    }
+
+    private static void fail(List<Entry> entries, Throwable t) {
+        for (Entry entry : entries) {
+            entry.future.completeExceptionally(t);
+        }
+    }
+
+    private static TuppariException toTuppariException(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        return cause instanceof TuppariException ? (TuppariException) cause : new TuppariException(cause);
+    }
+
+    private static final class Entry {
+
+        final String eventName;
+
+        final String message;
+
+        final CompletableFuture<PublishResult> future;
+
+        Entry(String eventName, String message, CompletableFuture<PublishResult> future) {
+            this.eventName = eventName;
+            this.message = message;
+            this.future = future;
+        }
+
+    }
+
+    /**
+     * Pending messages of a channel. A batch is removed from the publisher when it is drained, and no longer
+     * accepts messages; a new batch is created for the next message of the channel.
+     */
+    private final class Batch implements Runnable {
+
+        final String channelName;
+
+        private List<Entry> entries = new ArrayList<Entry>();
+
+        private ScheduledFuture<?> lingerTask;
+
+        private boolean removed;
+
+        Batch(String channelName) {
+            this.channelName = channelName;
+        }
+
+        /**
+         * @return The entries to send if the batch became full, an empty list if not, or null if the batch
+         *         is removed and the entry must be added to a new batch
+         */
+        synchronized List<Entry> add(Entry entry) {
+            if (removed) {
+                return null;
+            }
+            entries.add(entry);
+            if (entries.size() >= maxBatchSize) {
+                return drain();
+            }
+            if (entries.size() == 1) {
+                try {
+                    lingerTask = scheduler.schedule(this, lingerMillis, TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException e) {
+                    // closed concurrently, close() drains this batch
+                    lingerTask = null;
+                }
+            }
+            return Collections.emptyList();
+        }
+
+        /**
+         * Take the pending entries and remove the now empty batch from the publisher.
+         *
+         * @return The pending entries, or null if there are none
+         */
+        synchronized List<Entry> drain() {
+            if (lingerTask != null) {
+                lingerTask.cancel(false);
+                lingerTask = null;
+            }
+            if (!removed) {
+                removed = true;
+                batches.remove(channelName, this);
+            }
+            if (entries.isEmpty()) {
+                return null;
+            }
+            List<Entry> result = entries;
+            entries = Collections.emptyList();
+            return result;
+        }
+
+        @Override
+        public void run() {
+            List<Entry> drained = drain();
+            if (drained != null) {
+                dispatch(channelName, drained);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,190 @@
+package com.tuppari;
+
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Bounded pool of direct {@link ByteBuffer}s of a fixed size, used to encode request bodies.
+ * <p/>
+ * Buffers are kept in striped slots indexed by the acquiring thread, so threads rarely contend, and a buffer
+ * may be released by another thread than the one that acquired it. At most {@code maxPooled} idle buffers are
+ * kept; the others are left to the garbage collector. Requests larger than the buffer size get an unpooled
+ * heap buffer.
+ * <p/>
+ * With leak detection enabled, every lease records where it was acquired, and a lease that is garbage
+ * collected without being released is counted and reported to the leak listener.
+ * <pre>
+ * ByteBufferPool pool = new ByteBufferPool(16384, 256);
+ * pool.setLeakDetection(true);
+ * client.setBufferPool(pool);
+ * </pre>
+ */
+public class ByteBufferPool {
+
+    /**
+     * The default size of each buffer in bytes.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 16384;
+
+    /**
+     * The default maximum number of idle buffers.
+     */
+    public static final int DEFAULT_MAX_POOLED = 64;
+
+    private static class CleanerHolder {
+        static final Cleaner CLEANER = Cleaner.create();
+    }
+
+    private final int bufferSize;
+
+    private final AtomicReferenceArray<ByteBuffer> slots;
+
+    private final LongAdder allocated = new LongAdder();
+
+    private final LongAdder leaks = new LongAdder();
+
+    private volatile boolean leakDetection;
+
+    private volatile Consumer<Throwable> leakListener;
+
+    /**
+     * Construct with the default buffer size and pool size.
+     */
+    public ByteBufferPool() {
+        this(DEFAULT_BUFFER_SIZE, DEFAULT_MAX_POOLED);
+    }
+
+    /**
+     * @param bufferSize The size of each buffer in bytes, the largest body that is encoded into a pooled buffer
+     * @param maxPooled The maximum number of idle buffers kept by the pool
+     */
+    public ByteBufferPool(int bufferSize, int maxPooled) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("bufferSize must be positive");
+        }
+        if (maxPooled <= 0) {
+            throw new IllegalArgumentException("maxPooled must be positive");
+        }
+        this.bufferSize = bufferSize;
+        this.slots = new AtomicReferenceArray<ByteBuffer>(maxPooled);
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public int getMaxPooled() {
+        return slots.length();
+    }
+
+    public boolean isLeakDetection() {
+        return leakDetection;
+    }
+
+    /**
+     * Track leases that are never released. Disabled by default, as it records a stack trace per lease.
+     *
+     * @param leakDetection true to detect leaks
+     */
+    public void setLeakDetection(boolean leakDetection) {
+        this.leakDetection = leakDetection;
+    }
+
+    /**
+     * Set the listener of detected leaks. The listener is called from a cleaner thread with an exception
+     * whose stack trace shows where the leaked buffer was acquired.
+     *
+     * @param leakListener The listener or null
+     */
+    public void setLeakListener(Consumer<Throwable> leakListener) {
+        this.leakListener = leakListener;
+    }
+
+    /**
+     * Returns a buffer with position 0 and limit {@code size}, owned by the caller until it is released.
+     *
+     * @param size The number of bytes to write
+     * @return The lease of the buffer
+     */
+    public PooledByteBuffer acquire(int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("size must not be negative");
+        }
+        if (size > bufferSize) {
+            return new PooledByteBuffer(null, ByteBuffer.allocate(size));
+        }
+
+        ByteBuffer buffer = null;
+        int length = slots.length();
+        int start = probe(length);
+        for (int i = 0; i < length && buffer == null; ++i) {
+            buffer = slots.getAndSet((start + i) % length, null);
+        }
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(bufferSize);
+            allocated.increment();
+        }
+        buffer.clear().limit(size);
+
+        PooledByteBuffer lease = new PooledByteBuffer(this, buffer);
+        if (leakDetection) {
+            lease.track(CleanerHolder.CLEANER, new Throwable("Leaked buffer acquired here"));
+        }
+        return lease;
+    }
+
+    /**
+     * @return The number of idle buffers in the pool
+     */
+    public int getPooledCount() {
+        int n = 0;
+        for (int i = 0, length = slots.length(); i < length; ++i) {
+            if (slots.get(i) != null) {
+                ++n;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * @return The number of direct buffers allocated by the pool
+     */
+    public long getAllocatedCount() {
+        return allocated.sum();
+    }
+
+    /**
+     * @return The number of leases garbage collected without being released, if leak detection is enabled
+     */
+    public long getLeakCount() {
+        return leaks.sum();
+    }
+
+    void release(ByteBuffer buffer) {
+        int length = slots.length();
+        int start = probe(length);
+        for (int i = 0; i < length; ++i) {
+            if (slots.compareAndSet((start + i) % length, null, buffer)) {
+                return;
+            }
+        }
+        // The pool is full, let the buffer be collected
+    }
+
+    void onLeak(Throwable acquiredAt) {
+        leaks.increment();
+        Consumer<Throwable> listener = leakListener;
+        if (listener != null) {
+            listener.accept(acquiredAt);
+        }
+    }
+
+    private static int probe(int length) {
+        long id = Thread.currentThread().getId();
+        return (int) ((id ^ (id >>> 32)) & 0x7fffffff) % length;
+    }
+
+}
@@ -0,0 +1,491 @@
+package com.tuppari;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Streaming canonical request builder.
+ *
+ * Writes the canonical request (see {@link SignUtil#createCanonicalRequest}) as UTF-8 straight into a
+ * SHA256 {@link MessageDigest} through a small reusable buffer, instead of building intermediate
+ * lists and strings. The query string is parsed in a single pass, and the body hash is hex encoded
+ * directly into the buffer. Instances are kept per thread, or pooled for virtual threads.
+ */
+final class CanonicalRequestDigester {
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] UPPER_HEX = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+
+    private static final ThreadLocalPool<CanonicalRequestDigester> instances = new ThreadLocalPool<CanonicalRequestDigester>(CanonicalRequestDigester::new);
+
+    private final MessageDigest requestDigest = sha256();
+
+    private final MessageDigest bodyDigest = sha256();
+
+    private final byte[] buf = new byte[1024];
+
+    private int pos;
+
+    private ByteArrayOutputStream capture;
+
+    private String[] names = new String[8];
+
+    private String[] keys = new String[8];
+
+    private String[] values = new String[8];
+
+    private byte[] decodeBytes = new byte[64];
+
+    private final StringBuilder decodeBuilder = new StringBuilder();
+
+    private CanonicalRequestDigester() {
+    }
+
+    /**
+     * Returns the lower case hex encoded SHA256 hash of the canonical request.
+     *
+     * @param method HTTP requet method (Such as GET, POST, etc)
+     * @param uri URI of the request
+     * @param queryString Query string of the request
+     * @param headers The request header map of the request
+     * @param body The encoded body of the request
+     * @return Hash of the canonical request
+     */
+    static String digest(String method, String uri, String queryString, Map<String, String> headers, byte[] body) {
+        byte[] hash;
+        CanonicalRequestDigester d = instances.acquire();
+        try {
+            d.reset(null);
+            d.writeCanonicalRequest(method, uri, queryString, headers, body);
+            d.flush();
+            hash = d.requestDigest.digest();
+        } finally {
+            instances.release(d);
+        }
+        return toHex(hash);
+    }
+
+    /**
+     * Returns the hash of a canonical request assembled from precomputed fragments,
+     * for requests whose only variable header is X-Tuppari-Date.
+     *
+     * @param prefix UTF-8 canonical request up to and including "x-tuppari-date:"
+     * @param date The value of X-Tuppari-Date header
+     * @param suffix UTF-8 canonical request from the end of the date to the body hash (exclusive)
+     * @param body The encoded body of the request, from its position to its limit; the position is not changed
+     * @return Lower case hex encoded hash of the canonical request
+     * @see RequestTemplate
+     */
+    static String digest(byte[] prefix, String date, byte[] suffix, ByteBuffer body) {
+        byte[] hash;
+        CanonicalRequestDigester d = instances.acquire();
+        try {
+            d.reset(null);
+            d.requestDigest.update(prefix);
+            d.writeUtf8(date, 0, date.length());
+            d.flush();
+            d.requestDigest.update(suffix);
+            d.writeBodyHash(body);
+            d.flush();
+            hash = d.requestDigest.digest();
+        } finally {
+            instances.release(d);
+        }
+        return toHex(hash);
+    }
+
+    /**
+     * Returns the canonical request as a string.
+     *
+     * @see #digest(String, String, String, java.util.Map, byte[])
+     */
+    static String toString(String method, String uri, String queryString, Map<String, String> headers, byte[] body) {
+        CanonicalRequestDigester d = instances.acquire();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        d.reset(out);
+        try {
+            d.writeCanonicalRequest(method, uri, queryString, headers, body);
+            d.flush();
+        } finally {
+            d.capture = null;
+            instances.release(d);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the canonical query string.
+     *
+     * @param queryString The query string of the HTTP request
+     * @return Canonical query string
+     */
+    static String canonicalQueryString(String queryString) {
+        CanonicalRequestDigester d = instances.acquire();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        d.reset(out);
+        try {
+            d.writeCanonicalQueryString(queryString);
+            d.flush();
+        } finally {
+            d.capture = null;
+            instances.release(d);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static String toHex(byte[] hash) {
+        char[] hex = new char[hash.length * 2];
+        for (int i = 0, j = 0; i < hash.length; ++i) {
+            hex[j++] = (char) HEX[(hash[i] >> 4) & 0x0f];
+            hex[j++] = (char) HEX[hash[i] & 0x0f];
+        }
+        return new String(hex);
+    }
+
+    private void reset(ByteArrayOutputStream capture) {
+        this.pos = 0;
+        this.capture = capture;
+        requestDigest.reset();
+    }
+
+    private void writeCanonicalRequest(String method, String uri, String queryString, Map<String, String> headers, byte[] body) {
+        writeUtf8(method, 0, method.length());
+        writeByte('\n');
+        writeCanonicalUri(uri);
+        writeByte('\n');
+        writeCanonicalQueryString(queryString);
+        writeByte('\n');
+        int n = sortHeaderNames(headers);
+        try {
+            writeCanonicalHeaders(headers, n);
+            writeByte('\n');
+            writeSignedHeaders(n);
+        } finally {
+            Arrays.fill(names, 0, n, null);
+        }
+        writeByte('\n');
+        writeBodyHash(body);
+    }
+
+    private void writeCanonicalUri(String uri) {
+        if (uri == null || uri.length() == 0) {
+            writeByte('/');
+            return;
+        }
+        if (uri.charAt(0) != '/') {
+            writeByte('/');
+        }
+        writeUtf8(uri, 0, uri.length());
+    }
+
+    /**
+     * Parse "k1=v1&amp;k2=v2" in a single pass with the same rules as splitting on '&amp;' and '='
+     * and decoding with {@link java.net.URLDecoder}, then write the parameters sorted by key
+     * (keeping the original order of values of the same key) with URL encoded values.
+     */
+    private void writeCanonicalQueryString(String query) {
+        if (query == null || query.length() == 0) {
+            return;
+        }
+
+        int len = query.length();
+        // String.split drops trailing empty parameters
+        while (len > 0 && query.charAt(len - 1) == '&') {
+            --len;
+        }
+
+        int count = 0;
+        try {
+            int start = 0;
+            while (start < len) {
+                int end = query.indexOf('&', start);
+                if (end < 0 || end > len) {
+                    end = len;
+                }
+                int eq = indexOf(query, '=', start, end);
+                String key;
+                String value;
+                if (eq < 0) {
+                    key = decode(query, start, end);
+                    value = "";
+                } else {
+                    key = decode(query, start, eq);
+                    int valueEnd = indexOf(query, '=', eq + 1, end);
+                    value = decode(query, eq + 1, valueEnd < 0 ? end : valueEnd);
+                }
+                count = add(count, key, value);
+                start = end + 1;
+            }
+
+            // Stable insertion sort: query strings are short
+            for (int i = 1; i < count; ++i) {
+                String k = keys[i];
+                String v = values[i];
+                int j = i - 1;
+                while (j >= 0 && keys[j].compareTo(k) > 0) {
+                    keys[j + 1] = keys[j];
+                    values[j + 1] = values[j];
+                    --j;
+                }
+                keys[j + 1] = k;
+                values[j + 1] = v;
+            }
+
+            for (int i = 0; i < count; ++i) {
+                if (i != 0) {
+                    writeByte('&');
+                }
+                writeUtf8(keys[i], 0, keys[i].length());
+                writeByte('=');
+                writeUrlEncoded(values[i]);
+            }
+        } finally {
+            Arrays.fill(keys, 0, count, null);
+            Arrays.fill(values, 0, count, null);
+        }
+    }
+
+    private int add(int count, String key, String value) {
+        if (count == keys.length) {
+            keys = Arrays.copyOf(keys, count * 2);
+            values = Arrays.copyOf(values, count * 2);
+        }
+        keys[count] = key;
+        values[count] = value;
+        return count + 1;
+    }
+
+    private int sortHeaderNames(Map<String, String> headers) {
+        if (headers == null || headers.isEmpty()) {
+            return 0;
+        }
+        int n = headers.size();
+        if (names.length < n) {
+            names = new String[Math.max(n, names.length * 2)];
+        }
+        int i = 0;
+        for (String name : headers.keySet()) {
+            names[i++] = name;
+        }
+        Arrays.sort(names, 0, n);
+        return n;
+    }
+
+    private void writeCanonicalHeaders(Map<String, String> headers, int n) {
+        for (int i = 0; i < n; ++i) {
+            if (i != 0) {
+                writeByte('\n');
+            }
+            writeLowerCase(names[i]);
+            writeByte(':');
+            String value = headers.get(names[i]);
+            int start = 0;
+            int end = value.length();
+            while (start < end && value.charAt(start) <= ' ') {
+                ++start;
+            }
+            while (start < end && value.charAt(end - 1) <= ' ') {
+                --end;
+            }
+            writeUtf8(value, start, end);
+        }
+    }
+
+    private void writeSignedHeaders(int n) {
+        for (int i = 0; i < n; ++i) {
+            if (i != 0) {
+                writeByte(';');
+            }
+            writeLowerCase(names[i]);
+        }
+    }
+
+    private void writeBodyHash(byte[] body) {
+        bodyDigest.reset();
+        if (body != null) {
+            bodyDigest.update(body);
+        }
+        writeHex(bodyDigest.digest());
+    }
+
+    private void writeBodyHash(ByteBuffer body) {
+        bodyDigest.reset();
+        bodyDigest.update(body.duplicate());
+        writeHex(bodyDigest.digest());
+    }
+
+    private void writeHex(byte[] hash) {
+        for (byte b : hash) {
+            writeByte(HEX[(b >> 4) & 0x0f]);
+            writeByte(HEX[b & 0x0f]);
+        }
+    }
+
+    private void writeLowerCase(String s) {
+        for (int i = 0, len = s.length(); i < len; ++i) {
+            char c = s.charAt(i);
+            if (c >= 'A' && c <= 'Z') {
+                writeByte(c + ('a' - 'A'));
+            } else if (c < 0x80) {
+                writeByte(c);
+            } else {
+                String rest = s.substring(i).toLowerCase();
+                writeUtf8(rest, 0, rest.length());
+                return;
+            }
+        }
+    }
+
+    /**
+     * Write the value encoded with the same rules as {@link java.net.URLEncoder} in UTF-8.
+     */
+    private void writeUrlEncoded(String s) {
+        for (int i = 0, len = s.length(); i < len; ++i) {
+            char c = s.charAt(i);
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                    || c == '.' || c == '-' || c == '*' || c == '_') {
+                writeByte(c);
+            } else if (c == ' ') {
+                writeByte('+');
+            } else if (c < 0x80) {
+                writePercentEncoded(c);
+            } else if (c < 0x800) {
+                writePercentEncoded(0xc0 | (c >> 6));
+                writePercentEncoded(0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                writePercentEncoded(0xf0 | (cp >> 18));
+                writePercentEncoded(0x80 | ((cp >> 12) & 0x3f));
+                writePercentEncoded(0x80 | ((cp >> 6) & 0x3f));
+                writePercentEncoded(0x80 | (cp & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                writePercentEncoded('?');
+            } else {
+                writePercentEncoded(0xe0 | (c >> 12));
+                writePercentEncoded(0x80 | ((c >> 6) & 0x3f));
+                writePercentEncoded(0x80 | (c & 0x3f));
+            }
+        }
+    }
+
+    private void writePercentEncoded(int b) {
+        writeByte('%');
+        writeByte(UPPER_HEX[(b >> 4) & 0x0f]);
+        writeByte(UPPER_HEX[b & 0x0f]);
+    }
+
+    /**
+     * Write the characters as UTF-8. Unpaired surrogates are replaced with '?' like {@link String#getBytes}.
+     */
+    private void writeUtf8(String s, int from, int to) {
+        for (int i = from; i < to; ++i) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                writeByte(c);
+            } else if (c < 0x800) {
+                writeByte(0xc0 | (c >> 6));
+                writeByte(0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < to && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                writeByte(0xf0 | (cp >> 18));
+                writeByte(0x80 | ((cp >> 12) & 0x3f));
+                writeByte(0x80 | ((cp >> 6) & 0x3f));
+                writeByte(0x80 | (cp & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                writeByte('?');
+            } else {
+                writeByte(0xe0 | (c >> 12));
+                writeByte(0x80 | ((c >> 6) & 0x3f));
+                writeByte(0x80 | (c & 0x3f));
+            }
+        }
+    }
+
+    private void writeByte(int b) {
+        if (pos == buf.length) {
+            flush();
+        }
+        buf[pos++] = (byte) b;
+    }
+
+    private void flush() {
+        if (pos > 0) {
+            if (capture != null) {
+                capture.write(buf, 0, pos);
+            } else {
+                requestDigest.update(buf, 0, pos);
+            }
+            pos = 0;
+        }
+    }
+
+    /**
+     * Decode the range with the same rules as {@link java.net.URLDecoder} in UTF-8.
+     */
+    private String decode(String s, int from, int to) {
+        int i = from;
+        while (i < to && s.charAt(i) != '%' && s.charAt(i) != '+') {
+            ++i;
+        }
+        if (i == to) {
+            return s.substring(from, to);
+        }
+
+        StringBuilder sb = decodeBuilder;
+        sb.setLength(0);
+        sb.append(s, from, i);
+        while (i < to) {
+            char c = s.charAt(i);
+            if (c == '+') {
+                sb.append(' ');
+                ++i;
+            } else if (c == '%') {
+                int n = 0;
+                while (i < to && s.charAt(i) == '%') {
+                    if (i + 2 >= to) {
+                        throw new IllegalArgumentException("URLDecoder: Incomplete trailing escape (%) pattern");
+                    }
+                    int hi = Character.digit(s.charAt(i + 1), 16);
+                    int lo = Character.digit(s.charAt(i + 2), 16);
+                    if (hi < 0 || lo < 0) {
+                        throw new IllegalArgumentException("URLDecoder: Illegal hex characters in escape (%) pattern");
+                    }
+                    if (n == decodeBytes.length) {
+                        decodeBytes = Arrays.copyOf(decodeBytes, n * 2);
+                    }
+                    decodeBytes[n++] = (byte) ((hi << 4) | lo);
+                    i += 3;
+                }
+                sb.append(new String(decodeBytes, 0, n, StandardCharsets.UTF_8));
+            } else {
+                sb.append(c);
+                ++i;
+            }
+        }
+        return sb.toString();
+    }
+
+    private static int indexOf(String s, char c, int from, int to) {
+        for (int i = from; i < to; ++i) {
+            if (s.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+}
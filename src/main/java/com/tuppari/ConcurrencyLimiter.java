@@ -0,0 +1,293 @@
+package com.tuppari;
+
+import java.net.SocketTimeoutException;
+import java.net.http.HttpTimeoutException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limit of in-flight publishes that adapts to the observed round-trip time, replacing the fixed
+ * {@link TuppariClient#setMaxInFlight(int)} limit when set with {@link TuppariClient#setConcurrencyLimiter(ConcurrencyLimiter)}.
+ * <p/>
+ * The limit grows by one for every publish that completes while the limit is at least half used (additive increase).
+ * It is multiplied by 0.9 (multiplicative decrease) when the server signals overload, that is, when a publish
+ * times out or fails with 429, 503 or 504, or when the short-term average RTT exceeds twice the long-term average,
+ * the RTT gradient showing that requests are queueing somewhere. The limit decreases at most once per short-term RTT,
+ * so a burst of slow responses counts as one signal.
+ * <p/>
+ * Publishes beyond the limit fail fast with {@link TuppariException}, or wait up to the queue timeout for a slot.
+ * Waiting publishes are queued in order and started when a slot is released, without holding a thread.
+ */
+public class ConcurrencyLimiter {
+
+    private static final double TOLERANCE = 2.0;
+
+    private static final double BACKOFF_RATIO = 0.9;
+
+    private static final double SHORT_RTT_WEIGHT = 0.2;
+
+    private static final double LONG_RTT_WEIGHT = 0.01;
+
+    private static final CompletableFuture<Boolean> ACQUIRED = CompletableFuture.completedFuture(Boolean.TRUE);
+
+    private static final CompletableFuture<Boolean> REJECTED = CompletableFuture.completedFuture(Boolean.FALSE);
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    private volatile int limit;
+
+    private double estimatedLimit;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private volatile long queueTimeoutMillis;
+
+    private final ConcurrentLinkedQueue<CompletableFuture<Boolean>> waiters = new ConcurrentLinkedQueue<CompletableFuture<Boolean>>();
+
+    private double shortRttNanos;
+
+    private double longRttNanos;
+
+    private long lastDecreaseNanos;
+
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * Construct with initial limit 20, between 1 and 1000.
+     */
+    public ConcurrencyLimiter() {
+        this(20, 1, 1000);
+    }
+
+    /**
+     * @param initialLimit The limit until round-trip times are observed
+     * @param minLimit     The minimum limit
+     * @param maxLimit     The maximum limit
+     */
+    public ConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit) {
+        if (minLimit <= 0 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("invalid limits");
+        }
+        if (initialLimit < minLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("initialLimit must be between minLimit and maxLimit");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = initialLimit;
+        this.estimatedLimit = initialLimit;
+    }
+
+    public int getMinLimit() {
+        return minLimit;
+    }
+
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    public long getQueueTimeoutMillis() {
+        return queueTimeoutMillis;
+    }
+
+    /**
+     * Set how long a publish beyond the limit waits for a slot. The publish is queued without blocking the
+     * caller or any other thread. By default (0) publishes beyond the limit fail immediately.
+     *
+     * @param queueTimeoutMillis The queue timeout in milliseconds
+     */
+    public void setQueueTimeoutMillis(long queueTimeoutMillis) {
+        if (queueTimeoutMillis < 0) {
+            throw new IllegalArgumentException("queueTimeoutMillis must not be negative");
+        }
+        this.queueTimeoutMillis = queueTimeoutMillis;
+    }
+
+    /**
+     * @return The current limit of in-flight publishes
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return The number of in-flight publishes
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * @return The short-term average round-trip time in nanoseconds, 0 until observed
+     */
+    public synchronized long getShortRttNanos() {
+        return (long) shortRttNanos;
+    }
+
+    /**
+     * @return The long-term average round-trip time in nanoseconds, 0 until observed
+     */
+    public synchronized long getLongRttNanos() {
+        return (long) longRttNanos;
+    }
+
+    /**
+     * @return The number of publishes rejected by the limit
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * Take a slot if one is free, without waiting.
+     *
+     * @return true if a slot is taken and must be released with {@link #release(long, Throwable)}
+     */
+    boolean tryAcquire() {
+        if (!hasWaiters() && tryIncrement()) {
+            return true;
+        }
+        rejected.increment();
+        return false;
+    }
+
+    /**
+     * Take a slot, waiting up to the queue timeout if the limit is reached. A waiting call is queued and completed
+     * by {@link #release(long, Throwable)} of another publish, or by the timeout.
+     *
+     * @return Future of true if a slot is taken and must be released with {@link #release(long, Throwable)},
+     *         or of false if the limit is reached
+     */
+    CompletableFuture<Boolean> acquire() {
+        if (!hasWaiters() && tryIncrement()) {
+            return ACQUIRED;
+        }
+        long timeout = queueTimeoutMillis;
+        if (timeout <= 0) {
+            rejected.increment();
+            return REJECTED;
+        }
+
+        CompletableFuture<Boolean> waiter = new CompletableFuture<Boolean>();
+        waiter.completeOnTimeout(Boolean.FALSE, timeout, TimeUnit.MILLISECONDS).thenAccept(acquired -> {
+            if (!acquired) {
+                rejected.increment();
+            }
+        });
+        waiters.add(waiter);
+        // A slot may have been released before the waiter was queued
+        handOff();
+        return waiter;
+    }
+
+    /**
+     * Release a slot and update the limit from the round-trip time of the publish.
+     *
+     * @param rttNanos The round-trip time of the publish in nanoseconds
+     * @param error    The failure of the publish or null
+     */
+    void release(long rttNanos, Throwable error) {
+        int n = inFlight.getAndDecrement();
+        if (error == null) {
+            onSample(rttNanos, n, false, System.nanoTime());
+        } else if (isOverload(error)) {
+            onSample(rttNanos, n, true, System.nanoTime());
+        }
+        handOff();
+    }
+
+    /**
+     * @return true if publishes are waiting for a slot; waiters that timed out at the head are removed
+     */
+    private boolean hasWaiters() {
+        CompletableFuture<Boolean> head;
+        while ((head = waiters.peek()) != null) {
+            if (!head.isDone()) {
+                return true;
+            }
+            waiters.remove(head);
+        }
+        return false;
+    }
+
+    /**
+     * Give the free slots to the waiters in order.
+     */
+    private void handOff() {
+        while (waiters.peek() != null) {
+            if (!tryIncrement()) {
+                return;
+            }
+            CompletableFuture<Boolean> waiter = waiters.poll();
+            if (waiter == null || !waiter.complete(Boolean.TRUE)) {
+                // Timed out, or taken by another thread
+                inFlight.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Update the limit from a sample.
+     *
+     * @param rttNanos The round-trip time
+     * @param inFlight The number of in-flight publishes when the publish completed, including itself
+     * @param overload true if the publish failed because the server is overloaded
+     * @param now      The current time of {@link System#nanoTime()}
+     */
+    synchronized void onSample(long rttNanos, int inFlight, boolean overload, long now) {
+        if (!overload) {
+            if (shortRttNanos == 0) {
+                shortRttNanos = rttNanos;
+                longRttNanos = rttNanos;
+            } else {
+                shortRttNanos += (rttNanos - shortRttNanos) * SHORT_RTT_WEIGHT;
+                longRttNanos += (rttNanos - longRttNanos) * LONG_RTT_WEIGHT;
+            }
+        }
+
+        if (overload || shortRttNanos > longRttNanos * TOLERANCE) {
+            if (now - lastDecreaseNanos >= (long) shortRttNanos) {
+                estimatedLimit = Math.max(minLimit, estimatedLimit * BACKOFF_RATIO);
+                lastDecreaseNanos = now;
+                if (!overload) {
+                    // Take the queueing as the new normal, so a lasting slowdown does not shrink the limit to the minimum
+                    longRttNanos += (shortRttNanos - longRttNanos) * 0.5;
+                }
+            }
+        } else if (inFlight * 2 >= estimatedLimit) {
+            estimatedLimit = Math.min(maxLimit, estimatedLimit + 1);
+        }
+        limit = (int) estimatedLimit;
+    }
+
+    private boolean tryIncrement() {
+        int n;
+        do {
+            n = inFlight.get();
+            if (n >= limit) {
+                return false;
+            }
+        } while (!inFlight.compareAndSet(n, n + 1));
+        return true;
+    }
+
+    private static boolean isOverload(Throwable error) {
+        for (Throwable t = error; t != null; t = t.getCause()) {
+            if (t instanceof TuppariException) {
+                int status = ((TuppariException) t).getStatus();
+                if (status == 429 || status == 503 || status == 504) {
+                    return true;
+                }
+            }
+            if (t instanceof SocketTimeoutException || t instanceof HttpTimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,265 @@
+package com.tuppari;
+
+import java.io.Closeable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Publisher that sends only the latest message of each channel and event, for values such as prices
+ * and statuses where a newer message makes older ones obsolete.
+ *
+ * At most one message per channel and event is in flight, and publishes of the same pair are at least
+ * {@link #getMinIntervalMillis()} apart. A message published in the meantime becomes pending, and replaces
+ * (conflates) the message already pending for the pair, so only one message per pair ever waits and memory is
+ * bounded by the number of distinct pairs.
+ *
+ * The future returned by {@link #publish(String, String, String)} is shared by the conflated messages: it is
+ * completed when the latest of them is confirmed by the server, or fails with its error.
+ */
+public class ConflatingPublisher implements Closeable {
+
+    private final TuppariClient client;
+
+    private final long minIntervalNanos;
+
+    private final ConcurrentMap<String, Slot> slots = new ConcurrentHashMap<String, Slot>();
+
+    private final ScheduledExecutorService scheduler;
+
+    private final LongAdder published = new LongAdder();
+
+    private final LongAdder sent = new LongAdder();
+
+    private final LongAdder conflated = new LongAdder();
+
+    private volatile boolean closed;
+
+    /**
+     * Construct without a minimum interval: messages are conflated only while a publish of the pair is in flight.
+     *
+     * @param client The client used to send requests
+     */
+    public ConflatingPublisher(TuppariClient client) {
+        this(client, 0);
+    }
+
+    /**
+     * @param client            The client used to send requests
+     * @param minIntervalMillis The minimum time in milliseconds between publishes of the same channel and event
+     */
+    public ConflatingPublisher(TuppariClient client, long minIntervalMillis) {
+        if (client == null) {
+            throw new IllegalArgumentException("client is null");
+        }
+        if (minIntervalMillis < 0) {
+            throw new IllegalArgumentException("minIntervalMillis must not be negative");
+        }
+        this.client = client;
+        this.minIntervalNanos = TimeUnit.MILLISECONDS.toNanos(minIntervalMillis);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "tuppari-conflate");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public long getMinIntervalMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(minIntervalNanos);
+    }
+
+    /**
+     * Publish the message, or make it pending if a message of the same channel and event is in flight or was
+     * sent less than the minimum interval ago, replacing the message already pending.
+     *
+     * @param channelName The name of channel
+     * @param eventName   Event name
+     * @param message     Message string that send to server
+     * @return Future completed when this message, or a newer message that replaced it, is accepted by the server
+     */
+    public CompletableFuture<Void> publish(String channelName, String eventName, String message) {
+        if (closed) {
+            return CompletableFuture.failedFuture(new TuppariException("Publisher is closed"));
+        }
+        String key = channelName + '\u0000' + eventName;
+        Slot slot = slots.get(key);
+        if (slot == null) {
+            slot = new Slot(client.join(channelName), eventName);
+            Slot existing = slots.putIfAbsent(key, slot);
+            if (existing != null) {
+                slot = existing;
+            }
+        }
+        published.increment();
+        return slot.offer(message);
+    }
+
+    /**
+     * @return The number of messages passed to {@link #publish(String, String, String)}
+     */
+    public long getPublishedCount() {
+        return published.sum();
+    }
+
+    /**
+     * @return The number of messages sent to the server
+     */
+    public long getSentCount() {
+        return sent.sum();
+    }
+
+    /**
+     * @return The number of messages replaced by a newer message before being sent
+     */
+    public long getConflatedCount() {
+        return conflated.sum();
+    }
+
+    /**
+     * @return The number of distinct channel and event pairs published
+     */
+    public int getKeyCount() {
+        return slots.size();
+    }
+
+    /**
+     * Stop accepting messages and send the pending messages without waiting for the minimum interval.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        scheduler.shutdownNow();
+        for (Slot slot : slots.values()) {
+            slot.flush();
+        }
+    }
+
+    /**
+     * State of a channel and event: the pending message and whether a publish is in flight.
+     */
+    private final class Slot implements Runnable {
+
+        private final TuppariChannel channel;
+
+        private final String eventName;
+
+        private String pending;
+
+        private CompletableFuture<Void> pendingFuture;
+
+        private boolean inFlight;
+
+        private boolean scheduled;
+
+        private long lastSentNanos;
+
+        Slot(TuppariChannel channel, String eventName) {
+            this.channel = channel;
+            this.eventName = eventName;
+            this.lastSentNanos = System.nanoTime() - minIntervalNanos;
+        }
+
+        CompletableFuture<Void> offer(String message) {
+            CompletableFuture<Void> future;
+            synchronized (this) {
+                if (pending != null) {
+                    conflated.increment();
+                    pending = message;
+                    return pendingFuture;
+                }
+                pending = message;
+                pendingFuture = future = new CompletableFuture<Void>();
+            }
+            sendOrSchedule();
+            return future;
+        }
+
+        void flush() {
+            String message;
+            CompletableFuture<Void> future;
+            synchronized (this) {
+                if (pending == null || inFlight) {
+                    return;
+                }
+                message = take();
+                future = pendingFuture;
+            }
+            send(message, future);
+        }
+
+        @Override
+        public void run() {
+            synchronized (this) {
+                scheduled = false;
+            }
+            sendOrSchedule();
+        }
+
+        /**
+         * Send the pending message if the slot is idle and the interval has passed, otherwise schedule it.
+         */
+        private void sendOrSchedule() {
+            String message;
+            CompletableFuture<Void> future;
+            synchronized (this) {
+                if (pending == null || inFlight || scheduled) {
+                    return;
+                }
+                long wait = lastSentNanos + minIntervalNanos - System.nanoTime();
+                if (wait > 0 && !closed) {
+                    try {
+                        scheduler.schedule(this, wait, TimeUnit.NANOSECONDS);
+                        scheduled = true;
+                        return;
+                    } catch (RejectedExecutionException e) {
+                        // closed concurrently, send now
+                    }
+                }
+                message = take();
+                future = pendingFuture;
+            }
+            send(message, future);
+        }
+
+        /**
+         * Take the pending message and mark the slot in flight; must hold the lock.
+         */
+        private String take() {
+            String message = pending;
+            pending = null;
+            inFlight = true;
+            lastSentNanos = System.nanoTime();
+            return message;
+        }
+
+        private void send(String message, final CompletableFuture<Void> future) {
+            sent.increment();
+            channel.publishAsync(eventName, message).whenComplete((result, error) -> {
+                synchronized (this) {
+                    inFlight = false;
+                    if (pendingFuture == future) {
+                        pendingFuture = null;
+                    }
+                }
+                if (error == null) {
+                    future.complete(null);
+                } else {
+                    future.completeExceptionally(error instanceof CompletionException && error.getCause() != null ? error.getCause() : error);
+                }
+                if (closed) {
+                    flush();
+                } else {
+                    sendOrSchedule();
+                }
+            });
+        }
+
+    }
+
+}
@@ -1,14 +1,25 @@
 package com.tuppari;
 
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
 import java.util.Date;
 import java.util.Locale;
-import java.util.SimpleTimeZone;
 
 abstract class DateUtil {
 
-    private static Date dummyTime;
+    private static final DateTimeFormatter ISO8601_FORMATTER =
+            DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'", Locale.ENGLISH).withZone(ZoneOffset.UTC);
+
+    private static final DateTimeFormatter RFC1123_FORMATTER =
+            DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.ENGLISH).withZone(ZoneOffset.UTC);
+
+    /**
+     * Formatted strings of the most recently used second. Request dates have one second
+     * resolution, so every publish in the same second shares the same instance.
+     */
+    private static volatile RequestDate cached;
 
     /**
      * Format specified date as ISO 8601 style.
@@ -24,9 +35,7 @@ abstract class DateUtil {
             throw new IllegalArgumentException("date is null");
         }
 
-        SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMdd\'T\'HHmmss\'Z\'", Locale.ENGLISH);
-        sdf.setTimeZone(new SimpleTimeZone(0, "GMT"));
-        return sdf.format(date);
+        return requestDate(Math.floorDiv(date.getTime(), 1000L)).getISO8601();
     }
 
     /**
@@ -43,30 +52,42 @@ abstract class DateUtil {
             throw new IllegalArgumentException("date is null");
         }
 
-        SimpleDateFormat sdf = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss z", Locale.ENGLISH);
-        sdf.setTimeZone(new SimpleTimeZone(0, "GMT"));
-        return sdf.format(date);
+        return requestDate(Math.floorDiv(date.getTime(), 1000L)).getRFC1123();
     }
 
-    static Date now() {
-        if (dummyTime != null) {
-            return dummyTime;
-        }
-        return new Date();
+    /**
+     * Returns the current request date of the clock.
+     *
+     * @param clock The clock
+     * @return The request date truncated to seconds
+     */
+    static RequestDate now(Clock clock) {
+        return requestDate(Math.floorDiv(clock.millis(), 1000L));
     }
 
-    static void clearDummyTime() {
-        dummyTime = null;
+    /**
+     * Parse the date of X-Tuppari-Date header.
+     *
+     * @param rfc1123 Date formatted like "Mon, 02 Jan 2012 12:23:34 GMT"
+     * @return The request date
+     * @throws java.time.format.DateTimeParseException if the date is malformed
+     */
+    static RequestDate parseRFC1123(String rfc1123) {
+        if (rfc1123 == null) {
+            throw new IllegalArgumentException("date is null");
+        }
+
+        return requestDate(Instant.from(RFC1123_FORMATTER.parse(rfc1123)).getEpochSecond());
     }
 
-    static void setDummyTime(String dateString) {
-        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss z", Locale.ENGLISH);
-        sdf.setTimeZone(new SimpleTimeZone(0, "GMT"));
-        try {
-            dummyTime = sdf.parse(dateString);
-        } catch (ParseException e) {
-            throw new RuntimeException(e);
+    private static RequestDate requestDate(long epochSecond) {
+        RequestDate d = cached;
+        if (d == null || d.getEpochSecond() != epochSecond) {
+            Instant instant = Instant.ofEpochSecond(epochSecond);
+            d = new RequestDate(epochSecond, ISO8601_FORMATTER.format(instant), RFC1123_FORMATTER.format(instant));
+            cached = d;
         }
+        return d;
     }
 
 }
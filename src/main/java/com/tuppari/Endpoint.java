@@ -0,0 +1,180 @@
+package com.tuppari;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A Tuppari API node of a client, with the passive health state used to route publishes to it.
+ * <p/>
+ * Each node has its own precompiled request signing, because the host of the node is part of the signature.
+ * A node that fails several requests in a row (I/O errors, 429 or 5xx responses) is ejected: it receives no
+ * publishes during the ejection time, unless every node is ejected. After that it is tried again; one more
+ * failure ejects it again, one success makes it healthy.
+ */
+public final class Endpoint {
+
+    private static final double LATENCY_WEIGHT = 0.2;
+
+    private final URI uri;
+
+    private final URI messagesUri;
+
+    private final ConcurrentMap<String, RequestTemplate> requestTemplates = new ConcurrentHashMap<String, RequestTemplate>();
+
+    private final ConcurrentMap<String, RequestTemplate> gzipRequestTemplates = new ConcurrentHashMap<String, RequestTemplate>();
+
+    private final AtomicInteger outstanding = new AtomicInteger();
+
+    private final LongAdder requests = new LongAdder();
+
+    private final LongAdder failures = new LongAdder();
+
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+    private volatile long ejectedUntilNanos;
+
+    private volatile boolean ejected;
+
+    private volatile double latencyNanos;
+
+    Endpoint(URI uri) {
+        this.uri = uri;
+        this.messagesUri = uri.resolve(TuppariClient.TUPPARI_MESSAGE_PUBLISH_API_PATH);
+    }
+
+    /**
+     * @return The target URI of the node
+     */
+    public URI getUri() {
+        return uri;
+    }
+
+    /**
+     * @return The number of requests sent to the node and not completed yet
+     */
+    public int getOutstanding() {
+        return outstanding.get();
+    }
+
+    /**
+     * @return The moving average of the round-trip time of successful requests in nanoseconds, 0 until observed
+     */
+    public long getLatencyNanos() {
+        return (long) latencyNanos;
+    }
+
+    /**
+     * @return The number of requests sent to the node
+     */
+    public long getRequestCount() {
+        return requests.sum();
+    }
+
+    /**
+     * @return The number of requests that failed because of the node
+     */
+    public long getFailureCount() {
+        return failures.sum();
+    }
+
+    /**
+     * @return The number of failures since the last success
+     */
+    public int getConsecutiveFailures() {
+        return consecutiveFailures.get();
+    }
+
+    /**
+     * @return true if the node is ejected now
+     */
+    public boolean isEjected() {
+        return isEjected(System.nanoTime());
+    }
+
+    boolean isEjected(long now) {
+        return ejected && now - ejectedUntilNanos < 0;
+    }
+
+    long getEjectedUntilNanos() {
+        return ejectedUntilNanos;
+    }
+
+    URI getMessagesUri() {
+        return messagesUri;
+    }
+
+    /**
+     * Returns the precompiled signing of the operation for this node, built on first use.
+     */
+    RequestTemplate getRequestTemplate(String operation, final boolean gzip, final String accessKeyId, final Signer signer) {
+        ConcurrentMap<String, RequestTemplate> templates = gzip ? gzipRequestTemplates : requestTemplates;
+        RequestTemplate template = templates.get(operation);
+        if (template == null) {
+            template = templates.computeIfAbsent(operation, op -> new RequestTemplate(messagesUri, op, gzip ? "gzip" : null, accessKeyId, signer));
+        }
+        return template;
+    }
+
+    void onStart() {
+        outstanding.incrementAndGet();
+        requests.increment();
+    }
+
+    void onSuccess(long elapsedNanos) {
+        outstanding.decrementAndGet();
+        double l = latencyNanos;
+        latencyNanos = l == 0 ? elapsedNanos : l + (elapsedNanos - l) * LATENCY_WEIGHT;
+        if (consecutiveFailures.get() != 0) {
+            consecutiveFailures.set(0);
+        }
+        ejected = false;
+    }
+
+    /**
+     * Record a failed request, and eject the node if it failed too many times in a row.
+     *
+     * @param e The failure
+     * @param ejectionThreshold The number of consecutive failures that ejects the node
+     * @param ejectionNanos The ejection time
+     */
+    void onFailure(TuppariException e, int ejectionThreshold, long ejectionNanos) {
+        outstanding.decrementAndGet();
+        if (!isNodeFailure(e)) {
+            if (consecutiveFailures.get() != 0) {
+                consecutiveFailures.set(0);
+            }
+            return;
+        }
+        failures.increment();
+        if (consecutiveFailures.incrementAndGet() >= ejectionThreshold) {
+            ejectedUntilNanos = System.nanoTime() + ejectionNanos;
+            ejected = true;
+        }
+    }
+
+    /**
+     * Returns whether the failure is caused by the node rather than by the request, such as a rejected signature.
+     */
+    static boolean isNodeFailure(TuppariException e) {
+        int status = e.getStatus();
+        if (status != 0) {
+            return status == 429 || status >= 500;
+        }
+        for (Throwable t = e.getCause(); t != null; t = t.getCause()) {
+            if (t instanceof IOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return uri.toString();
+    }
+
+}
@@ -0,0 +1,235 @@
+package com.tuppari;
+
+import net.arnx.jsonic.JSON;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Publisher of one event of a channel, created by {@link TuppariChannel#event(String)}.
+ *
+ * The JSON body up to the message is encoded once, and the canonical request fragments are shared with
+ * the client (see {@link RequestTemplate}), so each publish only encodes the message and signs the request
+ * with the current date. The body is byte for byte the same as the body sent by
+ * {@link TuppariChannel#send(String, String)}. If the client has a {@link ByteBufferPool}, the body is
+ * encoded into a pooled direct buffer (see {@link TuppariClient#setBufferPool(ByteBufferPool)}).
+ * <pre>
+ * EventPublisher ticker = client.join("prices").event("tick");
+ * ticker.send("{\"symbol\":\"ABC\",\"price\":123}");
+ * </pre>
+ */
+public class EventPublisher {
+
+    private static final byte[] HEX = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] NULL = "null".getBytes(StandardCharsets.US_ASCII);
+
+    private final TuppariClient client;
+
+    private final TuppariChannel channel;
+
+    private final String eventName;
+
+    private final byte[] bodyPrefix;
+
+    EventPublisher(TuppariClient client, TuppariChannel channel, String eventName) {
+        this.client = client;
+        this.channel = channel;
+        this.eventName = eventName;
+
+        Map<String, Object> body = new LinkedHashMap<String, Object>();
+        body.put("applicationId", client.getApplicationId());
+        body.put("channel", channel.getChannelName());
+        body.put("event", eventName);
+        body.put("message", "");
+        String encoded = JSON.encode(body);
+        // Drop the empty message and the closing brace: {"applicationId":...,"message":
+        this.bodyPrefix = encoded.substring(0, encoded.length() - 3).getBytes(StandardCharsets.UTF_8);
+    }
+
+    public TuppariChannel getChannel() {
+        return channel;
+    }
+
+    public String getEventName() {
+        return eventName;
+    }
+
+    /**
+     * Publish message to the event.
+     *
+     * @param message Message string that send to server
+     * @return Response data
+     * @see TuppariChannel#send(String, String)
+     */
+    public Map<String, String> send(final String message) {
+        try {
+            client.acquirePermit(channel.getChannelName());
+            String result = client.postBuffer(TuppariClient.TUPPARI_MESSAGE_PUBLISH_API_METHOD, pool -> encodeBody(message, pool), true);
+            return JSON.decode(result);
+        } catch (TuppariException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw new TuppariException(e);
+        } catch (Exception e) {
+            throw new TuppariException(e);
+        }
+    }
+
+    /**
+     * Publish message to the event asynchronously.
+     *
+     * @param message Message string that send to server
+     * @return Future of the response data
+     * @see TuppariChannel#sendAsync(String, String)
+     */
+    public CompletableFuture<PublishResult> sendAsync(final String message) {
+        return client.submitAsync(channel.getChannelName(),
+                () -> client.postBufferAsync(TuppariClient.TUPPARI_MESSAGE_PUBLISH_API_METHOD, pool -> encodeBody(message, pool), true))
+                .thenApply(PublishResult::new);
+    }
+
+    /**
+     * Publish message to the event, and confirm only that the server accepted it.
+     *
+     * @param message Message string that send to server
+     * @throws TuppariException if failed to send the message or the server returns error
+     * @see TuppariChannel#publish(String, String)
+     */
+    public void publish(final String message) {
+        client.acquirePermit(channel.getChannelName());
+        client.postBuffer(TuppariClient.TUPPARI_MESSAGE_PUBLISH_API_METHOD, pool -> encodeBody(message, pool), false);
+    }
+
+    /**
+     * Publish message to the event asynchronously, and confirm only that the server accepted it.
+     *
+     * @param message Message string that send to server
+     * @return Future completed when the server accepted the message
+     * @see TuppariChannel#publishAsync(String, String)
+     */
+    public CompletableFuture<Void> publishAsync(final String message) {
+        return client.submitAsync(channel.getChannelName(),
+                () -> client.postBufferAsync(TuppariClient.TUPPARI_MESSAGE_PUBLISH_API_METHOD, pool -> encodeBody(message, pool), false))
+                .thenApply(result -> null);
+    }
+
+    /**
+     * Returns the UTF-8 JSON body with the message, escaped by the same rules as JSONIC.
+     */
+    byte[] encodeBody(String message) {
+        return encodeBody(message, null).buffer().array();
+    }
+
+    /**
+     * Encode the body into a buffer of the pool if it fits, otherwise into a new array.
+     *
+     * @param message The message
+     * @param pool The buffer pool or null
+     * @return The lease of the buffer holding exactly the body
+     */
+    PooledByteBuffer encodeBody(String message, ByteBufferPool pool) {
+        byte[] prefix = bodyPrefix;
+        int length = prefix.length + (message != null ? encodedLength(message) + 3 : NULL.length + 1);
+        PooledByteBuffer body = pool != null ? pool.acquire(length) : PooledByteBuffer.wrap(new byte[length]);
+        ByteBuffer out = body.buffer().duplicate();
+        out.put(prefix);
+        if (message == null) {
+            out.put(NULL);
+            out.put((byte) '}');
+            return body;
+        }
+
+        out.put((byte) '"');
+        for (int i = 0, len = message.length(); i < len; ++i) {
+            char c = message.charAt(i);
+            switch (c) {
+                case '"':
+                    out.put((byte) '\\');
+                    out.put((byte) '"');
+                    break;
+                case '\\':
+                    out.put((byte) '\\');
+                    out.put((byte) '\\');
+                    break;
+                case '\b':
+                    out.put((byte) '\\');
+                    out.put((byte) 'b');
+                    break;
+                case '\f':
+                    out.put((byte) '\\');
+                    out.put((byte) 'f');
+                    break;
+                case '\n':
+                    out.put((byte) '\\');
+                    out.put((byte) 'n');
+                    break;
+                case '\r':
+                    out.put((byte) '\\');
+                    out.put((byte) 'r');
+                    break;
+                case '\t':
+                    out.put((byte) '\\');
+                    out.put((byte) 't');
+                    break;
+                default:
+                    if (c < 0x20 || c == 0x7f || c == 0x2028 || c == 0x2029) {
+                        out.put((byte) '\\');
+                        out.put((byte) 'u');
+                        out.put(HEX[(c >> 12) & 0x0f]);
+                        out.put(HEX[(c >> 8) & 0x0f]);
+                        out.put(HEX[(c >> 4) & 0x0f]);
+                        out.put(HEX[c & 0x0f]);
+                    } else if (c < 0x80) {
+                        out.put((byte) c);
+                    } else if (c < 0x800) {
+                        out.put((byte) (0xc0 | (c >> 6)));
+                        out.put((byte) (0x80 | (c & 0x3f)));
+                    } else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(message.charAt(i + 1))) {
+                        int cp = Character.toCodePoint(c, message.charAt(++i));
+                        out.put((byte) (0xf0 | (cp >> 18)));
+                        out.put((byte) (0x80 | ((cp >> 12) & 0x3f)));
+                        out.put((byte) (0x80 | ((cp >> 6) & 0x3f)));
+                        out.put((byte) (0x80 | (cp & 0x3f)));
+                    } else if (Character.isSurrogate(c)) {
+                        out.put((byte) '?');
+                    } else {
+                        out.put((byte) (0xe0 | (c >> 12)));
+                        out.put((byte) (0x80 | ((c >> 6) & 0x3f)));
+                        out.put((byte) (0x80 | (c & 0x3f)));
+                    }
+            }
+        }
+        out.put((byte) '"');
+        out.put((byte) '}');
+        return body;
+    }
+
+    private static int encodedLength(String message) {
+        int n = 0;
+        for (int i = 0, len = message.length(); i < len; ++i) {
+            char c = message.charAt(i);
+            if (c == '"' || c == '\\' || c == '\b' || c == '\f' || c == '\n' || c == '\r' || c == '\t') {
+                n += 2;
+            } else if (c < 0x20 || c == 0x7f || c == 0x2028 || c == 0x2029) {
+                n += 6;
+            } else if (c < 0x80) {
+                n += 1;
+            } else if (c < 0x800) {
+                n += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(message.charAt(i + 1))) {
+                n += 4;
+                ++i;
+            } else if (Character.isSurrogate(c)) {
+                n += 1;
+            } else {
+                n += 3;
+            }
+        }
+        return n;
+    }
+
+}
@@ -0,0 +1,100 @@
+package com.tuppari;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Gzip compression of request bodies with pooled {@link Deflater}s.
+ *
+ * Creating a Deflater allocates about 256 KB of native memory, so each thread (or the pool of
+ * virtual threads) keeps one together with its output buffer. The gzip member is written directly
+ * around the raw deflate stream, which is the same format {@link java.util.zip.GZIPOutputStream} writes.
+ */
+final class GzipEncoder {
+
+    private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
+
+    private static final int TRAILER_LENGTH = 8;
+
+    private static final int INITIAL_BUFFER_SIZE = 8192;
+
+    private static final int MAX_RETAINED_BUFFER_SIZE = 65536;
+
+    private static final ThreadLocalPool<GzipEncoder> instances = new ThreadLocalPool<GzipEncoder>(GzipEncoder::new);
+
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+
+    private final CRC32 crc = new CRC32();
+
+    private byte[] buf = new byte[INITIAL_BUFFER_SIZE];
+
+    private GzipEncoder() {
+    }
+
+    /**
+     * Returns the data compressed in gzip format.
+     *
+     * @param data The data to compress
+     * @return The gzip compressed data
+     */
+    static byte[] compress(byte[] data) {
+        return compress(ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Returns the data compressed in gzip format.
+     *
+     * @param data The data to compress, from its position to its limit; the position is not changed
+     * @return The gzip compressed data
+     */
+    static byte[] compress(ByteBuffer data) {
+        GzipEncoder e = instances.acquire();
+        try {
+            return e.encode(data);
+        } finally {
+            instances.release(e);
+        }
+    }
+
+    private byte[] encode(ByteBuffer data) {
+        int length = data.remaining();
+        deflater.reset();
+        deflater.setInput(data.duplicate());
+        deflater.finish();
+        crc.reset();
+        crc.update(data.duplicate());
+
+        System.arraycopy(HEADER, 0, buf, 0, HEADER.length);
+        int pos = HEADER.length;
+        while (!deflater.finished()) {
+            if (pos == buf.length) {
+                buf = Arrays.copyOf(buf, buf.length * 2);
+            }
+            pos += deflater.deflate(buf, pos, buf.length - pos);
+        }
+
+        if (pos + TRAILER_LENGTH > buf.length) {
+            buf = Arrays.copyOf(buf, pos + TRAILER_LENGTH);
+        }
+        pos = writeIntLE(buf, pos, (int) crc.getValue());
+        pos = writeIntLE(buf, pos, length);
+
+        byte[] result = Arrays.copyOf(buf, pos);
+        if (buf.length > MAX_RETAINED_BUFFER_SIZE) {
+            // Do not keep the buffer of an unusually large body for the life of the thread
+            buf = new byte[INITIAL_BUFFER_SIZE];
+        }
+        return result;
+    }
+
+    private static int writeIntLE(byte[] b, int pos, int value) {
+        b[pos] = (byte) value;
+        b[pos + 1] = (byte) (value >> 8);
+        b[pos + 2] = (byte) (value >> 16);
+        b[pos + 3] = (byte) (value >> 24);
+        return pos + 4;
+    }
+
+}
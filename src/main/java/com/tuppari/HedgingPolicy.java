@@ -0,0 +1,100 @@
+package com.tuppari;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Policy to send a duplicate (hedged) request when the first one is slower than usual.
+ *
+ * The hedge delay is the configured percentile of recently observed request latencies,
+ * clamped to [minDelayMillis, maxDelayMillis]. Until enough latencies are observed,
+ * maxDelayMillis is used. Whichever response arrives first wins.
+ *
+ * Publishing is not idempotent: when both requests reach the server, the message is delivered twice.
+ */
+public class HedgingPolicy {
+
+    private static final int SAMPLE_SIZE = 1024;
+
+    private static final int MIN_SAMPLES = 32;
+
+    private static final int RECOMPUTE_INTERVAL = 64;
+
+    private final double percentile;
+
+    private final long minDelayMillis;
+
+    private final long maxDelayMillis;
+
+    private final AtomicLongArray samples = new AtomicLongArray(SAMPLE_SIZE);
+
+    private final AtomicLong count = new AtomicLong();
+
+    private volatile long delayMillis;
+
+    /**
+     * @param percentile     Latency percentile used as hedge delay (such as 0.95)
+     * @param minDelayMillis The minimum hedge delay
+     * @param maxDelayMillis The maximum hedge delay
+     */
+    public HedgingPolicy(double percentile, long minDelayMillis, long maxDelayMillis) {
+        if (percentile <= 0.0 || percentile >= 1.0) {
+            throw new IllegalArgumentException("percentile must be between 0 and 1");
+        }
+        if (minDelayMillis < 0 || maxDelayMillis < minDelayMillis) {
+            throw new IllegalArgumentException("invalid delay");
+        }
+        this.percentile = percentile;
+        this.minDelayMillis = minDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.delayMillis = maxDelayMillis;
+    }
+
+    public double getPercentile() {
+        return percentile;
+    }
+
+    public long getMinDelayMillis() {
+        return minDelayMillis;
+    }
+
+    public long getMaxDelayMillis() {
+        return maxDelayMillis;
+    }
+
+    /**
+     * @return The current delay before a hedged request is sent
+     */
+    public long getDelayMillis() {
+        return delayMillis;
+    }
+
+    /**
+     * Record the latency of a successful request.
+     *
+     * @param latencyMillis The latency in milliseconds
+     */
+    void record(long latencyMillis) {
+        long n = count.getAndIncrement();
+        samples.set((int) (n % SAMPLE_SIZE), latencyMillis);
+        long recorded = n + 1;
+        if (recorded == MIN_SAMPLES || (recorded > MIN_SAMPLES && recorded % RECOMPUTE_INTERVAL == 0)) {
+            recompute((int) Math.min(recorded, SAMPLE_SIZE));
+        }
+    }
+
+    /**
+     * Compute the delay from a snapshot of the samples. Samples recorded concurrently may or may not be included.
+     */
+    private void recompute(int size) {
+        long[] sorted = new long[size];
+        for (int i = 0; i < size; ++i) {
+            sorted[i] = samples.get(i);
+        }
+        Arrays.sort(sorted);
+        long value = sorted[(int) Math.min(size - 1, (long) Math.ceil(percentile * size) - 1)];
+        delayMillis = Math.max(minDelayMillis, Math.min(maxDelayMillis, value));
+    }
+
+}
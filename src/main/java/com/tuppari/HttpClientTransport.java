@@ -0,0 +1,246 @@
+package com.tuppari;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link Transport} implementation using the JDK {@link HttpClient}.
+ *
+ * Requests are multiplexed over a few HTTP/2 connections when the server supports it (negotiated with ALPN
+ * for https, or with an h2c upgrade for http), and sent over HTTP/1.1 keep-alive connections otherwise.
+ * The asynchronous methods do not block any thread while the request is in flight, so asynchronous publishes
+ * of {@link TuppariClient} hold no thread while waiting for the response.
+ *
+ * Connect and read timeouts are taken from {@link TransportConfig}; the connection pool limits do not apply,
+ * as the JDK client manages its own connections. The Host header is set by the JDK client from the request URI,
+ * without the port when it is the default port of the scheme, which is the value signed by {@link SignUtil},
+ * so it is not sent explicitly.
+ */
+public class HttpClientTransport implements Transport {
+
+    private static final AtomicInteger clientNumber = new AtomicInteger(1);
+
+    /**
+     * Drains the body of a 2xx response without buffering it, and reads the body of an error response.
+     */
+    private static final HttpResponse.BodyHandler<byte[]> DISCARD_SUCCESS_BODY = info -> isSuccess(info.statusCode())
+            ? HttpResponse.BodySubscribers.replacing(null)
+            : HttpResponse.BodySubscribers.ofByteArray();
+
+    private final HttpClient httpClient;
+
+    private final ExecutorService executor;
+
+    private final Duration readTimeout;
+
+    /**
+     * Construct with default configuration, preferring HTTP/2.
+     */
+    public HttpClientTransport() {
+        this(new TransportConfig());
+    }
+
+    /**
+     * @param config The timeout configuration
+     */
+    public HttpClientTransport(TransportConfig config) {
+        this(config, HttpClient.Version.HTTP_2);
+    }
+
+    /**
+     * @param config The timeout configuration
+     * @param version The preferred HTTP version, {@link HttpClient.Version#HTTP_1_1} disables HTTP/2
+     */
+    public HttpClientTransport(TransportConfig config, HttpClient.Version version) {
+        final String namePrefix = "tuppari-http-client-" + clientNumber.getAndIncrement() + "-";
+        executor = Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, namePrefix + threadNumber.getAndIncrement());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+
+        HttpClient.Builder builder = HttpClient.newBuilder()
+                .version(version)
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .executor(executor);
+        if (config.getConnectTimeout() > 0) {
+            builder.connectTimeout(Duration.ofMillis(config.getConnectTimeout()));
+        }
+        httpClient = builder.build();
+        readTimeout = config.getReadTimeout() > 0 ? Duration.ofMillis(config.getReadTimeout()) : null;
+    }
+
+    @Override
+    public TransportResponse post(URI uri, Map<String, String> headers, byte[] body) {
+        return toTransportResponse(send(uri, headers, HttpRequest.BodyPublishers.ofByteArray(body), HttpResponse.BodyHandlers.ofByteArray()));
+    }
+
+    @Override
+    public TransportResponse postForStatus(URI uri, Map<String, String> headers, byte[] body) {
+        return toStatusResponse(send(uri, headers, HttpRequest.BodyPublishers.ofByteArray(body), DISCARD_SUCCESS_BODY));
+    }
+
+    /**
+     * Send POST request with the buffer as the body. The buffer is written to the connection without being copied,
+     * which saves a copy for direct buffers of {@link ByteBufferPool} on plain connections.
+     */
+    @Override
+    public TransportResponse post(URI uri, Map<String, String> headers, ByteBuffer body) {
+        return toTransportResponse(send(uri, headers, new ByteBufferBodyPublisher(body), HttpResponse.BodyHandlers.ofByteArray()));
+    }
+
+    @Override
+    public TransportResponse postForStatus(URI uri, Map<String, String> headers, ByteBuffer body) {
+        return toStatusResponse(send(uri, headers, new ByteBufferBodyPublisher(body), DISCARD_SUCCESS_BODY));
+    }
+
+    private HttpResponse<byte[]> send(URI uri, Map<String, String> headers, HttpRequest.BodyPublisher body, HttpResponse.BodyHandler<byte[]> handler) {
+        try {
+            return httpClient.send(newRequest(uri, headers, body), handler);
+        } catch (IOException e) {
+            throw new TuppariException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TuppariException(e);
+        }
+    }
+
+    @Override
+    public CompletableFuture<TransportResponse> postAsync(URI uri, Map<String, String> headers, byte[] body) {
+        return sendAsync(uri, headers, HttpRequest.BodyPublishers.ofByteArray(body), HttpResponse.BodyHandlers.ofByteArray())
+                .thenApply(HttpClientTransport::toTransportResponse);
+    }
+
+    @Override
+    public CompletableFuture<TransportResponse> postAsync(URI uri, Map<String, String> headers, ByteBuffer body) {
+        return sendAsync(uri, headers, new ByteBufferBodyPublisher(body), HttpResponse.BodyHandlers.ofByteArray())
+                .thenApply(HttpClientTransport::toTransportResponse);
+    }
+
+    @Override
+    public CompletableFuture<TransportResponse> postForStatusAsync(URI uri, Map<String, String> headers, ByteBuffer body) {
+        return sendAsync(uri, headers, new ByteBufferBodyPublisher(body), DISCARD_SUCCESS_BODY)
+                .thenApply(HttpClientTransport::toStatusResponse);
+    }
+
+    private CompletableFuture<HttpResponse<byte[]>> sendAsync(URI uri, Map<String, String> headers, HttpRequest.BodyPublisher body, HttpResponse.BodyHandler<byte[]> handler) {
+        HttpRequest request;
+        try {
+            request = newRequest(uri, headers, body);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return httpClient.sendAsync(request, handler)
+                .handle((response, error) -> {
+                    if (error != null) {
+                        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                        throw cause instanceof TuppariException ? (TuppariException) cause : new TuppariException(cause);
+                    }
+                    return response;
+                });
+    }
+
+    /**
+     * @return The underlying JDK client
+     */
+    public HttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private HttpRequest newRequest(URI uri, Map<String, String> headers, HttpRequest.BodyPublisher body) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(uri)
+                .POST(body)
+                .header("Accept", "application/json");
+        if (readTimeout != null) {
+            builder.timeout(readTimeout);
+        }
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            if (!"Host".equalsIgnoreCase(header.getKey())) {
+                builder.header(header.getKey(), header.getValue());
+            }
+        }
+        return builder.build();
+    }
+
+    private static TransportResponse toTransportResponse(HttpResponse<byte[]> response) {
+        return new TransportResponse(response.statusCode(), response.body());
+    }
+
+    private static TransportResponse toStatusResponse(HttpResponse<byte[]> response) {
+        if (isSuccess(response.statusCode())) {
+            return TransportResponse.discarded(response.statusCode(), response.headers().firstValueAsLong("Content-Length").orElse(-1));
+        }
+        return toTransportResponse(response);
+    }
+
+    private static boolean isSuccess(int status) {
+        return status >= 200 && status < 300;
+    }
+
+    /**
+     * Publishes the bytes of a buffer as a single item, from a new duplicate on every subscription.
+     */
+    private static class ByteBufferBodyPublisher implements HttpRequest.BodyPublisher {
+
+        private final ByteBuffer body;
+
+        ByteBufferBodyPublisher(ByteBuffer body) {
+            this.body = body;
+        }
+
+        @Override
+        public long contentLength() {
+            return body.remaining();
+        }
+
+        @Override
+        public void subscribe(final Flow.Subscriber<? super ByteBuffer> subscriber) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                private final AtomicBoolean done = new AtomicBoolean();
+
+                @Override
+                public void request(long n) {
+                    if (done.compareAndSet(false, true)) {
+                        if (n <= 0) {
+                            subscriber.onError(new IllegalArgumentException("non-positive request: " + n));
+                            return;
+                        }
+                        subscriber.onNext(body.duplicate());
+                        subscriber.onComplete();
+                    }
+                }
+
+                @Override
+                public void cancel() {
+                    done.set(true);
+                }
+            });
+        }
+
+    }
+
+}
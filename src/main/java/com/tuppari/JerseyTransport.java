@@ -0,0 +1,236 @@
+package com.tuppari;
+
+import com.sun.jersey.api.client.Client;
+import com.sun.jersey.api.client.ClientHandlerException;
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.api.client.WebResource;
+import com.sun.jersey.client.apache4.ApacheHttpClient4;
+import com.sun.jersey.client.apache4.config.ApacheHttpClient4Config;
+import com.sun.jersey.client.apache4.config.DefaultApacheHttpClient4Config;
+import org.apache.http.HttpHost;
+import org.apache.http.conn.ClientConnectionOperator;
+import org.apache.http.conn.ClientConnectionRequest;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ManagedClientConnection;
+import org.apache.http.conn.OperatedClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.impl.conn.DefaultClientConnectionOperator;
+import org.apache.http.impl.conn.SchemeRegistryFactory;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.HttpContext;
+
+import javax.ws.rs.core.MediaType;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Transport} implementation using Jersey client backed by pooled Apache HttpClient connections.
+ *
+ * Connections are kept alive and reused across requests. The pool is bounded in total and per host,
+ * and connections idle longer than {@link TransportConfig#getIdleConnectionTimeout()} are evicted
+ * by a background thread.
+ */
+public class JerseyTransport implements Transport {
+
+    private static final long MAX_EVICTION_INTERVAL = 5000L;
+
+    private final TimedConnectionManager connectionManager;
+
+    private final Client webClient;
+
+    private final ScheduledExecutorService evictor;
+
+    /**
+     * Construct with default configuration.
+     */
+    public JerseyTransport() {
+        this(new TransportConfig());
+    }
+
+    /**
+     * @param config The pool configuration
+     */
+    public JerseyTransport(TransportConfig config) {
+        connectionManager = new TimedConnectionManager(SchemeRegistryFactory.createDefault());
+        connectionManager.setMaxTotal(config.getMaxConnections());
+        connectionManager.setDefaultMaxPerRoute(config.getMaxConnectionsPerHost());
+
+        HttpParams params = new BasicHttpParams();
+        HttpConnectionParams.setConnectionTimeout(params, config.getConnectTimeout());
+        HttpConnectionParams.setSoTimeout(params, config.getReadTimeout());
+        HttpConnectionParams.setStaleCheckingEnabled(params, true);
+
+        DefaultApacheHttpClient4Config clientConfig = new DefaultApacheHttpClient4Config();
+        clientConfig.getProperties().put(ApacheHttpClient4Config.PROPERTY_CONNECTION_MANAGER, connectionManager);
+        clientConfig.getProperties().put(ApacheHttpClient4Config.PROPERTY_HTTP_PARAMS, params);
+        clientConfig.getProperties().put(ApacheHttpClient4Config.PROPERTY_DISABLE_COOKIES, Boolean.TRUE);
+        webClient = ApacheHttpClient4.create(clientConfig);
+
+        final long idleTimeout = config.getIdleConnectionTimeout();
+        if (idleTimeout > 0) {
+            long interval = Math.min(idleTimeout, MAX_EVICTION_INTERVAL);
+            evictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "tuppari-connection-evictor");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+            evictor.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    connectionManager.closeExpiredConnections();
+                    connectionManager.closeIdleConnections(idleTimeout, TimeUnit.MILLISECONDS);
+                }
+            }, interval, interval, TimeUnit.MILLISECONDS);
+        } else {
+            evictor = null;
+        }
+    }
+
+    @Override
+    public TransportResponse post(URI uri, Map<String, String> headers, byte[] body) {
+        return post(uri, headers, body, true);
+    }
+
+    @Override
+    public TransportResponse postForStatus(URI uri, Map<String, String> headers, byte[] body) {
+        return post(uri, headers, body, false);
+    }
+
+    private TransportResponse post(URI uri, Map<String, String> headers, byte[] body, boolean readBody) {
+        ClientResponse response = null;
+        try {
+            WebResource.Builder builder = webClient.resource(uri).getRequestBuilder();
+            builder.accept(MediaType.APPLICATION_JSON_TYPE);
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                builder.header(header.getKey(), header.getValue());
+            }
+            response = builder.post(ClientResponse.class, body);
+            int status = response.getStatus();
+            if (!readBody && status >= 200 && status < 300) {
+                return TransportResponse.discarded(status, response.hasEntity() ? drain(response.getEntityInputStream()) : 0);
+            }
+            return new TransportResponse(status, response.hasEntity() ? response.getEntity(byte[].class) : null);
+        } catch (IOException e) {
+            throw new TuppariException(e);
+        } catch (ClientHandlerException e) {
+            throw new TuppariException(e);
+        } finally {
+            if (response != null) {
+                response.close();
+            }
+        }
+    }
+
+    /**
+     * Read the stream to the end, so the connection is released to the pool instead of being closed.
+     *
+     * @return The number of bytes read
+     */
+    private static long drain(InputStream in) throws IOException {
+        byte[] buf = new byte[512];
+        long total = 0;
+        int n;
+        while ((n = in.read(buf)) != -1) {
+            total += n;
+        }
+        return total;
+    }
+
+    /**
+     * Set the listener of connection lease and open timings.
+     *
+     * @param metrics The listener or null to disable
+     */
+    public void setMetrics(TuppariMetrics metrics) {
+        connectionManager.metrics = metrics;
+    }
+
+    /**
+     * @return The number of connections currently held by the pool
+     */
+    public int getConnectionsInPool() {
+        return connectionManager.getConnectionsInPool();
+    }
+
+    @Override
+    public void close() {
+        if (evictor != null) {
+            evictor.shutdownNow();
+        }
+        webClient.destroy();
+        connectionManager.shutdown();
+    }
+
+    /**
+     * Connection manager that reports connection lease and open timings.
+     */
+    private static class TimedConnectionManager extends ThreadSafeClientConnManager {
+
+        volatile TuppariMetrics metrics;
+
+        TimedConnectionManager(SchemeRegistry schemeRegistry) {
+            super(schemeRegistry);
+        }
+
+        @Override
+        protected ClientConnectionOperator createConnectionOperator(SchemeRegistry schreg) {
+            return new DefaultClientConnectionOperator(schreg) {
+                @Override
+                public void openConnection(OperatedClientConnection conn, HttpHost target, InetAddress local, HttpContext context, HttpParams params) throws IOException {
+                    TuppariMetrics m = metrics;
+                    if (m == null) {
+                        super.openConnection(conn, target, local, context, params);
+                        return;
+                    }
+                    long start = System.nanoTime();
+                    try {
+                        super.openConnection(conn, target, local, context, params);
+                    } finally {
+                        m.onPhase(PublishPhase.CONNECTION_OPEN, System.nanoTime() - start);
+                    }
+                }
+            };
+        }
+
+        @Override
+        public ClientConnectionRequest requestConnection(HttpRoute route, Object state) {
+            final ClientConnectionRequest request = super.requestConnection(route, state);
+            final TuppariMetrics m = metrics;
+            if (m == null) {
+                return request;
+            }
+            return new ClientConnectionRequest() {
+                @Override
+                public ManagedClientConnection getConnection(long timeout, TimeUnit unit) throws InterruptedException, ConnectionPoolTimeoutException {
+                    long start = System.nanoTime();
+                    try {
+                        return request.getConnection(timeout, unit);
+                    } finally {
+                        m.onPhase(PublishPhase.CONNECTION_LEASE, System.nanoTime() - start);
+                    }
+                }
+
+                @Override
+                public void abortRequest() {
+                    request.abortRequest();
+                }
+            };
+        }
+
+    }
+
+}
@@ -0,0 +1,42 @@
+package com.tuppari;
+
+/**
+ * Message to publish to an event of a channel, the element type of {@link PublishProcessor}.
+ */
+public final class Message {
+
+    private final String channelName;
+
+    private final String eventName;
+
+    private final String message;
+
+    /**
+     * @param channelName Channel name
+     * @param eventName   Event name
+     * @param message     Message string that send to server
+     */
+    public Message(String channelName, String eventName, String message) {
+        this.channelName = channelName;
+        this.eventName = eventName;
+        this.message = message;
+    }
+
+    public String getChannelName() {
+        return channelName;
+    }
+
+    public String getEventName() {
+        return eventName;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    @Override
+    public String toString() {
+        return "Message{channel=" + channelName + ", event=" + eventName + ", message=" + message + "}";
+    }
+
+}
@@ -0,0 +1,107 @@
+package com.tuppari;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Point in time copy of {@link PublishMetrics}. Timings are in nanoseconds.
+ */
+public class MetricsSnapshot {
+
+    private final Map<PublishPhase, LatencyHistogram.Snapshot> phases;
+
+    private final long inFlight;
+
+    private final long succeeded;
+
+    private final long failed;
+
+    private final long bytesSent;
+
+    private final long bytesReceived;
+
+    private final Map<Integer, Long> errorsByStatus;
+
+    private final long signingKeyCacheHits;
+
+    private final long signingKeyCacheMisses;
+
+    MetricsSnapshot(Map<PublishPhase, LatencyHistogram.Snapshot> phases, long inFlight, long succeeded, long failed,
+                    long bytesSent, long bytesReceived, Map<Integer, Long> errorsByStatus,
+                    long signingKeyCacheHits, long signingKeyCacheMisses) {
+        this.phases = Collections.unmodifiableMap(phases);
+        this.inFlight = inFlight;
+        this.succeeded = succeeded;
+        this.failed = failed;
+        this.bytesSent = bytesSent;
+        this.bytesReceived = bytesReceived;
+        this.errorsByStatus = Collections.unmodifiableMap(errorsByStatus);
+        this.signingKeyCacheHits = signingKeyCacheHits;
+        this.signingKeyCacheMisses = signingKeyCacheMisses;
+    }
+
+    /**
+     * @param phase The phase
+     * @return Histogram of the phase timings in nanoseconds
+     */
+    public LatencyHistogram.Snapshot getPhase(PublishPhase phase) {
+        return phases.get(phase);
+    }
+
+    public long getInFlight() {
+        return inFlight;
+    }
+
+    public long getSucceeded() {
+        return succeeded;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    /**
+     * @return Failed attempts by HTTP status code (0 means no response was received)
+     */
+    public Map<Integer, Long> getErrorsByStatus() {
+        return errorsByStatus;
+    }
+
+    public long getSigningKeyCacheHits() {
+        return signingKeyCacheHits;
+    }
+
+    public long getSigningKeyCacheMisses() {
+        return signingKeyCacheMisses;
+    }
+
+    public double getSigningKeyCacheHitRate() {
+        long total = signingKeyCacheHits + signingKeyCacheMisses;
+        return total == 0 ? 0.0 : (double) signingKeyCacheHits / total;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("inFlight=").append(inFlight)
+                .append(", succeeded=").append(succeeded)
+                .append(", failed=").append(failed)
+                .append(", bytesSent=").append(bytesSent)
+                .append(", bytesReceived=").append(bytesReceived)
+                .append(", errors=").append(errorsByStatus)
+                .append(", signingKeyCacheHitRate=").append(String.format("%.3f", getSigningKeyCacheHitRate()));
+        for (Map.Entry<PublishPhase, LatencyHistogram.Snapshot> e : phases.entrySet()) {
+            sb.append('\n').append(e.getKey()).append(": ").append(e.getValue());
+        }
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,784 @@
+package com.tuppari;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
+
+/**
+ * Durable outbox of publishes, backed by memory-mapped append-only segment files.
+ * <p/>
+ * {@link #append(String, String, String)} encodes the message and copies it into the current segment, which takes
+ * microseconds and does not depend on the network. Background senders drain the outbox in order with
+ * {@link TuppariChannel#publish(String, String)} semantics, retrying failures according to the retry policy,
+ * so messages published while the server is down or slow are delivered when it recovers.
+ * <p/>
+ * The position up to which every message has been delivered is checkpointed periodically and on {@link #close()}.
+ * On {@link #start()}, undelivered messages after the checkpoint are replayed, so delivery is at-least-once:
+ * messages delivered after the last checkpoint are sent again after a crash. Segments are rolled when full and
+ * deleted once the checkpoint has passed them. Durability of appends is set by {@link OutboxSyncPolicy}.
+ * <p/>
+ * Record format: a 4 byte length, a 4 byte CRC32 of the body and the JSON body of the publish request.
+ * A length of 0 marks the end of the log, and -1 continues the log in the next segment.
+ * On {@link #start()}, an invalid record in the last segment is a torn write and is erased. An invalid record in
+ * an earlier segment is corruption: the rest of that segment is skipped and the log continues in the next segment,
+ * whose records are still delivered; see {@link #getCorruptedSegmentCount()}.
+ * <pre>
+ * Outbox outbox = new Outbox(client, new File("/var/lib/myapp/outbox"));
+ * outbox.setSyncPolicy(OutboxSyncPolicy.INTERVAL);
+ * outbox.start();
+ * outbox.append("channel", "event", "message");
+ * </pre>
+ */
+public class Outbox implements Closeable {
+
+    /**
+     * The default size of segment files in bytes.
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+    static final String SEGMENT_SUFFIX = ".segment";
+
+    static final String CHECKPOINT_FILE = "checkpoint";
+
+    private static final int HEADER_LENGTH = 8;
+
+    private static final int END_OF_LOG = 0;
+
+    private static final int NEXT_SEGMENT = -1;
+
+    private final TuppariClient client;
+
+    private final File directory;
+
+    private int segmentSize = DEFAULT_SEGMENT_SIZE;
+
+    private OutboxSyncPolicy syncPolicy = OutboxSyncPolicy.INTERVAL;
+
+    private long syncIntervalMillis = 1000;
+
+    private long checkpointIntervalMillis = 1000;
+
+    private int senders = 1;
+
+    private RetryPolicy retryPolicy = new RetryPolicy(Integer.MAX_VALUE, 100, 30000);
+
+    private volatile BiConsumer<String, TuppariException> dropListener;
+
+    private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<Long, Segment>();
+
+    private final Object writeLock = new Object();
+
+    private final CRC32 crc = new CRC32();
+
+    private Segment writeSegment;
+
+    private volatile long writePosition;
+
+    private final ReentrantLock readLock = new ReentrantLock();
+
+    private final Condition readable = readLock.newCondition();
+
+    private volatile boolean readersWaiting;
+
+    private long readPosition;
+
+    private final ArrayDeque<Record> inFlight = new ArrayDeque<Record>();
+
+    private long deliveredPosition;
+
+    private long checkpointPosition;
+
+    private final LongAdder appended = new LongAdder();
+
+    private final LongAdder sent = new LongAdder();
+
+    private final LongAdder dropped = new LongAdder();
+
+    private long recovered;
+
+    private long corruptedSegments;
+
+    private volatile boolean running;
+
+    private final List<Thread> senderThreads = new ArrayList<Thread>();
+
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param client The client that sends the messages
+     * @param directory The directory of the segment files, created if it does not exist
+     */
+    public Outbox(TuppariClient client, File directory) {
+        this.client = client;
+        this.directory = directory;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    /**
+     * Set the size of new segment files. Existing segments keep their size.
+     *
+     * @param segmentSize The size in bytes, which limits the size of a message
+     */
+    public void setSegmentSize(int segmentSize) {
+        if (segmentSize < 1024) {
+            throw new IllegalArgumentException("segmentSize must be at least 1024");
+        }
+        this.segmentSize = segmentSize;
+    }
+
+    public OutboxSyncPolicy getSyncPolicy() {
+        return syncPolicy;
+    }
+
+    /**
+     * Set when appended messages are forced to the storage device, {@link OutboxSyncPolicy#INTERVAL} by default.
+     *
+     * @param syncPolicy The sync policy
+     */
+    public void setSyncPolicy(OutboxSyncPolicy syncPolicy) {
+        if (syncPolicy == null) {
+            throw new IllegalArgumentException("syncPolicy is null");
+        }
+        this.syncPolicy = syncPolicy;
+    }
+
+    public long getSyncIntervalMillis() {
+        return syncIntervalMillis;
+    }
+
+    /**
+     * @param syncIntervalMillis The interval of {@link OutboxSyncPolicy#INTERVAL} in milliseconds (default 1000)
+     */
+    public void setSyncIntervalMillis(long syncIntervalMillis) {
+        if (syncIntervalMillis <= 0) {
+            throw new IllegalArgumentException("syncIntervalMillis must be positive");
+        }
+        this.syncIntervalMillis = syncIntervalMillis;
+    }
+
+    public long getCheckpointIntervalMillis() {
+        return checkpointIntervalMillis;
+    }
+
+    /**
+     * @param checkpointIntervalMillis The interval of checkpoints in milliseconds (default 1000)
+     */
+    public void setCheckpointIntervalMillis(long checkpointIntervalMillis) {
+        if (checkpointIntervalMillis <= 0) {
+            throw new IllegalArgumentException("checkpointIntervalMillis must be positive");
+        }
+        this.checkpointIntervalMillis = checkpointIntervalMillis;
+    }
+
+    public int getSenders() {
+        return senders;
+    }
+
+    /**
+     * Set the number of sender threads. With one sender (the default) messages are delivered in append order;
+     * with more, messages are sent concurrently and may be delivered out of order.
+     *
+     * @param senders The number of sender threads
+     */
+    public void setSenders(int senders) {
+        if (senders <= 0) {
+            throw new IllegalArgumentException("senders must be positive");
+        }
+        this.senders = senders;
+    }
+
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * Set the policy to retry failed sends. By default retryable failures are retried until delivered,
+     * with backoff up to 30 seconds. A message that fails with a non-retryable error, or exhausts the attempts
+     * of the policy, is dropped and reported to the drop listener.
+     *
+     * @param retryPolicy The retry policy
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        if (retryPolicy == null) {
+            throw new IllegalArgumentException("retryPolicy is null");
+        }
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * Set the listener of dropped messages, called with the JSON body of the publish and the last failure.
+     *
+     * @param dropListener The listener or null
+     */
+    public void setDropListener(BiConsumer<String, TuppariException> dropListener) {
+        this.dropListener = dropListener;
+    }
+
+    /**
+     * Open the segment files, recover the messages after the last checkpoint and start the senders.
+     *
+     * @return This outbox
+     * @throws IOException if the segment files cannot be opened
+     */
+    public synchronized Outbox start() throws IOException {
+        if (running) {
+            throw new IllegalStateException("Already started");
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create directory: " + directory);
+        }
+        recover();
+
+        running = true;
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "tuppari-outbox-scheduler");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::checkpointQuietly, checkpointIntervalMillis, checkpointIntervalMillis, TimeUnit.MILLISECONDS);
+        if (syncPolicy == OutboxSyncPolicy.INTERVAL) {
+            scheduler.scheduleWithFixedDelay(this::syncQuietly, syncIntervalMillis, syncIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+        for (int i = 0; i < senders; ++i) {
+            Thread t = new Thread(this::sendLoop, "tuppari-outbox-sender-" + (i + 1));
+            t.setDaemon(true);
+            t.start();
+            senderThreads.add(t);
+        }
+        return this;
+    }
+
+    /**
+     * Append a publish of the message to the outbox.
+     *
+     * @param channelName Channel name
+     * @param eventName Event name
+     * @param message Message string that send to server
+     * @return The position of the message in the outbox
+     * @throws TuppariException if the outbox is not started or the message cannot be written
+     */
+    public long append(String channelName, String eventName, String message) {
+        Map<String, Object> body = new LinkedHashMap<String, Object>();
+        body.put("applicationId", client.getApplicationId());
+        body.put("channel", channelName);
+        body.put("event", eventName);
+        body.put("message", message);
+        return append(SignUtil.encodeBody(body));
+    }
+
+    long append(byte[] body) {
+        long position;
+        synchronized (writeLock) {
+            if (!running) {
+                throw new TuppariException("Outbox is not running");
+            }
+            try {
+                int recordLength = HEADER_LENGTH + body.length;
+                Segment s = writeSegment;
+                if (s == null) {
+                    s = writeSegment = openSegment(writePosition, Math.max(segmentSize, recordLength + 4));
+                }
+                int offset = (int) (writePosition - s.base);
+                if (offset + recordLength + 4 > s.size) {
+                    s.buffer.putInt(offset, NEXT_SEGMENT);
+                    s = writeSegment = openSegment(s.base + s.size, Math.max(segmentSize, recordLength + 4));
+                    offset = 0;
+                }
+
+                crc.reset();
+                crc.update(body, 0, body.length);
+                ByteBuffer out = s.buffer.duplicate();
+                out.position(offset + HEADER_LENGTH);
+                out.put(body);
+                s.buffer.putInt(offset + 4, (int) crc.getValue());
+                // The length is written last, it commits the record
+                s.buffer.putInt(offset, body.length);
+                if (syncPolicy == OutboxSyncPolicy.ALWAYS) {
+                    s.buffer.force();
+                }
+
+                position = s.base + offset;
+                writePosition = position + recordLength;
+            } catch (IOException e) {
+                throw new TuppariException(e);
+            }
+        }
+        appended.increment();
+
+        if (readersWaiting) {
+            readLock.lock();
+            try {
+                readersWaiting = false;
+                readable.signalAll();
+            } finally {
+                readLock.unlock();
+            }
+        }
+        return position;
+    }
+
+    /**
+     * @return The number of messages appended since start
+     */
+    public long getAppendedCount() {
+        return appended.sum();
+    }
+
+    /**
+     * @return The number of undelivered messages recovered by {@link #start()}
+     */
+    public long getRecoveredCount() {
+        return recovered;
+    }
+
+    /**
+     * @return The number of segments found corrupted by {@link #start()}, whose records after the corruption
+     *         could not be read and are not delivered
+     */
+    public long getCorruptedSegmentCount() {
+        return corruptedSegments;
+    }
+
+    /**
+     * @return The number of messages delivered since start
+     */
+    public long getSentCount() {
+        return sent.sum();
+    }
+
+    /**
+     * @return The number of messages dropped since start
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * @return The number of messages waiting to be delivered
+     */
+    public long getBacklog() {
+        return recovered + appended.sum() - sent.sum() - dropped.sum();
+    }
+
+    /**
+     * @return The position up to which all messages are delivered and checkpointed
+     */
+    public synchronized long getCheckpointPosition() {
+        return checkpointPosition;
+    }
+
+    /**
+     * @return The number of segment files
+     */
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Stop the senders, write the checkpoint and close the segment files.
+     * Messages that are not delivered yet are kept and replayed on the next start.
+     */
+    @Override
+    public synchronized void close() {
+        if (!running) {
+            return;
+        }
+        synchronized (writeLock) {
+            running = false;
+        }
+        readLock.lock();
+        try {
+            readable.signalAll();
+        } finally {
+            readLock.unlock();
+        }
+        for (Thread t : senderThreads) {
+            t.interrupt();
+        }
+        for (Thread t : senderThreads) {
+            try {
+                t.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        senderThreads.clear();
+        scheduler.shutdownNow();
+
+        try {
+            if (syncPolicy != OutboxSyncPolicy.NONE) {
+                sync();
+            }
+            checkpoint();
+        } catch (IOException e) {
+            throw new TuppariException(e);
+        } finally {
+            segments.clear();
+            writeSegment = null;
+        }
+    }
+
+    /**
+     * Force all segment files to the storage device.
+     *
+     * @throws IOException if failed to write
+     */
+    void sync() throws IOException {
+        for (Segment s : segments.values()) {
+            s.buffer.force();
+        }
+    }
+
+    /**
+     * Save the delivered position and delete the segments before it.
+     *
+     * @throws IOException if failed to write the checkpoint
+     */
+    synchronized void checkpoint() throws IOException {
+        long position;
+        synchronized (inFlight) {
+            position = deliveredPosition;
+        }
+        if (position == checkpointPosition) {
+            return;
+        }
+
+        File tmp = new File(directory, CHECKPOINT_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buf = ByteBuffer.allocate(16);
+            buf.putLong(position).putLong(~position).flip();
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+            if (syncPolicy != OutboxSyncPolicy.NONE) {
+                channel.force(true);
+            }
+        }
+        Files.move(tmp.toPath(), new File(directory, CHECKPOINT_FILE).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        checkpointPosition = position;
+
+        for (Segment s : segments.headMap(position).values()) {
+            if (s.base + s.size <= position && s != writeSegment) {
+                segments.remove(s.base);
+                Files.deleteIfExists(s.file.toPath());
+            }
+        }
+    }
+
+    private void checkpointQuietly() {
+        try {
+            checkpoint();
+        } catch (IOException e) {
+            // Retried on the next checkpoint
+        }
+    }
+
+    private void syncQuietly() {
+        try {
+            sync();
+        } catch (IOException e) {
+            // Retried on the next sync
+        }
+    }
+
+    private void sendLoop() {
+        while (running) {
+            Record record;
+            try {
+                record = next();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (record == null) {
+                return;
+            }
+            if (send(record)) {
+                delivered(record);
+            }
+        }
+    }
+
+    /**
+     * Send the record, retrying according to the retry policy.
+     *
+     * @return false if the outbox was closed before the record was resolved
+     */
+    private boolean send(final Record record) {
+        RetryPolicy retry = retryPolicy;
+        for (int attempt = 1; ; ++attempt) {
+            try {
+                client.acquirePermit(null, Long.MAX_VALUE);
+                client.post(TuppariClient.TUPPARI_MESSAGE_PUBLISH_API_METHOD, () -> record.body, false);
+                sent.increment();
+                return true;
+            } catch (TuppariException e) {
+                if (!running) {
+                    return false;
+                }
+                if (attempt >= retry.getMaxAttempts() || !retry.isRetryable(e)) {
+                    dropped.increment();
+                    BiConsumer<String, TuppariException> listener = dropListener;
+                    if (listener != null) {
+                        listener.accept(new String(record.body, StandardCharsets.UTF_8), e);
+                    }
+                    return true;
+                }
+                try {
+                    Thread.sleep(retry.backoffMillis(attempt));
+                } catch (InterruptedException ie) {
+                    return false;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the next record to send, waiting until one is appended.
+     *
+     * @return The record or null if the outbox is closed
+     */
+    private Record next() throws InterruptedException {
+        readLock.lock();
+        try {
+            while (running) {
+                long p = readPosition;
+                if (p < writePosition) {
+                    Map.Entry<Long, Segment> entry = segments.floorEntry(p);
+                    Segment s = entry != null ? entry.getValue() : null;
+                    if (s == null || p >= s.base + s.size) {
+                        // Missing segment file, found by the recovery
+                        readPosition = segments.higherKey(p);
+                        continue;
+                    }
+                    int offset = (int) (p - s.base);
+                    int length = s.buffer.getInt(offset);
+                    if (length == NEXT_SEGMENT) {
+                        readPosition = s.base + s.size;
+                        continue;
+                    }
+                    byte[] body = new byte[length];
+                    ByteBuffer in = s.buffer.duplicate();
+                    in.position(offset + HEADER_LENGTH);
+                    in.get(body);
+                    readPosition = p + HEADER_LENGTH + length;
+
+                    Record record = new Record(readPosition, body);
+                    synchronized (inFlight) {
+                        inFlight.addLast(record);
+                    }
+                    return record;
+                }
+                readersWaiting = true;
+                readable.await(100, TimeUnit.MILLISECONDS);
+            }
+            return null;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Mark the record resolved, and advance the delivered position over the resolved records at the head.
+     */
+    private void delivered(Record record) {
+        synchronized (inFlight) {
+            record.done = true;
+            while (!inFlight.isEmpty() && inFlight.peekFirst().done) {
+                deliveredPosition = inFlight.pollFirst().end;
+            }
+        }
+    }
+
+    /**
+     * Open the segments, delete those before the checkpoint, and find the end of the log by validating
+     * the records after the checkpoint. A torn record in the last segment is erased; the rest of a segment after
+     * a corrupted record in an earlier segment is skipped, so the records of the later segments are kept.
+     */
+    private void recover() throws IOException {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(SEGMENT_SUFFIX));
+        List<Long> bases = new ArrayList<Long>();
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                try {
+                    bases.add(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    // Not a segment of this outbox
+                }
+            }
+        }
+        Collections.sort(bases);
+
+        long checkpoint = readCheckpoint(bases.isEmpty() ? 0 : bases.get(0));
+        for (long base : bases) {
+            File file = segmentFile(base);
+            if (base + file.length() <= checkpoint) {
+                Files.deleteIfExists(file.toPath());
+            } else {
+                segments.put(base, openSegment(base, (int) file.length()));
+            }
+        }
+
+        long p = checkpoint;
+        Segment end = null;
+        long count = 0;
+        long corrupted = 0;
+        while (true) {
+            Map.Entry<Long, Segment> entry = segments.floorEntry(p);
+            Segment s = entry != null ? entry.getValue() : null;
+            if (s == null || p >= s.base + s.size) {
+                Long next = segments.higherKey(p);
+                if (next == null) {
+                    break;
+                }
+                // The segment files in between are missing
+                ++corrupted;
+                p = next;
+                continue;
+            }
+            int offset = (int) (p - s.base);
+            int length = s.buffer.getInt(offset);
+            if (length == NEXT_SEGMENT) {
+                p = s.base + s.size;
+                continue;
+            }
+            if (length > 0 && offset + HEADER_LENGTH + length + 4 <= s.size && isValid(s, offset, length)) {
+                ++count;
+                p += HEADER_LENGTH + length;
+                continue;
+            }
+            if (segments.higherKey(s.base) != null) {
+                // Corrupted before the last segment, whose records may be synced and acknowledged:
+                // skip the rest of this segment, and keep its bytes
+                s.buffer.putInt(offset, NEXT_SEGMENT);
+                ++corrupted;
+                p = s.base + s.size;
+                continue;
+            }
+            // End of the log, or a torn record written when the process or the machine crashed
+            for (int i = offset; i < s.size; ++i) {
+                s.buffer.put(i, (byte) 0);
+            }
+            end = s;
+            break;
+        }
+
+        writeSegment = end;
+        writePosition = p;
+        readPosition = checkpoint;
+        deliveredPosition = checkpoint;
+        checkpointPosition = checkpoint;
+        recovered = count;
+        corruptedSegments = corrupted;
+    }
+
+    private boolean isValid(Segment s, int offset, int length) {
+        ByteBuffer in = s.buffer.duplicate();
+        in.position(offset + HEADER_LENGTH).limit(offset + HEADER_LENGTH + length);
+        crc.reset();
+        crc.update(in);
+        return (int) crc.getValue() == s.buffer.getInt(offset + 4);
+    }
+
+    private long readCheckpoint(long defaultPosition) throws IOException {
+        File file = new File(directory, CHECKPOINT_FILE);
+        if (!file.exists()) {
+            return defaultPosition;
+        }
+        ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        if (buf.remaining() != 16) {
+            throw new IOException("Corrupted checkpoint: " + file);
+        }
+        long position = buf.getLong();
+        if (buf.getLong() != ~position) {
+            throw new IOException("Corrupted checkpoint: " + file);
+        }
+        return position;
+    }
+
+    private Segment openSegment(long base, int size) throws IOException {
+        Segment s = segments.get(base);
+        if (s == null) {
+            s = new Segment(base, segmentFile(base), size);
+            segments.put(base, s);
+        }
+        return s;
+    }
+
+    private File segmentFile(long base) {
+        return new File(directory, String.format("%020d%s", base, SEGMENT_SUFFIX));
+    }
+
+    private static class Segment {
+
+        final long base;
+
+        final File file;
+
+        final int size;
+
+        final MappedByteBuffer buffer;
+
+        Segment(long base, File file, int size) throws IOException {
+            this.base = base;
+            this.file = file;
+            // The mapping stays valid after the file is closed, and is unmapped by the garbage collector
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                if (raf.length() < size) {
+                    raf.setLength(size);
+                }
+                this.size = (int) raf.length();
+                this.buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, this.size);
+            }
+        }
+
+    }
+
+    private static class Record {
+
+        final long end;
+
+        final byte[] body;
+
+        boolean done;
+
+        Record(long end, byte[] body) {
+            this.end = end;
+            this.body = body;
+        }
+
+    }
+
+}
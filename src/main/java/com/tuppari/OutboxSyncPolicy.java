@@ -0,0 +1,26 @@
+package com.tuppari;
+
+/**
+ * When {@link Outbox} forces appended messages from the page cache to the storage device.
+ */
+public enum OutboxSyncPolicy {
+
+    /**
+     * Leave writing back to the operating system. Appended messages survive a crash of the process,
+     * but not a crash of the machine.
+     */
+    NONE,
+
+    /**
+     * Force the segment files periodically, every {@link Outbox#getSyncIntervalMillis()}.
+     * At most the messages appended within the interval may be lost by a crash of the machine.
+     */
+    INTERVAL,
+
+    /**
+     * Force the segment file on every append. No acknowledged message is lost, at the cost of a synchronous
+     * disk write in every append.
+     */
+    ALWAYS
+
+}
@@ -0,0 +1,124 @@
+package com.tuppari;
+
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lease of a buffer from {@link ByteBufferPool}.
+ * <p/>
+ * The lease is reference counted: it starts with one reference, {@link #retain()} adds one, and the buffer
+ * returns to the pool when {@link #release()} has been called once more than {@link #retain()}.
+ * The buffer must not be used after its last release.
+ */
+public final class PooledByteBuffer {
+
+    private final ByteBufferPool pool;
+
+    private final ByteBuffer buffer;
+
+    private final AtomicInteger refCount = new AtomicInteger(1);
+
+    private Cleaner.Cleanable cleanable;
+
+    private LeakTracker tracker;
+
+    PooledByteBuffer(ByteBufferPool pool, ByteBuffer buffer) {
+        this.pool = pool;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Returns a lease of a heap buffer that does not belong to any pool.
+     *
+     * @param data The content of the buffer
+     * @return The lease
+     */
+    static PooledByteBuffer wrap(byte[] data) {
+        return new PooledByteBuffer(null, ByteBuffer.wrap(data));
+    }
+
+    /**
+     * @return The buffer, with position 0 and limit at the size requested from the pool
+     */
+    public ByteBuffer buffer() {
+        return buffer;
+    }
+
+    /**
+     * @return true if the buffer belongs to a pool
+     */
+    public boolean isPooled() {
+        return pool != null;
+    }
+
+    /**
+     * Add a reference to this lease.
+     *
+     * @return This lease
+     * @throws IllegalStateException if the lease is already released
+     */
+    public PooledByteBuffer retain() {
+        int n;
+        do {
+            n = refCount.get();
+            if (n <= 0) {
+                throw new IllegalStateException("Buffer already released");
+            }
+        } while (!refCount.compareAndSet(n, n + 1));
+        return this;
+    }
+
+    /**
+     * Remove a reference from this lease, and return the buffer to the pool on the last reference.
+     *
+     * @throws IllegalStateException if the lease is already released
+     */
+    public void release() {
+        int n = refCount.decrementAndGet();
+        if (n > 0) {
+            return;
+        }
+        if (n < 0) {
+            throw new IllegalStateException("Buffer already released");
+        }
+        if (tracker != null) {
+            tracker.released = true;
+            cleanable.clean();
+        }
+        if (pool != null) {
+            pool.release(buffer);
+        }
+    }
+
+    void track(Cleaner cleaner, Throwable acquiredAt) {
+        tracker = new LeakTracker(pool, acquiredAt);
+        cleanable = cleaner.register(this, tracker);
+    }
+
+    /**
+     * Cleaning action of a tracked lease; must not refer to the lease itself.
+     */
+    private static class LeakTracker implements Runnable {
+
+        private final ByteBufferPool pool;
+
+        private final Throwable acquiredAt;
+
+        volatile boolean released;
+
+        LeakTracker(ByteBufferPool pool, Throwable acquiredAt) {
+            this.pool = pool;
+            this.acquiredAt = acquiredAt;
+        }
+
+        @Override
+        public void run() {
+            if (!released) {
+                pool.onLeak(acquiredAt);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,109 @@
+package com.tuppari;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link TuppariMetrics} implementation that records phase timings in {@link LatencyHistogram}s
+ * and counters, and provides a {@link MetricsSnapshot}.
+ */
+public class PublishMetrics implements TuppariMetrics {
+
+    private final LatencyHistogram[] phases = new LatencyHistogram[PublishPhase.values().length];
+
+    private final LongAdder inFlight = new LongAdder();
+
+    private final LongAdder succeeded = new LongAdder();
+
+    private final LongAdder failed = new LongAdder();
+
+    private final LongAdder bytesSent = new LongAdder();
+
+    private final LongAdder bytesReceived = new LongAdder();
+
+    private final LongAdder signingKeyCacheHits = new LongAdder();
+
+    private final LongAdder signingKeyCacheMisses = new LongAdder();
+
+    private final ConcurrentMap<Integer, LongAdder> errors = new ConcurrentHashMap<Integer, LongAdder>();
+
+    public PublishMetrics() {
+        for (int i = 0; i < phases.length; ++i) {
+            phases[i] = new LatencyHistogram();
+        }
+    }
+
+    @Override
+    public void onPhase(PublishPhase phase, long nanos) {
+        phases[phase.ordinal()].record(nanos);
+    }
+
+    @Override
+    public void onPublishStart() {
+        inFlight.increment();
+    }
+
+    @Override
+    public void onPublishEnd(long nanos, boolean success) {
+        inFlight.decrement();
+        phases[PublishPhase.TOTAL.ordinal()].record(nanos);
+        if (success) {
+            succeeded.increment();
+        } else {
+            failed.increment();
+        }
+    }
+
+    @Override
+    public void onBytesSent(long bytes) {
+        bytesSent.add(bytes);
+    }
+
+    @Override
+    public void onBytesReceived(long bytes) {
+        bytesReceived.add(bytes);
+    }
+
+    @Override
+    public void onError(int status) {
+        LongAdder counter = errors.get(status);
+        if (counter == null) {
+            counter = new LongAdder();
+            LongAdder existing = errors.putIfAbsent(status, counter);
+            if (existing != null) {
+                counter = existing;
+            }
+        }
+        counter.increment();
+    }
+
+    @Override
+    public void onSigningKeyCacheLookup(boolean hit) {
+        if (hit) {
+            signingKeyCacheHits.increment();
+        } else {
+            signingKeyCacheMisses.increment();
+        }
+    }
+
+    /**
+     * @return A point in time copy of the metrics
+     */
+    public MetricsSnapshot snapshot() {
+        Map<PublishPhase, LatencyHistogram.Snapshot> phaseSnapshots = new EnumMap<PublishPhase, LatencyHistogram.Snapshot>(PublishPhase.class);
+        for (PublishPhase phase : PublishPhase.values()) {
+            phaseSnapshots.put(phase, phases[phase.ordinal()].snapshot());
+        }
+        Map<Integer, Long> errorCounts = new TreeMap<Integer, Long>();
+        for (Map.Entry<Integer, LongAdder> e : errors.entrySet()) {
+            errorCounts.put(e.getKey(), e.getValue().sum());
+        }
+        return new MetricsSnapshot(phaseSnapshots, inFlight.sum(), succeeded.sum(), failed.sum(),
+                bytesSent.sum(), bytesReceived.sum(), errorCounts, signingKeyCacheHits.sum(), signingKeyCacheMisses.sum());
+    }
+
+}
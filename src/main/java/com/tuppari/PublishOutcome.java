@@ -0,0 +1,49 @@
+package com.tuppari;
+
+/**
+ * Outcome of the publish of a {@link Message} by {@link PublishProcessor}: the result if the server accepted it,
+ * or the failure.
+ */
+public final class PublishOutcome {
+
+    private final Message message;
+
+    private final PublishResult result;
+
+    private final TuppariException error;
+
+    PublishOutcome(Message message, PublishResult result, TuppariException error) {
+        this.message = message;
+        this.result = result;
+        this.error = error;
+    }
+
+    /**
+     * @return The published message
+     */
+    public Message getMessage() {
+        return message;
+    }
+
+    /**
+     * @return The result, or null if the publish failed
+     */
+    public PublishResult getResult() {
+        return result;
+    }
+
+    /**
+     * @return The failure, or null if the publish succeeded
+     */
+    public TuppariException getError() {
+        return error;
+    }
+
+    /**
+     * @return true if the server accepted the message
+     */
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+}
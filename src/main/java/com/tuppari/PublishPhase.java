@@ -0,0 +1,43 @@
+package com.tuppari;
+
+/**
+ * Phases of a publish request measured by {@link TuppariMetrics}.
+ */
+public enum PublishPhase {
+
+    /**
+     * Encoding the body to JSON.
+     */
+    ENCODE,
+
+    /**
+     * Compressing the encoded body (only when it reaches the compression threshold).
+     */
+    COMPRESS,
+
+    /**
+     * Canonicalising the request and calculating the HMAC signature.
+     */
+    SIGN,
+
+    /**
+     * Leasing a connection from the connection pool.
+     */
+    CONNECTION_LEASE,
+
+    /**
+     * Opening a new connection (only when no pooled connection is available).
+     */
+    CONNECTION_OPEN,
+
+    /**
+     * Sending the request and receiving the response, including connection lease and open.
+     */
+    ROUND_TRIP,
+
+    /**
+     * The whole publish including retries and hedged requests.
+     */
+    TOTAL
+
+}
@@ -0,0 +1,259 @@
+package com.tuppari;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+
+/**
+ * {@link Flow.Processor} that publishes the {@link Message}s of an upstream publisher, and emits the outcome
+ * of each publish downstream.
+ * <p/>
+ * Demand is requested from upstream only while publishes can be sent: at most {@code maxConcurrency} publishes
+ * are in flight, and no more than the slots left under the in-flight limit of the client, or the current limit
+ * of its {@link ConcurrencyLimiter} if set, which other publishes of the client also take. So a stream slows
+ * down when Tuppari is the bottleneck, instead of buffering messages without bound. A message rejected because
+ * other publishes took the slots in the meantime is sent again once a slot is free, instead of failing,
+ * until the processor is closed.
+ * <p/>
+ * Failed publishes are emitted as outcomes with an error and do not terminate the stream. When upstream
+ * completes or fails, the processor completes or fails downstream after the in-flight publishes are done;
+ * like {@link SubmissionPublisher#closeExceptionally(Throwable)}, a failure may be signalled before outcomes
+ * still buffered for a subscriber.
+ * Outcomes are buffered for each subscriber as in {@link SubmissionPublisher}; when a subscriber's buffer is
+ * full, completing publishes wait for it, which in turn stops the demand to upstream. Outcomes are dropped
+ * if there is no subscriber.
+ * <p/>
+ * For Reactive Streams, adapt the processor with {@code org.reactivestreams.FlowAdapters.toProcessor(processor)}.
+ * <pre>
+ * PublishProcessor processor = new PublishProcessor(client, 64);
+ * messages.subscribe(processor);
+ * processor.subscribe(outcomes);
+ * </pre>
+ */
+public class PublishProcessor extends SubmissionPublisher<PublishOutcome> implements Flow.Processor<Message, PublishOutcome> {
+
+    /**
+     * The default maximum number of concurrent publishes.
+     */
+    public static final int DEFAULT_MAX_CONCURRENCY = 16;
+
+    private final TuppariClient client;
+
+    private final int maxConcurrency;
+
+    private final Object lock = new Object();
+
+    private Flow.Subscription subscription;
+
+    private int inFlight;
+
+    private long requested;
+
+    private int waiting;
+
+    private boolean retryScheduled;
+
+    private boolean upstreamDone;
+
+    private boolean closed;
+
+    private Throwable upstreamError;
+
+    /**
+     * Construct with the default maximum concurrency.
+     *
+     * @param client The client that sends the messages
+     */
+    public PublishProcessor(TuppariClient client) {
+        this(client, DEFAULT_MAX_CONCURRENCY);
+    }
+
+    /**
+     * @param client         The client that sends the messages
+     * @param maxConcurrency The maximum number of concurrent publishes
+     */
+    public PublishProcessor(TuppariClient client, int maxConcurrency) {
+        if (maxConcurrency <= 0) {
+            throw new IllegalArgumentException("maxConcurrency must be positive");
+        }
+        this.client = client;
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * @return The number of publishes in flight
+     */
+    public int getInFlight() {
+        synchronized (lock) {
+            return inFlight;
+        }
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        synchronized (lock) {
+            if (this.subscription != null) {
+                subscription.cancel();
+                return;
+            }
+            this.subscription = subscription;
+        }
+        requestMore();
+    }
+
+    @Override
+    public void onNext(final Message item) {
+        synchronized (lock) {
+            ++inFlight;
+            --requested;
+        }
+        send(item);
+    }
+
+    private void send(final Message item) {
+        client.join(item.getChannelName()).sendAsync(item.getEventName(), item.getMessage())
+                .whenComplete((result, error) -> {
+                    if (error != null && TuppariClient.isInFlightRejection(error) && sendLater(item, error)) {
+                        return;
+                    }
+                    emit(item, result, error);
+                });
+    }
+
+    /**
+     * Send a message rejected because other publishes of the client took the free slots again later,
+     * unless the processor is closed by then.
+     *
+     * @return false if the processor is closed, and the message must be emitted as failed
+     */
+    private boolean sendLater(final Message item, final Throwable error) {
+        synchronized (lock) {
+            if (closed) {
+                return false;
+            }
+            ++waiting;
+        }
+        TuppariClient.IN_FLIGHT_RETRY_EXECUTOR.execute(() -> {
+            boolean resend;
+            synchronized (lock) {
+                --waiting;
+                resend = !closed;
+            }
+            if (resend) {
+                send(item);
+            } else {
+                emit(item, null, error);
+            }
+        });
+        return true;
+    }
+
+    private void emit(Message item, PublishResult result, Throwable error) {
+        if (error == null) {
+            submit(new PublishOutcome(item, result, null));
+        } else {
+            submit(new PublishOutcome(item, null, toTuppariException(error)));
+        }
+        synchronized (lock) {
+            --inFlight;
+        }
+        requestMore();
+        completeIfDone();
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        synchronized (lock) {
+            upstreamDone = true;
+            upstreamError = throwable;
+        }
+        completeIfDone();
+    }
+
+    @Override
+    public void onComplete() {
+        synchronized (lock) {
+            upstreamDone = true;
+        }
+        completeIfDone();
+    }
+
+    /**
+     * Cancel the upstream subscription and complete downstream after the in-flight publishes. Messages waiting
+     * to be sent again for a free slot are not sent, and are emitted as failed outcomes instead.
+     */
+    @Override
+    public void close() {
+        Flow.Subscription s;
+        synchronized (lock) {
+            s = subscription;
+            upstreamDone = true;
+            closed = true;
+        }
+        if (s != null) {
+            s.cancel();
+        }
+        completeIfDone();
+    }
+
+    /**
+     * @return The number of publishes that can be started now, besides the requested ones; must hold the lock
+     */
+    private long capacity() {
+        // Messages waiting for a slot are in flight here but do not hold a slot of the client
+        int available = client.getAvailableInFlight() - waiting;
+        return Math.min(maxConcurrency - inFlight, available) - requested;
+    }
+
+    private void requestMore() {
+        Flow.Subscription s;
+        long n;
+        synchronized (lock) {
+            s = subscription;
+            if (s == null || upstreamDone) {
+                return;
+            }
+            n = capacity();
+            if (n <= 0) {
+                if (inFlight == 0 && requested == 0 && !retryScheduled) {
+                    // The slots are held by other publishes of the client, nothing here will request again
+                    retryScheduled = true;
+                    TuppariClient.IN_FLIGHT_RETRY_EXECUTOR.execute(() -> {
+                        synchronized (lock) {
+                            retryScheduled = false;
+                        }
+                        requestMore();
+                    });
+                }
+                return;
+            }
+            requested += n;
+        }
+        s.request(n);
+    }
+
+    private void completeIfDone() {
+        Throwable error;
+        synchronized (lock) {
+            if (!upstreamDone || inFlight > 0) {
+                return;
+            }
+            error = upstreamError;
+        }
+        if (error != null) {
+            closeExceptionally(error);
+        } else {
+            super.close();
+        }
+    }
+
+    private static TuppariException toTuppariException(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        return cause instanceof TuppariException ? (TuppariException) cause : new TuppariException(cause);
+    }
+
+}
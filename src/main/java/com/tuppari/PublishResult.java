@@ -0,0 +1,93 @@
+package com.tuppari;
+
+import net.arnx.jsonic.JSON;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Result of a publish request.
+ *
+ * A result created from the response body decodes it on the first access of a field,
+ * so callers that ignore the result never pay for the JSON decoding.
+ */
+public class PublishResult {
+
+    private final String body;
+
+    private volatile Map<String, String> data;
+
+    /**
+     * @param data The decoded response data
+     */
+    PublishResult(Map<String, String> data) {
+        this.body = null;
+        this.data = data != null ? data : Collections.<String, String>emptyMap();
+    }
+
+    /**
+     * @param body The response body, decoded on first access
+     */
+    PublishResult(String body) {
+        this.body = body;
+    }
+
+    public String getApplicationId() {
+        return get("applicationId");
+    }
+
+    public String getChannel() {
+        return get("channel");
+    }
+
+    public String getEvent() {
+        return get("event");
+    }
+
+    public String getMessage() {
+        return get("message");
+    }
+
+    /**
+     * Returns the response field value of the specified name.
+     *
+     * @param name Field name
+     * @return Field value or null if not present
+     */
+    public String get(String name) {
+        Object value = data().get(name);
+        return value != null ? value.toString() : null;
+    }
+
+    /**
+     * @return Response data as a read only map
+     */
+    public Map<String, String> asMap() {
+        return Collections.unmodifiableMap(data());
+    }
+
+    @Override
+    public String toString() {
+        return data().toString();
+    }
+
+    /**
+     * @throws TuppariException if the response body is not a JSON object
+     */
+    private Map<String, String> data() {
+        Map<String, String> d = data;
+        if (d == null) {
+            try {
+                d = JSON.decode(body);
+            } catch (RuntimeException e) {
+                throw new TuppariException(e);
+            }
+            if (d == null) {
+                d = Collections.<String, String>emptyMap();
+            }
+            data = d;
+        }
+        return d;
+    }
+
+}
@@ -0,0 +1,168 @@
+package com.tuppari;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+/**
+ * Token bucket that limits the rate of publishes, set on a client with {@link TuppariClient#setRateLimiter(RateLimiter)}.
+ * <p/>
+ * The bucket holds up to {@code burst} permits and is refilled at {@code permitsPerSecond}. It is implemented as
+ * a virtual scheduling (GCRA) of the time at which the bucket is full again, kept in a single atomic long, so
+ * taking a permit is one compare-and-set without locks. A permit can be taken immediately or not at all
+ * ({@link #tryAcquire()}), within a timeout ({@link #tryAcquire(long, TimeUnit)}) or without limit ({@link #acquire()}).
+ * Waiting callers reserve their permit first, so they are served in order and never spin.
+ * <p/>
+ * A limiter may be shared by the clients of the same application, to limit their total rate.
+ */
+public class RateLimiter {
+
+    private final double permitsPerSecond;
+
+    private final int burst;
+
+    private final long intervalNanos;
+
+    private final long capacityNanos;
+
+    private final LongSupplier ticker;
+
+    /**
+     * The time at which the bucket would be full if no permit is taken.
+     */
+    private final AtomicLong fullAt;
+
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * @param permitsPerSecond The rate at which the bucket is refilled
+     * @param burst            The capacity of the bucket, the number of permits that can be taken at once
+     */
+    public RateLimiter(double permitsPerSecond, int burst) {
+        this(permitsPerSecond, burst, System::nanoTime);
+    }
+
+    RateLimiter(double permitsPerSecond, int burst, LongSupplier ticker) {
+        if (!(permitsPerSecond > 0) || permitsPerSecond > TimeUnit.SECONDS.toNanos(1)) {
+            throw new IllegalArgumentException("permitsPerSecond must be positive");
+        }
+        if (burst <= 0) {
+            throw new IllegalArgumentException("burst must be positive");
+        }
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = burst;
+        this.intervalNanos = Math.round(TimeUnit.SECONDS.toNanos(1) / permitsPerSecond);
+        this.capacityNanos = intervalNanos * burst;
+        this.ticker = ticker;
+        this.fullAt = new AtomicLong(ticker.getAsLong());
+    }
+
+    public double getPermitsPerSecond() {
+        return permitsPerSecond;
+    }
+
+    public int getBurst() {
+        return burst;
+    }
+
+    /**
+     * Take a permit if one is available now.
+     *
+     * @return true if a permit is taken
+     */
+    public boolean tryAcquire() {
+        return reserve(0) >= 0;
+    }
+
+    /**
+     * Take a permit, waiting up to the timeout for one to become available.
+     * The caller returns false immediately if the permit would not be available within the timeout.
+     *
+     * @param timeout The maximum time to wait
+     * @param unit    The unit of the timeout
+     * @return true if a permit is taken
+     * @throws InterruptedException if interrupted while waiting; the permit is taken anyway
+     */
+    public boolean tryAcquire(long timeout, TimeUnit unit) throws InterruptedException {
+        long wait = reserve(unit.toNanos(timeout));
+        if (wait < 0) {
+            return false;
+        }
+        sleep(wait);
+        return true;
+    }
+
+    /**
+     * Take a permit, waiting as long as necessary.
+     *
+     * @throws InterruptedException if interrupted while waiting; the permit is taken anyway
+     */
+    public void acquire() throws InterruptedException {
+        sleep(reserve(Long.MAX_VALUE));
+    }
+
+    /**
+     * @return The number of permits that can be taken now without waiting
+     */
+    public int getAvailablePermits() {
+        long now = ticker.getAsLong();
+        long used = Math.max(fullAt.get(), now) - now;
+        return (int) ((capacityNanos - used) / intervalNanos);
+    }
+
+    /**
+     * @return The number of permits refused because none was available in time
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * @return true if the bucket is full, so that the limiter is in the same state as a new one
+     */
+    boolean isFull() {
+        return fullAt.get() - ticker.getAsLong() <= 0;
+    }
+
+    /**
+     * Reserve a permit if it is available within the maximum wait.
+     *
+     * @param maxWaitNanos The maximum wait in nanoseconds
+     * @return The time to wait for the reserved permit in nanoseconds, or -1 if not reserved
+     */
+    long reserve(long maxWaitNanos) {
+        while (true) {
+            long full = fullAt.get();
+            long now = ticker.getAsLong();
+            long next = Math.max(full, now) + intervalNanos;
+            long wait = next - now - capacityNanos;
+            if (wait > maxWaitNanos) {
+                rejected.increment();
+                return -1;
+            }
+            if (fullAt.compareAndSet(full, next)) {
+                return Math.max(wait, 0);
+            }
+        }
+    }
+
+    /**
+     * Return a reserved permit, such as when the publish is refused by another limiter.
+     */
+    void refund() {
+        fullAt.addAndGet(-intervalNanos);
+    }
+
+    private static void sleep(long nanos) throws InterruptedException {
+        long deadline = System.nanoTime() + nanos;
+        for (long remaining = nanos; remaining > 0; remaining = deadline - System.nanoTime()) {
+            LockSupport.parkNanos(remaining);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,44 @@
+package com.tuppari;
+
+import java.util.Date;
+
+/**
+ * Date of a request with one second resolution and its pre-formatted representations.
+ */
+final class RequestDate {
+
+    private final long epochSecond;
+
+    private final String iso8601;
+
+    private final String rfc1123;
+
+    RequestDate(long epochSecond, String iso8601, String rfc1123) {
+        this.epochSecond = epochSecond;
+        this.iso8601 = iso8601;
+        this.rfc1123 = rfc1123;
+    }
+
+    long getEpochSecond() {
+        return epochSecond;
+    }
+
+    /**
+     * @return Date formatted like "20120102T122334Z", used in the string to sign
+     */
+    String getISO8601() {
+        return iso8601;
+    }
+
+    /**
+     * @return Date formatted like "Mon, 02 Jan 2012 12:23:34 GMT", used in X-Tuppari-Date header
+     */
+    String getRFC1123() {
+        return rfc1123;
+    }
+
+    Date toDate() {
+        return new Date(epochSecond * 1000L);
+    }
+
+}
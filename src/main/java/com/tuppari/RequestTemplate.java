@@ -0,0 +1,137 @@
+package com.tuppari;
+
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Precompiled signing of POST requests of one operation to one endpoint.
+ *
+ * The headers of a publish are always Content-Type, Host, X-Tuppari-Date and X-Tuppari-Operation, so the
+ * canonical request is constant except for the date and the body hash. The constant fragments, the signed
+ * headers and the Authorization prefix are built once; signing a request then only hashes the fragments
+ * with the date and body, and computes the signature. The result is identical to
+ * {@link SignUtil#createSignedRequestConfig(String, URI, String, byte[], String, Signer, java.time.Clock)}.
+ *
+ * A template with a content encoding also sends and signs the Content-Encoding header; the body hash
+ * then covers the encoded bytes as sent (see {@link SignUtil#createEncodedBodyHash(byte[])}).
+ */
+final class RequestTemplate {
+
+    private static final String CONTENT_TYPE = "application/json";
+
+    private static final String SIGNED_HEADERS = "content-type;host;x-tuppari-date;x-tuppari-operation";
+
+    private final URI uri;
+
+    private final String operation;
+
+    private final String contentEncoding;
+
+    private final String hostname;
+
+    private final Signer signer;
+
+    private final byte[] canonicalPrefix;
+
+    private final byte[] canonicalSuffix;
+
+    private final String authorizationPrefix;
+
+    /**
+     * @param uri The request URI
+     * @param operation The operation name
+     * @param accessKeyId Access key id
+     * @param signer The signer of the access secret key
+     */
+    RequestTemplate(URI uri, String operation, String accessKeyId, Signer signer) {
+        this(uri, operation, null, accessKeyId, signer);
+    }
+
+    /**
+     * @param uri The request URI
+     * @param operation The operation name
+     * @param contentEncoding The content encoding of the body such as "gzip", or null if not encoded
+     * @param accessKeyId Access key id
+     * @param signer The signer of the access secret key
+     */
+    RequestTemplate(URI uri, String operation, String contentEncoding, String accessKeyId, Signer signer) {
+        this.uri = uri;
+        this.operation = operation;
+        this.contentEncoding = contentEncoding;
+        this.hostname = SignUtil.createHostHeader(uri);
+        this.signer = signer;
+
+        String signedHeaders = contentEncoding != null ? "content-encoding;" + SIGNED_HEADERS : SIGNED_HEADERS;
+        String path = uri.getPath();
+        String canonicalUri = path == null || path.length() == 0 ? "/" : (path.charAt(0) != '/' ? "/" + path : path);
+        String prefix = "POST\n"
+                + canonicalUri + '\n'
+                + CanonicalRequestDigester.canonicalQueryString(uri.getQuery()) + '\n'
+                + (contentEncoding != null ? "content-encoding:" + contentEncoding.trim() + '\n' : "")
+                + "content-type:" + CONTENT_TYPE + '\n'
+                + "host:" + hostname.trim() + '\n'
+                + "x-tuppari-date:";
+        String suffix = "\n"
+                + "x-tuppari-operation:" + operation.trim() + '\n'
+                + signedHeaders + '\n';
+        this.canonicalPrefix = prefix.getBytes(StandardCharsets.UTF_8);
+        this.canonicalSuffix = suffix.getBytes(StandardCharsets.UTF_8);
+        this.authorizationPrefix = "HMAC-SHA256 Credential=" + accessKeyId + ",SignedHeaders=" + signedHeaders + ",Signature=";
+    }
+
+    URI getUri() {
+        return uri;
+    }
+
+    /**
+     * Returns the signed headers of the request.
+     *
+     * @param body The encoded body of the request
+     * @param date The date of the request
+     * @return The request headers including Authorization
+     */
+    Map<String, String> sign(byte[] body, RequestDate date) {
+        return sign(ByteBuffer.wrap(body), date);
+    }
+
+    /**
+     * Returns the signed headers of the request.
+     *
+     * @param body The encoded body of the request, from its position to its limit
+     * @param date The date of the request
+     * @return The request headers including Authorization
+     */
+    Map<String, String> sign(ByteBuffer body, RequestDate date) {
+        return sign(body, date, null);
+    }
+
+    /**
+     * Returns the signed headers of the request.
+     *
+     * @param body The encoded body of the request, from its position to its limit
+     * @param date The date of the request
+     * @param metrics The listener of the signing key lookup, or null
+     * @return The request headers including Authorization
+     */
+    Map<String, String> sign(ByteBuffer body, RequestDate date, TuppariMetrics metrics) {
+        String formattedDate = date.getRFC1123();
+        String canonicalRequestHash = CanonicalRequestDigester.digest(canonicalPrefix, formattedDate, canonicalSuffix, body);
+        String stringToSign = SignUtil.createStringToSign(date.getISO8601(), canonicalRequestHash);
+        String signature = signer.sign(stringToSign, date.getISO8601(), hostname, metrics);
+
+        Map<String, String> headers = new HashMap<String, String>(8);
+        headers.put("Host", hostname);
+        headers.put("Content-Type", CONTENT_TYPE);
+        if (contentEncoding != null) {
+            headers.put("Content-Encoding", contentEncoding);
+        }
+        headers.put("X-Tuppari-Date", formattedDate);
+        headers.put("X-Tuppari-Operation", operation);
+        headers.put("Authorization", authorizationPrefix + signature);
+        return headers;
+    }
+
+}
@@ -0,0 +1,102 @@
+package com.tuppari;
+
+import java.io.IOException;
+import java.net.UnknownHostException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Policy to retry failed requests with jittered exponential backoff.
+ *
+ * A failure is retryable if the server returned 408, 429 or a 5xx status other than 501,
+ * or if no response was received because of an I/O error (except unknown host).
+ * Every attempt is signed again, because X-Tuppari-Date is part of the signature.
+ */
+public class RetryPolicy {
+
+    static final long DEFAULT_INITIAL_BACKOFF_MILLIS = 50;
+
+    static final long DEFAULT_MAX_BACKOFF_MILLIS = 2000;
+
+    private final int maxAttempts;
+
+    private final long initialBackoffMillis;
+
+    private final long maxBackoffMillis;
+
+    /**
+     * Construct with default backoff.
+     *
+     * @param maxAttempts The maximum number of attempts including the first one
+     */
+    public RetryPolicy(int maxAttempts) {
+        this(maxAttempts, DEFAULT_INITIAL_BACKOFF_MILLIS, DEFAULT_MAX_BACKOFF_MILLIS);
+    }
+
+    /**
+     * @param maxAttempts          The maximum number of attempts including the first one
+     * @param initialBackoffMillis The backoff cap before the second attempt
+     * @param maxBackoffMillis     The maximum backoff cap
+     */
+    public RetryPolicy(int maxAttempts, long initialBackoffMillis, long maxBackoffMillis) {
+        if (maxAttempts <= 0) {
+            throw new IllegalArgumentException("maxAttempts must be positive");
+        }
+        if (initialBackoffMillis < 0 || maxBackoffMillis < initialBackoffMillis) {
+            throw new IllegalArgumentException("invalid backoff");
+        }
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public long getInitialBackoffMillis() {
+        return initialBackoffMillis;
+    }
+
+    public long getMaxBackoffMillis() {
+        return maxBackoffMillis;
+    }
+
+    /**
+     * Returns whether the failed request should be retried.
+     *
+     * @param e The failure
+     * @return true if retryable
+     */
+    public boolean isRetryable(TuppariException e) {
+        int status = e.getStatus();
+        if (status != 0) {
+            return status == 408 || status == 429 || (status >= 500 && status != 501);
+        }
+        for (Throwable t = e.getCause(); t != null; t = t.getCause()) {
+            if (t instanceof UnknownHostException) {
+                return false;
+            }
+            if (t instanceof IOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the backoff before the next attempt with "full jitter":
+     * a random value between 0 and min(maxBackoff, initialBackoff * 2^(attempt - 1)).
+     *
+     * @param attempt The number of the failed attempt (starts from 1)
+     * @return Backoff in milliseconds
+     */
+    public long backoffMillis(int attempt) {
+        long cap = initialBackoffMillis;
+        for (int i = 1; i < attempt && cap < maxBackoffMillis; ++i) {
+            cap *= 2;
+        }
+        cap = Math.min(cap, maxBackoffMillis);
+        return cap == 0 ? 0 : ThreadLocalRandom.current().nextLong(cap + 1);
+    }
+
+}
@@ -1,17 +1,11 @@
 package com.tuppari;
 
 import net.arnx.jsonic.JSON;
-import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.codec.digest.DigestUtils;
 
-import javax.crypto.Mac;
-import javax.crypto.spec.SecretKeySpec;
-import java.io.UnsupportedEncodingException;
 import java.net.URI;
-import java.net.URLDecoder;
-import java.net.URLEncoder;
-import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
 import java.util.*;
 
 /**
@@ -21,6 +15,8 @@ import java.util.*;
  */
 public abstract class SignUtil {
 
+    private static final SigningKeyCache signingKeyCache = new SigningKeyCache();
+
     /**
      * Generate HMAC-SHA256 hash from value using key.
      *
@@ -29,17 +25,25 @@ public abstract class SignUtil {
      * @return HMAC-SHA256 hash
      */
     static String hmac(String key, String data) {
-        try {
-            SecretKeySpec secretKey = new SecretKeySpec(key.getBytes(), "HmacSHA256");
-            Mac mac = Mac.getInstance("HmacSHA256");
-            mac.init(secretKey);
-            byte[] result = mac.doFinal(data.getBytes());
-            return new String(Hex.encodeHex(result));
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException(e);
-        } catch (InvalidKeyException e) {
-            throw new RuntimeException(e);
+        return new String(Signer.hmacHex(key.getBytes(StandardCharsets.UTF_8), data.getBytes(StandardCharsets.UTF_8)), StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Returns the value of the Host header of a request to the URI, as sent by HTTP clients:
+     * the port is omitted when it is the default port of the scheme.
+     *
+     * @param uri Request URI
+     * @return Host header value
+     */
+    static String createHostHeader(URI uri) {
+        int port = uri.getPort();
+        String scheme = uri.getScheme();
+        if (port == -1
+                || (port == 80 && "http".equalsIgnoreCase(scheme))
+                || (port == 443 && "https".equalsIgnoreCase(scheme))) {
+            return uri.getHost();
         }
+        return uri.getHost() + ":" + port;
     }
 
     /**
@@ -68,23 +72,7 @@ public abstract class SignUtil {
      * @return Cnononical query string
      */
     static String createCanonicalQueryString(String queryString) {
-        if (isEmpty(queryString)) {
-            return "";
-        }
-
-        Map<String, List<String>> params = getUrlParameters(queryString);
-        List<String> keys = new ArrayList<String>(params.keySet());
-        Collections.sort(keys);
-
-        List<String> result = new ArrayList<String>();
-        for (String key : keys) {
-            List<String> values = params.get(key);
-            for (String value : values) {
-                result.add(String.format("%s=%s", key, urlEncode(value)));
-            }
-        }
-
-        return join(result, '&');
+        return CanonicalRequestDigester.canonicalQueryString(queryString);
     }
 
     /**
@@ -149,11 +137,31 @@ public abstract class SignUtil {
      * @return {String} The SHA256 hash of the body
      */
     static String createBodyHash(Map<String, Object> body) {
-        String data = "";
-        if (body != null) {
-            data = JSON.encode(body);
-        }
-        return DigestUtils.sha256Hex(data);
+        return createEncodedBodyHash(body != null ? encodeBody(body) : null);
+    }
+
+    /**
+     * Calc a hash from the encoded body of the HTTP request using a hash function that algorithm is SHA256.
+     * The hash must be calculated over exactly the same bytes that are sent to the server.
+     * If the body is sent with a Content-Encoding such as gzip, the hash covers the encoded (compressed) bytes,
+     * and Content-Encoding must be one of the signed headers, so the server can authenticate the request
+     * before decoding the body.
+     *
+     * @param body The encoded body of the HTTP request
+     * @return The SHA256 hash of the body
+     */
+    static String createEncodedBodyHash(byte[] body) {
+        return DigestUtils.sha256Hex(body != null ? body : new byte[0]);
+    }
+
+    /**
+     * Encode the body of the HTTP request as UTF-8 JSON.
+     *
+     * @param body The body of the HTTP request
+     * @return The encoded body
+     */
+    static byte[] encodeBody(Map<String, Object> body) {
+        return JSON.encode(body).getBytes(StandardCharsets.UTF_8);
     }
 
     /**
@@ -175,14 +183,22 @@ public abstract class SignUtil {
      * @return Canonical request
      */
     public static String createCanonicalRequest(String method, String uri, String queryString, Map<String, String> headers, Map<String, Object> body) {
-        List<String> result = new ArrayList<String>();
-        result.add(method);
-        result.add(createCanonicalUri(uri));
-        result.add(createCanonicalQueryString(queryString));
-        result.add(createCanonicalHeaders(headers));
-        result.add(createSignedHeaders(headers));
-        result.add(createBodyHash(body));
-        return join(result, '\n');
+        return createCanonicalRequest(method, uri, queryString, headers, body != null ? encodeBody(body) : null);
+    }
+
+    /**
+     * Returns the canonical request of the request whose body is already encoded.
+     *
+     * @param method HTTP requet method (Such as GET, POST, etc)
+     * @param uri URI of the request
+     * @param queryString Query string of the request
+     * @param headers The request header map of the request
+     * @param body The encoded body of the request
+     * @return Canonical request
+     * @see #createCanonicalRequest(String, String, String, java.util.Map, java.util.Map)
+     */
+    public static String createCanonicalRequest(String method, String uri, String queryString, Map<String, String> headers, byte[] body) {
+        return CanonicalRequestDigester.toString(method, uri, queryString, headers, body);
     }
 
     /**
@@ -198,11 +214,18 @@ public abstract class SignUtil {
      * @return The string to sign
      */
     public static String createStringToSign(String canonicalRequest, Date requestDate) {
-        List<String> result = new ArrayList<String>();
-        result.add("SHA256");
-        result.add(DateUtil.formatAsISO8601(requestDate));
-        result.add(DigestUtils.sha256Hex(canonicalRequest));
-        return join(result, '\n');
+        return createStringToSign(DateUtil.formatAsISO8601(requestDate), DigestUtils.sha256Hex(canonicalRequest));
+    }
+
+    /**
+     * Returns the string to sign from the hash of the canonical request.
+     *
+     * @param formattedDate The date of the request formatted as ISO 8601
+     * @param canonicalRequestHash Lower case hex encoded SHA256 hash of the canonical request
+     * @return The string to sign
+     */
+    static String createStringToSign(String formattedDate, String canonicalRequestHash) {
+        return "SHA256\n" + formattedDate + '\n' + canonicalRequestHash;
     }
 
     /**
@@ -219,9 +242,16 @@ public abstract class SignUtil {
      * @return {String} Signature of the stringToSign
      */
     public static String createSignature(String secretKey, String stringToSign, Date requestDate, String host) {
-        String derivedSigningKey = hmac(hmac("TUPPARI" + secretKey, DateUtil.formatAsISO8601(requestDate)), host);
-        String signature = hmac(derivedSigningKey, stringToSign);
-        return signature;
+        return Signer.forSecretKey(secretKey).sign(stringToSign, DateUtil.formatAsISO8601(requestDate), host);
+    }
+
+    /**
+     * Returns the cache of derived signing keys, mainly to monitor its hit rate.
+     *
+     * @return The signing key cache
+     */
+    public static SigningKeyCache getSigningKeyCache() {
+        return signingKeyCache;
     }
 
     /**
@@ -236,22 +266,56 @@ public abstract class SignUtil {
      * @return {Object} The request config
      */
     public static Map<String, Object> createSignedRequestConfig(String method, URI uri, String operation, Map<String, Object> body, String accessKeyId, String secretKey) {
-        String hostname = uri.getHost() + (uri.getPort() != -1 ? ":" + uri.getPort() : "");
+        return createSignedRequestConfig(method, uri, operation, body, accessKeyId, Signer.forSecretKey(secretKey), Clock.systemUTC());
+    }
+
+    /**
+     * Create signed request config.
+     *
+     * @param {String} method HTTP requet method (Such as GET, POST, etc)
+     * @param {String} uri URI of the request
+     * @param {String} operation The operation name
+     * @param {Object|String} body The body of the request
+     * @param {String} accessKeyId Access key id
+     * @param {Signer} signer The signer of the access secret key
+     * @param {Clock} clock The clock that gives the date of the request
+     * @return {Object} The request config
+     */
+    public static Map<String, Object> createSignedRequestConfig(String method, URI uri, String operation, Map<String, Object> body, String accessKeyId, Signer signer, Clock clock) {
+        return createSignedRequestConfig(method, uri, operation, encodeBody(body), accessKeyId, signer, clock);
+    }
+
+    /**
+     * Create signed request config from the encoded body.
+     * The body hash is calculated over the given bytes, and the same bytes are stored
+     * as "body" of the config to be sent to the server.
+     *
+     * @param {String} method HTTP requet method (Such as GET, POST, etc)
+     * @param {String} uri URI of the request
+     * @param {String} operation The operation name
+     * @param {byte[]} body The UTF-8 encoded JSON body of the request
+     * @param {String} accessKeyId Access key id
+     * @param {Signer} signer The signer of the access secret key
+     * @param {Clock} clock The clock that gives the date of the request
+     * @return {Object} The request config
+     */
+    public static Map<String, Object> createSignedRequestConfig(String method, URI uri, String operation, byte[] body, String accessKeyId, Signer signer, Clock clock) {
+        String hostname = createHostHeader(uri);
         String path = uri.getPath();
         String query = uri.getQuery();
-        Date now = DateUtil.now();
-        String formattedDate = DateUtil.formatAsRFC3339(now);
+        RequestDate now = DateUtil.now(clock);
+        String formattedDate = now.getRFC1123();
 
         Map<String, String> headers = new HashMap<String, String>();
         headers.put("Host", hostname);
         headers.put("Content-Type", "application/json");
         headers.put("X-Tuppari-Date", formattedDate);
         headers.put("X-Tuppari-Operation", operation);
-        headers.put("Authorization", createAuthorizationHeader(method, hostname, path, query, headers, body, now, accessKeyId, secretKey));
+        headers.put("Authorization", createAuthorizationHeader(method, hostname, path, query, headers, body, now.getISO8601(), accessKeyId, signer));
 
         Map<String, Object> options = new LinkedHashMap<String, Object>();
         options.put("uri", uri);
-        options.put("body", JSON.encode(body));
+        options.put("body", body);
         options.put("headers", headers);
 
         return options;
@@ -272,52 +336,37 @@ public abstract class SignUtil {
      * @return {String} Authorization header string
      */
     public static String createAuthorizationHeader(String method, String hostname, String path, String query, Map<String, String> headers, Map<String, Object> body, Date requestDate, String accessKeyId, String secretKey) {
-        String signedHeaders = createSignedHeaders(headers);
-        String canonicalRequest = createCanonicalRequest(method, path, query, headers, body);
-        String stringToSign = createStringToSign(canonicalRequest, requestDate);
-        String signature = createSignature(secretKey, stringToSign, requestDate, hostname);
-        return String.format("HMAC-SHA256 Credential=%s,SignedHeaders=%s,Signature=%s", accessKeyId, signedHeaders, signature);
-    }
-
-    private static boolean isEmpty(String s) {
-        return s == null || s.length() == 0;
+        return createAuthorizationHeader(method, hostname, path, query, headers, body != null ? encodeBody(body) : null, requestDate, accessKeyId, Signer.forSecretKey(secretKey));
     }
 
-    private static Map<String, List<String>> getUrlParameters(String query) {
-        Map<String, List<String>> params = new HashMap<String, List<String>>();
-
-        for (String param : query.split("&")) {
-            String pair[] = param.split("=");
-            String key = urlDecode(pair[0]);
-            String value = "";
-            if (pair.length > 1) {
-                value = urlDecode(pair[1]);
-            }
-            List<String> values = params.get(key);
-            if (values == null) {
-                values = new ArrayList<String>();
-                params.put(key, values);
-            }
-            values.add(value);
-        }
-
-        return params;
+    /**
+     * Create authorization header.
+     *
+     * @param {String} method The HTTP method of the request
+     * @param {String} hostname The host name of the API server
+     * @param {String} path The absolute path of the request
+     * @param {String} query The query string of the request
+     * @param {Object} headers The map of HTTP request headers
+     * @param {byte[]} body The encoded body of the request
+     * @param {Date} requestDate The date of the request
+     * @param {String} accessKeyId Access key id
+     * @param {Signer} signer The signer of the access secret key
+     * @return {String} Authorization header string
+     */
+    public static String createAuthorizationHeader(String method, String hostname, String path, String query, Map<String, String> headers, byte[] body, Date requestDate, String accessKeyId, Signer signer) {
+        return createAuthorizationHeader(method, hostname, path, query, headers, body, DateUtil.formatAsISO8601(requestDate), accessKeyId, signer);
     }
 
-    private static String urlDecode(String s) {
-        try {
-            return URLDecoder.decode(s, "UTF-8");
-        } catch (UnsupportedEncodingException e) {
-            throw new RuntimeException(e);
-        }
+    private static String createAuthorizationHeader(String method, String hostname, String path, String query, Map<String, String> headers, byte[] body, String formattedDate, String accessKeyId, Signer signer) {
+        String signedHeaders = createSignedHeaders(headers);
+        String canonicalRequestHash = CanonicalRequestDigester.digest(method, path, query, headers, body);
+        String stringToSign = createStringToSign(formattedDate, canonicalRequestHash);
+        String signature = signer.sign(stringToSign, formattedDate, hostname);
+        return String.format("HMAC-SHA256 Credential=%s,SignedHeaders=%s,Signature=%s", accessKeyId, signedHeaders, signature);
     }
 
-    private static String urlEncode(String s) {
-        try {
-            return URLEncoder.encode(s, "UTF-8");
-        } catch (UnsupportedEncodingException e) {
-            throw new RuntimeException(e);
-        }
+    private static boolean isEmpty(String s) {
+        return s == null || s.length() == 0;
     }
 
     private static String join(List<String> list, char c) {
@@ -0,0 +1,215 @@
+package com.tuppari;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Create signatures with a secret key.
+ *
+ * SecretKey = Your Secret Key (Account secret key or application secret key)
+ * DerivedSigningKey = HMAC(HMAC("TUPPARI" + SecretKey, RequestDate), Host)
+ * Signature = HMAC(DerivedSigningKey, StringToSign)
+ *
+ * Each HMAC stage uses the lower case hex encoding of the previous stage as its key. The signer
+ * passes that encoding between stages as ASCII bytes, so no intermediate Strings are created.
+ * {@link Mac} instances and the hex buffer are kept per thread (pooled for virtual threads), and derived signing keys are
+ * shared through {@link SigningKeyCache}. A signer is immutable and thread safe.
+ */
+public class Signer {
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final int MAX_CACHED_SIGNERS = 256;
+
+    private static final ConcurrentMap<String, Signer> signers = new ConcurrentHashMap<String, Signer>();
+
+    private static final ThreadLocalPool<MacHolder> macHolders = new ThreadLocalPool<MacHolder>(MacHolder::new);
+
+    private final String secretKey;
+
+    private final byte[] secretKeyBytes;
+
+    private final SigningKeyCache signingKeyCache;
+
+    /**
+     * @param secretKey The secret key
+     */
+    public Signer(String secretKey) {
+        this(secretKey, SignUtil.getSigningKeyCache());
+    }
+
+    Signer(String secretKey, SigningKeyCache signingKeyCache) {
+        if (secretKey == null) {
+            throw new IllegalArgumentException("secretKey is null");
+        }
+        this.secretKey = secretKey;
+        this.secretKeyBytes = ("TUPPARI" + secretKey).getBytes(StandardCharsets.UTF_8);
+        this.signingKeyCache = signingKeyCache;
+    }
+
+    /**
+     * Returns a shared signer for the specified secret key.
+     *
+     * @param secretKey The secret key
+     * @return The signer
+     */
+    static Signer forSecretKey(String secretKey) {
+        Signer signer = signers.get(secretKey);
+        if (signer == null) {
+            if (signers.size() >= MAX_CACHED_SIGNERS) {
+                signers.clear();
+            }
+            signer = new Signer(secretKey);
+            Signer existing = signers.putIfAbsent(secretKey, signer);
+            if (existing != null) {
+                signer = existing;
+            }
+        }
+        return signer;
+    }
+
+    /**
+     * Create a signature of the string to sign.
+     *
+     * @param stringToSign The string you want to sign
+     * @param formattedDate The date of the request formatted as ISO 8601
+     * @param host The hostname of the tuppari server
+     * @return Lower case hex encoded signature
+     */
+    public String sign(String stringToSign, String formattedDate, String host) {
+        return sign(stringToSign, formattedDate, host, null);
+    }
+
+    /**
+     * Create a signature of the string to sign, and report the lookup of the derived signing key.
+     *
+     * @param stringToSign The string you want to sign
+     * @param formattedDate The date of the request formatted as ISO 8601
+     * @param host The hostname of the tuppari server
+     * @param metrics The listener of the lookup, or null
+     * @return Lower case hex encoded signature
+     */
+    String sign(String stringToSign, String formattedDate, String host, TuppariMetrics metrics) {
+        byte[] derivedSigningKey = createDerivedSigningKey(formattedDate, host, metrics);
+        MacHolder holder = macHolders.acquire();
+        try {
+            byte[] result = holder.signingMac(derivedSigningKey).doFinal(stringToSign.getBytes(StandardCharsets.UTF_8));
+            return holder.toHexString(result);
+        } finally {
+            macHolders.release(holder);
+        }
+    }
+
+    /**
+     * Returns the derived signing key as ASCII bytes of its hex encoding.
+     * The returned array is shared and must not be modified.
+     *
+     * @param formattedDate The date of the request formatted as ISO 8601
+     * @param host The hostname of the tuppari server
+     * @return Derived signing key
+     */
+    byte[] createDerivedSigningKey(String formattedDate, String host) {
+        return createDerivedSigningKey(formattedDate, host, null);
+    }
+
+    private byte[] createDerivedSigningKey(String formattedDate, String host, TuppariMetrics metrics) {
+        byte[] derivedSigningKey = signingKeyCache.get(secretKey, formattedDate, host);
+        if (metrics != null) {
+            metrics.onSigningKeyCacheLookup(derivedSigningKey != null);
+        }
+        if (derivedSigningKey == null) {
+            byte[] dateKey = hmacHex(secretKeyBytes, formattedDate.getBytes(StandardCharsets.UTF_8));
+            derivedSigningKey = hmacHex(dateKey, host.getBytes(StandardCharsets.UTF_8));
+            signingKeyCache.put(secretKey, formattedDate, host, derivedSigningKey);
+        }
+        return derivedSigningKey;
+    }
+
+    /**
+     * Generate HMAC-SHA256 hash from data using key.
+     *
+     * @param key secret key
+     * @param data source data
+     * @return ASCII bytes of lower case hex encoded HMAC-SHA256 hash
+     */
+    static byte[] hmacHex(byte[] key, byte[] data) {
+        byte[] result;
+        MacHolder holder = macHolders.acquire();
+        try {
+            result = holder.mac(key).doFinal(data);
+        } finally {
+            macHolders.release(holder);
+        }
+        byte[] hex = new byte[result.length * 2];
+        for (int i = 0, j = 0; i < result.length; ++i) {
+            hex[j++] = (byte) HEX[(result[i] >> 4) & 0x0f];
+            hex[j++] = (byte) HEX[result[i] & 0x0f];
+        }
+        return hex;
+    }
+
+    private static Mac newMac() {
+        try {
+            return Mac.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void init(Mac mac, byte[] key) {
+        try {
+            mac.init(new SecretKeySpec(key, ALGORITHM));
+        } catch (InvalidKeyException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Per thread Mac instances and hex buffer.
+     */
+    private static final class MacHolder {
+
+        private final Mac mac = newMac();
+
+        private final Mac signingMac = newMac();
+
+        private byte[] signingKey;
+
+        private final char[] hex = new char[64];
+
+        Mac mac(byte[] key) {
+            init(mac, key);
+            return mac;
+        }
+
+        /**
+         * Returns the Mac for the final stage. Derived signing keys come from the cache, so the
+         * Mac is only re-initialized when the key instance changes.
+         */
+        Mac signingMac(byte[] key) {
+            if (signingKey != key) {
+                init(signingMac, key);
+                signingKey = key;
+            }
+            return signingMac;
+        }
+
+        String toHexString(byte[] data) {
+            char[] buf = data.length * 2 <= hex.length ? hex : new char[data.length * 2];
+            for (int i = 0, j = 0; i < data.length; ++i) {
+                buf[j++] = HEX[(data[i] >> 4) & 0x0f];
+                buf[j++] = HEX[data[i] & 0x0f];
+            }
+            return new String(buf, 0, data.length * 2);
+        }
+
+    }
+
+}
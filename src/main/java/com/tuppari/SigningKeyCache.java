@@ -0,0 +1,143 @@
+package com.tuppari;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of derived signing keys.
+ *
+ * DerivedSigningKey = HMAC(HMAC("TUPPARI" + SecretKey, RequestDate), Host) only changes when the
+ * secret key, the request date (one second resolution) or the host changes, so publishes in the
+ * same second can reuse it.
+ *
+ * The cache is direct-mapped: each (secret key, date, host) tuple maps to exactly one slot and a
+ * newer entry simply replaces an older one. Slots hold immutable entries, so reads and writes are
+ * lock free and safe under concurrent use.
+ */
+public class SigningKeyCache {
+
+    static final int DEFAULT_CAPACITY = 64;
+
+    private final AtomicReferenceArray<Entry> slots;
+
+    private final int mask;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    SigningKeyCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity The number of slots (rounded up to a power of two)
+     */
+    SigningKeyCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.slots = new AtomicReferenceArray<Entry>(size);
+        this.mask = size - 1;
+    }
+
+    /**
+     * Returns the cached derived signing key.
+     *
+     * @param secretKey The secret key
+     * @param formattedDate The request date formatted as ISO 8601
+     * @param host The host name
+     * @return The derived signing key or null if not cached
+     */
+    byte[] get(String secretKey, String formattedDate, String host) {
+        Entry e = slots.get(indexFor(secretKey, formattedDate, host));
+        if (e != null && e.matches(secretKey, formattedDate, host)) {
+            hits.increment();
+            return e.signingKey;
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Store the derived signing key.
+     *
+     * @param secretKey The secret key
+     * @param formattedDate The request date formatted as ISO 8601
+     * @param host The host name
+     * @param signingKey The derived signing key
+     */
+    void put(String secretKey, String formattedDate, String host, byte[] signingKey) {
+        slots.set(indexFor(secretKey, formattedDate, host), new Entry(secretKey, formattedDate, host, signingKey));
+    }
+
+    /**
+     * @return The number of lookups that found a cached key
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return The number of lookups that did not find a cached key
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * @return The ratio of hits to all lookups, or 0 if nothing has been looked up
+     */
+    public double getHitRate() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 0.0 : (double) h / total;
+    }
+
+    /**
+     * Remove all cached keys and reset counters.
+     */
+    public void clear() {
+        for (int i = 0; i < slots.length(); ++i) {
+            slots.set(i, null);
+        }
+        hits.reset();
+        misses.reset();
+    }
+
+    private int indexFor(String secretKey, String formattedDate, String host) {
+        int h = secretKey.hashCode();
+        h = 31 * h + formattedDate.hashCode();
+        h = 31 * h + host.hashCode();
+        h ^= (h >>> 16);
+        return h & mask;
+    }
+
+    private static final class Entry {
+
+        final String secretKey;
+
+        final String formattedDate;
+
+        final String host;
+
+        final byte[] signingKey;
+
+        Entry(String secretKey, String formattedDate, String host, byte[] signingKey) {
+            this.secretKey = secretKey;
+            this.formattedDate = formattedDate;
+            this.host = host;
+            this.signingKey = signingKey;
+        }
+
+        boolean matches(String secretKey, String formattedDate, String host) {
+            return this.formattedDate.equals(formattedDate) && this.host.equals(host) && this.secretKey.equals(secretKey);
+        }
+
+    }
+
+}
@@ -0,0 +1,81 @@
+package com.tuppari;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
+
+/**
+ * Reusable per-thread state that also works on virtual threads.
+ * <p/>
+ * Platform threads keep one instance in a {@link ThreadLocal}. Virtual threads are typically
+ * created per task, so a thread local would allocate a new instance for every publish; they
+ * borrow an instance from a small lock-free pool instead and return it on release.
+ * Every {@link #acquire()} must be followed by {@link #release(Object)} of the same instance.
+ */
+final class ThreadLocalPool<T> {
+
+    private final Supplier<T> factory;
+
+    private final ThreadLocal<T> threadLocal;
+
+    private final AtomicReferenceArray<T> pool;
+
+    private final int mask;
+
+    /**
+     * @param factory Creates a new instance
+     */
+    ThreadLocalPool(Supplier<T> factory) {
+        this(factory, Runtime.getRuntime().availableProcessors() * 4);
+    }
+
+    ThreadLocalPool(final Supplier<T> factory, int capacity) {
+        this.factory = factory;
+        this.threadLocal = ThreadLocal.withInitial(factory);
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.pool = new AtomicReferenceArray<T>(size);
+        this.mask = size - 1;
+    }
+
+    /**
+     * @return An instance owned by the caller until it is released
+     */
+    T acquire() {
+        return VirtualThreads.isCurrentThreadVirtual() ? acquireShared() : threadLocal.get();
+    }
+
+    /**
+     * @param value The instance returned by {@link #acquire()}
+     */
+    void release(T value) {
+        if (VirtualThreads.isCurrentThreadVirtual()) {
+            releaseShared(value);
+        }
+    }
+
+    T acquireShared() {
+        int start = probe();
+        for (int i = 0; i <= mask; ++i) {
+            T value = pool.getAndSet((start + i) & mask, null);
+            if (value != null) {
+                return value;
+            }
+        }
+        return factory.get();
+    }
+
+    void releaseShared(T value) {
+        int start = probe();
+        for (int i = 0; i <= mask; ++i) {
+            if (pool.compareAndSet((start + i) & mask, null, value)) {
+                return;
+            }
+        }
+        // The pool is full, let the instance be collected
+    }
+
+    private static int probe() {
+        long id = Thread.currentThread().getId();
+        return (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+    }
+
+}
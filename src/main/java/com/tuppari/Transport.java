@@ -0,0 +1,150 @@
+package com.tuppari;
+
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * HTTP transport used to send requests to Tuppari server.
+ *
+ * A transport is owned by {@link TuppariClient} and shared by all channels of the client,
+ * so implementations must be thread safe.
+ */
+public interface Transport {
+
+    /**
+     * Send POST request.
+     *
+     * @param uri The request URI
+     * @param headers The request headers
+     * @param body The request body
+     * @return The response
+     * @throws TuppariException if failed to send request or receive response
+     */
+    TransportResponse post(URI uri, Map<String, String> headers, byte[] body);
+
+    /**
+     * Send POST request when only the status of a successful response matters.
+     * The body of a 2xx response is read to the end and discarded without being decoded, so the connection
+     * can be reused; the body of an error response is read as usual.
+     * The default implementation calls {@link #post(URI, Map, byte[])}.
+     *
+     * @param uri The request URI
+     * @param headers The request headers
+     * @param body The request body
+     * @return The response, with an empty body if successful
+     * @throws TuppariException if failed to send request or receive response
+     */
+    default TransportResponse postForStatus(URI uri, Map<String, String> headers, byte[] body) {
+        return post(uri, headers, body);
+    }
+
+    /**
+     * Send POST request with a body held in a buffer, such as a direct buffer of {@link ByteBufferPool}.
+     * The bytes from the position to the limit of the buffer are sent, and neither the position nor the content
+     * is changed. The buffer is only read until this method returns.
+     * The default implementation copies the body into an array, unless the buffer is backed by exactly the body.
+     *
+     * @param uri The request URI
+     * @param headers The request headers
+     * @param body The request body
+     * @return The response
+     * @throws TuppariException if failed to send request or receive response
+     */
+    default TransportResponse post(URI uri, Map<String, String> headers, ByteBuffer body) {
+        return post(uri, headers, toArray(body));
+    }
+
+    /**
+     * Send POST request with a body held in a buffer when only the status of a successful response matters.
+     *
+     * @param uri The request URI
+     * @param headers The request headers
+     * @param body The request body
+     * @return The response, with an empty body if successful
+     * @throws TuppariException if failed to send request or receive response
+     * @see #post(URI, Map, ByteBuffer)
+     * @see #postForStatus(URI, Map, byte[])
+     */
+    default TransportResponse postForStatus(URI uri, Map<String, String> headers, ByteBuffer body) {
+        return postForStatus(uri, headers, toArray(body));
+    }
+
+    /**
+     * Send POST request without blocking the calling thread.
+     * The default implementation sends synchronously on the calling thread.
+     *
+     * @param uri The request URI
+     * @param headers The request headers
+     * @param body The request body
+     * @return The future of the response, completed exceptionally with {@link TuppariException} on failure
+     */
+    default CompletableFuture<TransportResponse> postAsync(URI uri, Map<String, String> headers, byte[] body) {
+        try {
+            return CompletableFuture.completedFuture(post(uri, headers, body));
+        } catch (TuppariException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Send POST request with a body held in a buffer without blocking the calling thread.
+     * The buffer is read until the returned future is completed.
+     * The default implementation sends synchronously on the calling thread.
+     *
+     * @param uri The request URI
+     * @param headers The request headers
+     * @param body The request body
+     * @return The future of the response, completed exceptionally with {@link TuppariException} on failure
+     * @see #post(URI, Map, ByteBuffer)
+     */
+    default CompletableFuture<TransportResponse> postAsync(URI uri, Map<String, String> headers, ByteBuffer body) {
+        try {
+            return CompletableFuture.completedFuture(post(uri, headers, body));
+        } catch (TuppariException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Send POST request with a body held in a buffer when only the status of a successful response matters,
+     * without blocking the calling thread.
+     * The default implementation sends synchronously on the calling thread.
+     *
+     * @param uri The request URI
+     * @param headers The request headers
+     * @param body The request body
+     * @return The future of the response, with an empty body if successful
+     * @see #postForStatus(URI, Map, ByteBuffer)
+     */
+    default CompletableFuture<TransportResponse> postForStatusAsync(URI uri, Map<String, String> headers, ByteBuffer body) {
+        try {
+            return CompletableFuture.completedFuture(postForStatus(uri, headers, body));
+        } catch (TuppariException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Release all resources held by this transport.
+     */
+    void close();
+
+    /**
+     * Returns the bytes from the position to the limit of the buffer, without copying if the buffer is backed
+     * by an array holding exactly these bytes.
+     *
+     * @param body The buffer
+     * @return The bytes of the buffer
+     */
+    private static byte[] toArray(ByteBuffer body) {
+        if (body.hasArray() && body.arrayOffset() == 0 && body.position() == 0 && body.remaining() == body.array().length) {
+            return body.array();
+        }
+        byte[] data = new byte[body.remaining()];
+        body.duplicate().get(data);
+        return data;
+    }
+
+}
@@ -0,0 +1,95 @@
+package com.tuppari;
+
+/**
+ * Configuration of the connection pool used by {@link Transport}.
+ */
+public class TransportConfig {
+
+    static final int DEFAULT_MAX_CONNECTIONS = 200;
+
+    static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 64;
+
+    static final long DEFAULT_IDLE_CONNECTION_TIMEOUT = 60 * 1000L;
+
+    private int connectTimeout = 0;
+
+    private int readTimeout = 0;
+
+    private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+
+    private int maxConnectionsPerHost = DEFAULT_MAX_CONNECTIONS_PER_HOST;
+
+    private long idleConnectionTimeout = DEFAULT_IDLE_CONNECTION_TIMEOUT;
+
+    /**
+     * @return Connect timeout in milliseconds (0 means infinite)
+     */
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public void setConnectTimeout(int connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    /**
+     * @return Read timeout in milliseconds (0 means infinite)
+     */
+    public int getReadTimeout() {
+        return readTimeout;
+    }
+
+    public void setReadTimeout(int readTimeout) {
+        this.readTimeout = readTimeout;
+    }
+
+    /**
+     * @return The maximum number of pooled connections in total
+     */
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public void setMaxConnections(int maxConnections) {
+        if (maxConnections <= 0) {
+            throw new IllegalArgumentException("maxConnections must be positive");
+        }
+        this.maxConnections = maxConnections;
+    }
+
+    /**
+     * @return The maximum number of pooled connections per host
+     */
+    public int getMaxConnectionsPerHost() {
+        return maxConnectionsPerHost;
+    }
+
+    public void setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+        if (maxConnectionsPerHost <= 0) {
+            throw new IllegalArgumentException("maxConnectionsPerHost must be positive");
+        }
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+    }
+
+    /**
+     * @return Time in milliseconds after which an idle pooled connection is closed (0 or less disables eviction)
+     */
+    public long getIdleConnectionTimeout() {
+        return idleConnectionTimeout;
+    }
+
+    public void setIdleConnectionTimeout(long idleConnectionTimeout) {
+        this.idleConnectionTimeout = idleConnectionTimeout;
+    }
+
+    TransportConfig copy() {
+        TransportConfig c = new TransportConfig();
+        c.connectTimeout = connectTimeout;
+        c.readTimeout = readTimeout;
+        c.maxConnections = maxConnections;
+        c.maxConnectionsPerHost = maxConnectionsPerHost;
+        c.idleConnectionTimeout = idleConnectionTimeout;
+        return c;
+    }
+
+}
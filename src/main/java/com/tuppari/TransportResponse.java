@@ -0,0 +1,102 @@
+package com.tuppari;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Response returned from {@link Transport}.
+ */
+public class TransportResponse {
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private final int status;
+
+    private final byte[] data;
+
+    private String body;
+
+    private final long contentLength;
+
+    /**
+     * @param status HTTP status code
+     * @param body   Response body string
+     */
+    public TransportResponse(int status, String body) {
+        this(status, body, -1);
+    }
+
+    /**
+     * @param status        HTTP status code
+     * @param body          Response body string
+     * @param contentLength The number of bytes of the response body, or -1 if unknown
+     */
+    public TransportResponse(int status, String body, long contentLength) {
+        this.status = status;
+        this.data = null;
+        this.body = body;
+        this.contentLength = contentLength;
+    }
+
+    /**
+     * The body is decoded as UTF-8 on the first call of {@link #getBody()}.
+     *
+     * @param status HTTP status code
+     * @param data   Response body bytes, or null if the body was discarded
+     */
+    public TransportResponse(int status, byte[] data) {
+        this.status = status;
+        this.data = data != null ? data : EMPTY;
+        this.contentLength = this.data.length;
+    }
+
+    /**
+     * Returns the response with the body discarded, for {@link Transport#postForStatus}.
+     *
+     * @param status        HTTP status code
+     * @param contentLength The number of bytes of the discarded body, or -1 if unknown
+     * @return The response with an empty body
+     */
+    public static TransportResponse discarded(int status, long contentLength) {
+        return new TransportResponse(status, "", contentLength);
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public String getBody() {
+        String b = body;
+        if (b == null && data != null) {
+            // Racing threads decode the same string, so no synchronization is needed
+            b = new String(data, StandardCharsets.UTF_8);
+            body = b;
+        }
+        return b;
+    }
+
+    /**
+     * @return The number of bytes of the response body, or -1 if unknown
+     */
+    public long getContentLength() {
+        return contentLength;
+    }
+
+    /**
+     * @return The number of bytes of the response body, or of the UTF-8 encoding of the body string if unknown
+     */
+    long getBodyLength() {
+        if (contentLength >= 0) {
+            return contentLength;
+        }
+        String b = getBody();
+        return b != null ? b.getBytes(StandardCharsets.UTF_8).length : 0;
+    }
+
+    /**
+     * @return true if status code is 2xx
+     */
+    public boolean isSuccess() {
+        return status >= 200 && status < 300;
+    }
+
+}
@@ -1,15 +1,10 @@
 package com.tuppari;
 
-import com.sun.jersey.api.client.Client;
-import com.sun.jersey.api.client.ClientResponse;
-import com.sun.jersey.api.client.UniformInterfaceException;
-import com.sun.jersey.api.client.WebResource;
 import net.arnx.jsonic.JSON;
 
-import javax.ws.rs.core.MediaType;
-import java.net.URI;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Channel for Tuppari system.
@@ -20,8 +15,6 @@ public class TuppariChannel {
 
     private String channelName;
 
-    private Client webClient;
-
     /**
      * @param client      The client
      * @param channelName The name of channel name
@@ -29,9 +22,10 @@ public class TuppariChannel {
     TuppariChannel(TuppariClient client, String channelName) {
         this.client = client;
         this.channelName = channelName;
-        this.webClient = Client.create();
-        this.webClient.setConnectTimeout(client.getConnectTimeout());
-        this.webClient.setReadTimeout(client.getReadTimeout());
+    }
+
+    public String getChannelName() {
+        return channelName;
     }
 
     /**
@@ -43,28 +37,12 @@ public class TuppariChannel {
      * @see https://github.com/hakobera/tuppari-servers/wiki/API-Reference#wiki-messages_publish
      */
     public Map<String, String> send(String eventName, String message) {
-        Map<String, Object> body = new LinkedHashMap<String, Object>();
-        body.put("applicationId", client.getApplicationId());
-        body.put("channel", channelName);
-        body.put("event", eventName);
-        body.put("message", message);
-
-        Map<String, Object> config = SignUtil.createSignedRequestConfig("POST", client.getMessagesApiEndpoint(), TuppariClient.TUPPARI_MESSAGE_PUBLISH_API_METHOD, body, client.getAccessKeyId(), client.getAccessSecretKey());
-        Map<String, String> headers = (Map<String, String>) config.get("headers");
-
         try {
-            WebResource webResource = webClient.resource((URI) config.get("uri"));
-            WebResource.Builder builder = webResource.getRequestBuilder();
-            builder.accept(MediaType.APPLICATION_JSON_TYPE);
-            for (Map.Entry<String, String> header : headers.entrySet()) {
-                builder.header(header.getKey(), header.getValue());
-            }
-            String result = builder.post(String.class, JSON.encode(body));
+            client.acquirePermit(channelName);
+            String result = client.post(TuppariClient.TUPPARI_MESSAGE_PUBLISH_API_METHOD, createBody(eventName, message));
             return JSON.decode(result);
-        } catch (UniformInterfaceException e) {
-            ClientResponse response = e.getResponse();
-            String responseBody = response.getEntity(String.class);
-            throw new TuppariException(responseBody, e);
+        } catch (TuppariException e) {
+            throw e;
         } catch (RuntimeException e) {
             throw new TuppariException(e);
         } catch (Exception e) {
@@ -72,4 +50,73 @@ public class TuppariChannel {
         }
     }
 
-}
\ No newline at end of file
+    /**
+     * Publish message to specified event name asynchronously.
+     * Signing is executed on the executor of the client, so the caller's thread is never blocked. The request is
+     * sent with the asynchronous methods of the transport, which wait for the response without holding a thread
+     * with {@link HttpClientTransport}. The response is decoded on the first access of the result.
+     *
+     * If the number of in-flight publishes of the client has reached {@link TuppariClient#getMaxInFlight()},
+     * the returned future is completed exceptionally with {@link TuppariException}.
+     *
+     * @param eventName Event name
+     * @param message Message string that send to server
+     * @return Future of the response data
+     */
+    public CompletableFuture<PublishResult> sendAsync(final String eventName, final String message) {
+        final Map<String, Object> body = createBody(eventName, message);
+        return client.submitAsync(channelName, () -> client.postAsync(TuppariClient.TUPPARI_MESSAGE_PUBLISH_API_METHOD, () -> SignUtil.encodeBody(body), true))
+                .thenApply(PublishResult::new);
+    }
+
+    /**
+     * Publish message to specified event name, and confirm only that the server accepted it.
+     * Unlike {@link #send(String, String)}, the response body is drained without being decoded.
+     *
+     * @param eventName Event name
+     * @param message Message string that send to server
+     * @throws TuppariException if failed to send the message or the server returns error
+     */
+    public void publish(String eventName, String message) {
+        final Map<String, Object> body = createBody(eventName, message);
+        client.acquirePermit(channelName);
+        client.post(TuppariClient.TUPPARI_MESSAGE_PUBLISH_API_METHOD, () -> SignUtil.encodeBody(body), false);
+    }
+
+    /**
+     * Publish message to specified event name asynchronously, and confirm only that the server accepted it.
+     *
+     * @param eventName Event name
+     * @param message Message string that send to server
+     * @return Future completed when the server accepted the message
+     * @see #publish(String, String)
+     * @see #sendAsync(String, String)
+     */
+    public CompletableFuture<Void> publishAsync(final String eventName, final String message) {
+        final Map<String, Object> body = createBody(eventName, message);
+        return client.submitAsync(channelName, () -> client.postAsync(TuppariClient.TUPPARI_MESSAGE_PUBLISH_API_METHOD, () -> SignUtil.encodeBody(body), false))
+                .thenApply(result -> null);
+    }
+
+    /**
+     * Returns the publisher of the event of this channel.
+     * The publisher precomputes everything except the message and the date, so it is the fastest way to
+     * publish many messages to the same event. Publishers are immutable and may be kept and shared by threads.
+     *
+     * @param eventName Event name
+     * @return The publisher of the event
+     */
+    public EventPublisher event(String eventName) {
+        return new EventPublisher(client, this, eventName);
+    }
+
+    private Map<String, Object> createBody(String eventName, String message) {
+        Map<String, Object> body = new LinkedHashMap<String, Object>();
+        body.put("applicationId", client.getApplicationId());
+        body.put("channel", channelName);
+        body.put("event", eventName);
+        body.put("message", message);
+        return body;
+    }
+
+}
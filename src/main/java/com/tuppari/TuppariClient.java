@@ -1,11 +1,36 @@
 package com.tuppari;
 
+import java.io.Closeable;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.time.Clock;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * Client for Tuppari system.
  */
-public class TuppariClient {
+public class TuppariClient implements Closeable {
 
     private static final String DEFAULT_TARGET_URL = "https://api.tuppari.com";
 
@@ -13,6 +38,28 @@ public class TuppariClient {
 
     static final String TUPPARI_MESSAGE_PUBLISH_API_METHOD = "PublishMessage";
 
+    static final String TUPPARI_MESSAGE_BATCH_PUBLISH_API_METHOD = "PublishMessages";
+
+    static final int DEFAULT_MAX_IN_FLIGHT = 64;
+
+    static final int DEFAULT_EJECTION_THRESHOLD = 3;
+
+    static final long DEFAULT_EJECTION_MILLIS = 10000;
+
+    static final int MIN_CHANNEL_RATE_LIMITER_SWEEP_SIZE = 1024;
+
+    static final String IN_FLIGHT_LIMIT_EXCEEDED = "Too many in-flight publishes";
+
+    /**
+     * The delay before a publish rejected for the in-flight limit checks again for a free slot.
+     */
+    static final long IN_FLIGHT_RETRY_DELAY_MILLIS = 10;
+
+    /**
+     * Runs tasks after {@link #IN_FLIGHT_RETRY_DELAY_MILLIS}, without holding a thread during the delay.
+     */
+    static final Executor IN_FLIGHT_RETRY_EXECUTOR = CompletableFuture.delayedExecutor(IN_FLIGHT_RETRY_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+
     private String applicationId;
 
     private String accessKeyId;
@@ -21,9 +68,55 @@ public class TuppariClient {
 
     private URI targetUri;
 
-    private int connectTimeout = 0;
+    private Signer signer;
+
+    private volatile Clock clock = Clock.systemUTC();
+
+    private volatile RetryPolicy retryPolicy;
+
+    private volatile HedgingPolicy hedgingPolicy;
+
+    private volatile TuppariMetrics metrics;
+
+    private final TransportConfig transportConfig = new TransportConfig();
+
+    private volatile Transport transport;
+
+    private boolean defaultTransport;
+
+    private volatile int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+
+    private final InFlightPermits inFlightPermits = new InFlightPermits(DEFAULT_MAX_IN_FLIGHT);
+
+    private volatile ConcurrencyLimiter concurrencyLimiter;
+
+    private volatile RateLimiter rateLimiter;
 
-    private int readTimeout = 0;
+    private volatile double channelPermitsPerSecond;
+
+    private volatile int channelBurst;
+
+    private final ConcurrentMap<String, RateLimiter> channelRateLimiters = new ConcurrentHashMap<String, RateLimiter>();
+
+    private final AtomicInteger channelRateLimiterSweepSize = new AtomicInteger(MIN_CHANNEL_RATE_LIMITER_SWEEP_SIZE);
+
+    private volatile long rateLimitWaitMillis;
+
+    private volatile Executor executor;
+
+    private ExecutorService defaultExecutor;
+
+    private volatile boolean virtualThreads;
+
+    private volatile int compressionThreshold;
+
+    private volatile ByteBufferPool bufferPool;
+
+    private final Endpoint[] endpoints;
+
+    private volatile int ejectionThreshold = DEFAULT_EJECTION_THRESHOLD;
+
+    private volatile long ejectionMillis = DEFAULT_EJECTION_MILLIS;
 
     /**
      * Construct from parmeters.
@@ -34,10 +127,32 @@ public class TuppariClient {
      * @param targetUri       The target URI to connect
      */
     public TuppariClient(String applicationId, String accessKeyId, String accessSecretKey, URI targetUri) {
+        this(applicationId, accessKeyId, accessSecretKey, Collections.singletonList(targetUri));
+    }
+
+    /**
+     * Construct with several API nodes. Each publish is sent to the node with the fewest outstanding requests,
+     * preferring the node with the lower latency among equals, and nodes that keep failing are ejected for a while.
+     *
+     * @param applicationId   Application ID to connect
+     * @param accessKeyId     Access key id of the application
+     * @param accessSecretKey Access secret key of the application
+     * @param targetUris      The target URIs of the nodes to connect
+     * @see Endpoint
+     */
+    public TuppariClient(String applicationId, String accessKeyId, String accessSecretKey, List<URI> targetUris) {
+        if (targetUris == null || targetUris.isEmpty()) {
+            throw new IllegalArgumentException("targetUris is empty");
+        }
         this.applicationId = applicationId;
         this.accessKeyId = accessKeyId;
         this.accessSecretKey = accessSecretKey;
-        this.targetUri = targetUri;
+        this.targetUri = targetUris.get(0);
+        this.signer = new Signer(accessSecretKey);
+        this.endpoints = new Endpoint[targetUris.size()];
+        for (int i = 0; i < endpoints.length; ++i) {
+            endpoints[i] = new Endpoint(targetUris.get(i));
+        }
     }
 
     /**
@@ -79,24 +194,1192 @@ public class TuppariClient {
         return targetUri;
     }
 
+    /**
+     * @return The API nodes of this client, with their load and health
+     */
+    public List<Endpoint> getEndpoints() {
+        return Collections.unmodifiableList(Arrays.asList(endpoints));
+    }
+
+    public int getEjectionThreshold() {
+        return ejectionThreshold;
+    }
+
+    /**
+     * Set the number of consecutive failures (I/O errors, 429 or 5xx responses) that ejects a node.
+     *
+     * @param ejectionThreshold The number of failures (default 3)
+     */
+    public void setEjectionThreshold(int ejectionThreshold) {
+        if (ejectionThreshold <= 0) {
+            throw new IllegalArgumentException("ejectionThreshold must be positive");
+        }
+        this.ejectionThreshold = ejectionThreshold;
+    }
+
+    public long getEjectionMillis() {
+        return ejectionMillis;
+    }
+
+    /**
+     * Set how long an ejected node receives no publishes, unless all nodes are ejected.
+     *
+     * @param ejectionMillis The ejection time in milliseconds (default 10000)
+     */
+    public void setEjectionMillis(long ejectionMillis) {
+        if (ejectionMillis < 0) {
+            throw new IllegalArgumentException("ejectionMillis must not be negative");
+        }
+        this.ejectionMillis = ejectionMillis;
+    }
+
+    public Clock getClock() {
+        return clock;
+    }
+
+    /**
+     * Set the clock that gives the date of requests.
+     *
+     * @param clock The clock
+     */
+    public void setClock(Clock clock) {
+        if (clock == null) {
+            throw new IllegalArgumentException("clock is null");
+        }
+        this.clock = clock;
+    }
+
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * Set the policy to retry failed publishes. Retry is disabled by default (null).
+     *
+     * @param retryPolicy The retry policy or null to disable retry
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    public HedgingPolicy getHedgingPolicy() {
+        return hedgingPolicy;
+    }
+
+    /**
+     * Set the policy to send hedged requests for slow publishes. Hedging is disabled by default (null).
+     * Hedged requests run on the executor of this client.
+     *
+     * @param hedgingPolicy The hedging policy or null to disable hedging
+     */
+    public void setHedgingPolicy(HedgingPolicy hedgingPolicy) {
+        this.hedgingPolicy = hedgingPolicy;
+    }
+
+    public TuppariMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Set the listener of publish metrics. Metrics are disabled by default (null).
+     * If the transport is a {@link JerseyTransport}, connection timings are reported too.
+     *
+     * @param metrics The listener or null to disable metrics
+     * @see PublishMetrics
+     */
+    public synchronized void setMetrics(TuppariMetrics metrics) {
+        this.metrics = metrics;
+        if (transport instanceof JerseyTransport) {
+            ((JerseyTransport) transport).setMetrics(metrics);
+        }
+    }
+
+    /**
+     * @return The signer of the access secret key
+     */
+    Signer getSigner() {
+        return signer;
+    }
+
     public int getConnectTimeout() {
-        return connectTimeout;
+        return transportConfig.getConnectTimeout();
     }
 
     public void setConnectTimeout(int connectTimeout) {
-        this.connectTimeout = connectTimeout;
+        transportConfig.setConnectTimeout(connectTimeout);
     }
 
     public int getReadTimeout() {
-        return readTimeout;
+        return transportConfig.getReadTimeout();
     }
 
     public void setReadTimeout(int readTimeout) {
-        this.readTimeout = readTimeout;
+        transportConfig.setReadTimeout(readTimeout);
+    }
+
+    /**
+     * Returns the configuration of the default transport.
+     * Changes take effect only before the default transport is created by the first publish.
+     *
+     * @return The transport configuration
+     */
+    public TransportConfig getTransportConfig() {
+        return transportConfig;
+    }
+
+    /**
+     * Returns the transport shared by all channels of this client.
+     * If no transport is set, a {@link JerseyTransport} is created from {@link #getTransportConfig()} on first use.
+     *
+     * @return The transport
+     */
+    public Transport getTransport() {
+        Transport t = transport;
+        if (t == null) {
+            synchronized (this) {
+                if (transport == null) {
+                    JerseyTransport jerseyTransport = new JerseyTransport(transportConfig.copy());
+                    jerseyTransport.setMetrics(metrics);
+                    transport = jerseyTransport;
+                    defaultTransport = true;
+                }
+                t = transport;
+            }
+        }
+        return t;
+    }
+
+    /**
+     * Set the transport shared by all channels of this client.
+     * The transport is not closed by {@link #close()}.
+     *
+     * @param transport The transport
+     */
+    public synchronized void setTransport(Transport transport) {
+        if (transport == null) {
+            throw new IllegalArgumentException("transport is null");
+        }
+        if (this.transport != null && defaultTransport) {
+            this.transport.close();
+        }
+        this.transport = transport;
+        this.defaultTransport = false;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * Set the maximum number of asynchronous publishes that may be in flight at once.
+     * Publishes beyond this limit are rejected with {@link TuppariException}.
+     * Publishes already in flight count against the new limit.
+     *
+     * @param maxInFlight The maximum number of in-flight publishes (must be positive)
+     */
+    public synchronized void setMaxInFlight(int maxInFlight) {
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException("maxInFlight must be positive");
+        }
+        int delta = maxInFlight - this.maxInFlight;
+        if (delta > 0) {
+            inFlightPermits.release(delta);
+        } else if (delta < 0) {
+            inFlightPermits.reducePermits(-delta);
+        }
+        this.maxInFlight = maxInFlight;
+    }
+
+    public ConcurrencyLimiter getConcurrencyLimiter() {
+        return concurrencyLimiter;
+    }
+
+    /**
+     * Set the limiter that adapts the limit of in-flight asynchronous publishes to the observed round-trip time.
+     * While set, it replaces the fixed limit of {@link #setMaxInFlight(int)}. Disabled by default (null).
+     *
+     * @param concurrencyLimiter The limiter or null to use the fixed limit
+     */
+    public void setConcurrencyLimiter(ConcurrencyLimiter concurrencyLimiter) {
+        this.concurrencyLimiter = concurrencyLimiter;
+    }
+
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * Set the rate limiter of the application. Every publish takes a permit before its body is encoded and signed,
+     * and a batch of {@link BatchingPublisher} takes one permit. Share the limiter between the clients of
+     * the same application to limit their total rate. Rate limiting is disabled by default (null).
+     *
+     * @param rateLimiter The rate limiter or null to disable
+     * @see #setRateLimitWaitMillis(long)
+     */
+    public void setRateLimiter(RateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    public double getChannelPermitsPerSecond() {
+        return channelPermitsPerSecond;
+    }
+
+    public int getChannelBurst() {
+        return channelBurst;
+    }
+
+    /**
+     * Limit the rate of publishes of each channel, in addition to the rate limiter of the application.
+     * A token bucket is created for each channel on its first publish, and dropped once it is full again,
+     * so short-lived channels do not accumulate.
+     *
+     * @param permitsPerSecond The rate of each channel, or 0 to disable
+     * @param burst            The number of publishes of a channel that can be sent at once
+     */
+    public void setChannelRateLimit(double permitsPerSecond, int burst) {
+        if (permitsPerSecond < 0) {
+            throw new IllegalArgumentException("permitsPerSecond must not be negative");
+        }
+        if (permitsPerSecond > 0 && burst <= 0) {
+            throw new IllegalArgumentException("burst must be positive");
+        }
+        this.channelPermitsPerSecond = permitsPerSecond;
+        this.channelBurst = burst;
+        channelRateLimiters.clear();
+    }
+
+    /**
+     * Returns the rate limiter of the channel.
+     *
+     * @param channelName The name of channel
+     * @return The rate limiter or null if channels are not limited
+     */
+    public RateLimiter getChannelRateLimiter(String channelName) {
+        final double permitsPerSecond = channelPermitsPerSecond;
+        if (permitsPerSecond <= 0) {
+            return null;
+        }
+        RateLimiter limiter = channelRateLimiters.get(channelName);
+        if (limiter == null) {
+            final int burst = channelBurst;
+            limiter = channelRateLimiters.computeIfAbsent(channelName, k -> new RateLimiter(permitsPerSecond, burst));
+            int sweepSize = channelRateLimiterSweepSize.get();
+            if (channelRateLimiters.size() >= sweepSize && channelRateLimiterSweepSize.compareAndSet(sweepSize, Integer.MAX_VALUE)) {
+                evictChannelRateLimiters();
+                channelRateLimiterSweepSize.set(Math.max(MIN_CHANNEL_RATE_LIMITER_SWEEP_SIZE, channelRateLimiters.size() * 2));
+            }
+        }
+        return limiter;
+    }
+
+    /**
+     * Drop the rate limiters of channels whose bucket is full. Such a limiter is in the same state as the one
+     * created on the next publish of the channel. The sweep runs when the number of limiters doubles.
+     */
+    void evictChannelRateLimiters() {
+        for (Map.Entry<String, RateLimiter> entry : channelRateLimiters.entrySet()) {
+            RateLimiter limiter = entry.getValue();
+            if (limiter.isFull()) {
+                channelRateLimiters.remove(entry.getKey(), limiter);
+            }
+        }
+    }
+
+    int getChannelRateLimiterCount() {
+        return channelRateLimiters.size();
+    }
+
+    public long getRateLimitWaitMillis() {
+        return rateLimitWaitMillis;
+    }
+
+    /**
+     * Set how long a publish waits for a permit of the rate limiters. By default (0) a publish over the rate
+     * fails immediately with {@link TuppariException}, without being sent.
+     *
+     * @param rateLimitWaitMillis The maximum wait in milliseconds
+     */
+    public void setRateLimitWaitMillis(long rateLimitWaitMillis) {
+        if (rateLimitWaitMillis < 0) {
+            throw new IllegalArgumentException("rateLimitWaitMillis must not be negative");
+        }
+        this.rateLimitWaitMillis = rateLimitWaitMillis;
+    }
+
+    /**
+     * Returns the executor used to run asynchronous publishes.
+     * If no executor is set, a shared pool of daemon threads is created on first use,
+     * or an executor starting a virtual thread per publish if virtual threads are enabled.
+     *
+     * @return The executor
+     */
+    public Executor getExecutor() {
+        Executor e = executor;
+        if (e == null) {
+            synchronized (this) {
+                if (executor == null) {
+                    defaultExecutor = virtualThreads
+                            ? VirtualThreads.newVirtualThreadPerTaskExecutor("tuppari-publisher-virtual-")
+                            : Executors.newCachedThreadPool(new PublisherThreadFactory());
+                    executor = defaultExecutor;
+                }
+                e = executor;
+            }
+        }
+        return e;
+    }
+
+    /**
+     * Set the executor used to run asynchronous publishes.
+     * Signing and the HTTP request are both executed on this executor.
+     *
+     * @param executor The executor
+     */
+    public synchronized void setExecutor(Executor executor) {
+        if (executor == null) {
+            throw new IllegalArgumentException("executor is null");
+        }
+        if (defaultExecutor != null) {
+            defaultExecutor.shutdown();
+            defaultExecutor = null;
+        }
+        this.executor = executor;
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * Run asynchronous publishes on virtual threads (Java 21 or later).
+     * <p/>
+     * The default executor starts a virtual thread per publish instead of using a pool of platform threads,
+     * and replaces an executor set by {@link #setExecutor(Executor)}. Blocking {@link TuppariChannel#send(String, String)}
+     * may also be called from virtual threads of the application in either mode. Combine with a larger
+     * {@link #setMaxInFlight(int)} to run thousands of concurrent publishes.
+     *
+     * @param virtualThreads true to use virtual threads
+     * @throws UnsupportedOperationException if enabled on a runtime without virtual threads, including Java 19
+     *                                       and 20 without {@code --enable-preview}
+     * @see #isVirtualThreadSupported()
+     */
+    public synchronized void setVirtualThreads(boolean virtualThreads) {
+        if (virtualThreads && !VirtualThreads.isSupported()) {
+            throw new UnsupportedOperationException("Virtual threads require Java 21 or later");
+        }
+        this.virtualThreads = virtualThreads;
+        if (defaultExecutor != null) {
+            defaultExecutor.shutdown();
+            defaultExecutor = null;
+            executor = null;
+        } else if (virtualThreads) {
+            executor = null;
+        }
+    }
+
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    /**
+     * Compress request bodies of at least the given size with gzip. Compression is disabled by default (0).
+     * <p/>
+     * Compressed requests are sent with the Content-Encoding header, which is signed, and the body hash of the
+     * signature covers the compressed bytes as sent. A body that does not get smaller is sent uncompressed.
+     *
+     * @param compressionThreshold The minimum size of the encoded body in bytes to compress, or 0 to disable
+     */
+    public void setCompressionThreshold(int compressionThreshold) {
+        if (compressionThreshold < 0) {
+            throw new IllegalArgumentException("compressionThreshold must not be negative");
+        }
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    public ByteBufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    /**
+     * Set the pool of direct buffers that request bodies are encoded into. Pooling is disabled by default (null).
+     * <p/>
+     * Bodies of {@link EventPublisher} up to the buffer size of the pool are encoded straight into a pooled
+     * direct buffer, hashed for the signature from it, and handed to the transport without being copied into
+     * an array. {@link HttpClientTransport} writes the buffer to the connection as is; other transports copy it
+     * once. The pool may be shared by several clients.
+     *
+     * @param bufferPool The buffer pool or null to disable pooling
+     */
+    public void setBufferPool(ByteBufferPool bufferPool) {
+        this.bufferPool = bufferPool;
+    }
+
+    /**
+     * @return true if the running Java supports virtual threads
+     */
+    public static boolean isVirtualThreadSupported() {
+        return VirtualThreads.isSupported();
+    }
+
+    /**
+     * Release the default transport and the default executor created by this client.
+     */
+    @Override
+    public synchronized void close() {
+        if (transport != null && defaultTransport) {
+            transport.close();
+            transport = null;
+        }
+        if (defaultExecutor != null) {
+            defaultExecutor.shutdown();
+            defaultExecutor = null;
+            executor = null;
+        }
+    }
+
+    /**
+     * Take a permit of the rate limiters of the application and the channel, waiting up to
+     * {@link #getRateLimitWaitMillis()}.
+     *
+     * @param channelName The name of channel or null to take only a permit of the application
+     * @throws TuppariException if no permit is available in time
+     */
+    void acquirePermit(String channelName) {
+        acquirePermit(channelName, rateLimitWaitMillis);
+    }
+
+    /**
+     * @param channelName The name of channel or null to take only a permit of the application
+     * @param waitMillis The maximum wait in milliseconds
+     * @throws TuppariException if no permit is available in time
+     * @see #acquirePermit(String)
+     */
+    void acquirePermit(String channelName, long waitMillis) {
+        long wait = reservePermit(channelName, waitMillis);
+        if (wait > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new TuppariException(e);
+            }
+        }
+    }
+
+    /**
+     * Reserve a permit of the rate limiters of the application and the channel, if both are available within
+     * the maximum wait. The permit of the application is returned if the channel refuses the publish.
+     *
+     * @param channelName The name of channel or null to take only a permit of the application
+     * @param waitMillis The maximum wait in milliseconds
+     * @return The time to wait for the reserved permits in nanoseconds
+     * @throws TuppariException if no permit is available in time
+     */
+    long reservePermit(String channelName, long waitMillis) {
+        long maxWait = TimeUnit.MILLISECONDS.toNanos(waitMillis);
+        long wait = 0;
+        RateLimiter limiter = rateLimiter;
+        if (limiter != null) {
+            wait = limiter.reserve(maxWait);
+            if (wait < 0) {
+                throw new TuppariException("Rate limit exceeded for application " + applicationId);
+            }
+        }
+        if (channelName != null) {
+            RateLimiter channelLimiter = getChannelRateLimiter(channelName);
+            if (channelLimiter != null) {
+                long channelWait = channelLimiter.reserve(maxWait);
+                if (channelWait < 0) {
+                    if (limiter != null) {
+                        limiter.refund();
+                    }
+                    throw new TuppariException("Rate limit exceeded for channel " + channelName);
+                }
+                wait = Math.max(wait, channelWait);
+            }
+        }
+        return wait;
+    }
+
+    Semaphore getInFlightPermits() {
+        return inFlightPermits;
+    }
+
+    /**
+     * @return The number of asynchronous publishes that can be started now without exceeding the in-flight limit,
+     *         or the current limit of the concurrency limiter if set
+     */
+    int getAvailableInFlight() {
+        ConcurrencyLimiter limiter = concurrencyLimiter;
+        if (limiter != null) {
+            return Math.max(0, limiter.getLimit() - limiter.getInFlight());
+        }
+        // Negative while publishes started under a larger limit are still in flight
+        return Math.max(0, inFlightPermits.availablePermits());
+    }
+
+    /**
+     * @param error The error of an asynchronous publish
+     * @return true if the publish was rejected because the in-flight limit was reached, before being sent
+     */
+    static boolean isInFlightRejection(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        return cause instanceof TuppariException && ((TuppariException) cause).getStatus() == 0
+                && cause.getMessage() != null && cause.getMessage().startsWith(IN_FLIGHT_LIMIT_EXCEEDED);
+    }
+
+    /**
+     * Take the permits of the rate limiters for the channel, then run the publish on the executor, bounded by the
+     * in-flight limit of this client.
+     *
+     * A publish that has to wait for its permits is scheduled after the wait instead of parking a thread, and takes
+     * its in-flight slot only then, so the wait neither holds a slot nor counts as round-trip time of the
+     * concurrency limiter. If no permit is available within {@link #getRateLimitWaitMillis()}, the returned future
+     * is completed exceptionally with {@link TuppariException}.
+     *
+     * @param channelName The name of channel or null to take only a permit of the application
+     * @param publish The blocking publish
+     * @return Future of the result
+     */
+    <T> CompletableFuture<T> submit(String channelName, final Supplier<T> publish) {
+        return submitAsync(channelName, () -> CompletableFuture.supplyAsync(publish, getExecutor()));
+    }
+
+    /**
+     * Take the permits of the rate limiters for the channel, then start the asynchronous publish, bounded by the
+     * in-flight limit of this client. The permits are returned if the publish is rejected for the in-flight limit,
+     * as it is not sent.
+     *
+     * @param channelName The name of channel or null to take only a permit of the application
+     * @param publish Starts the publish and returns its future
+     * @return Future of the result
+     * @see #submit(String, Supplier)
+     */
+    <T> CompletableFuture<T> submitAsync(String channelName, final Supplier<CompletableFuture<T>> publish) {
+        long wait;
+        try {
+            wait = reservePermit(channelName, rateLimitWaitMillis);
+        } catch (TuppariException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        CompletableFuture<T> future = wait == 0
+                ? submitAsync(publish)
+                : delay(wait, TimeUnit.NANOSECONDS).thenComposeAsync(v -> submitAsync(publish), getExecutor());
+        if (rateLimiter == null && channelPermitsPerSecond <= 0) {
+            return future;
+        }
+        return future.whenComplete((result, error) -> {
+            if (error != null && isInFlightRejection(error)) {
+                refundPermit(channelName);
+            }
+        });
+    }
+
+    /**
+     * Return the permits taken by {@link #reservePermit(String, long)} for a publish that is not sent.
+     */
+    private void refundPermit(String channelName) {
+        RateLimiter limiter = rateLimiter;
+        if (limiter != null) {
+            limiter.refund();
+        }
+        if (channelName != null) {
+            RateLimiter channelLimiter = channelRateLimiters.get(channelName);
+            if (channelLimiter != null) {
+                channelLimiter.refund();
+            }
+        }
+    }
+
+    /**
+     * Start the asynchronous publish, bounded by the in-flight limit of this client.
+     * The in-flight slot is held until the future of the publish is completed.
+     *
+     * If the number of in-flight publishes has reached {@link #getMaxInFlight()}, or the limit of the
+     * concurrency limiter if set, the returned future is completed exceptionally with {@link TuppariException}.
+     * With a queue timeout of the limiter, the publish is queued instead and started when a slot is released,
+     * without blocking the caller.
+     *
+     * @param publish Starts the publish and returns its future
+     * @return Future of the result
+     */
+    <T> CompletableFuture<T> submitAsync(Supplier<CompletableFuture<T>> publish) {
+        final ConcurrencyLimiter limiter = concurrencyLimiter;
+        if (limiter != null) {
+            return submitAsync(publish, limiter);
+        }
+
+        final Semaphore permits = inFlightPermits;
+        if (!permits.tryAcquire()) {
+            return CompletableFuture.failedFuture(new TuppariException(IN_FLIGHT_LIMIT_EXCEEDED + " (max " + maxInFlight + ")"));
+        }
+
+        CompletableFuture<T> future;
+        try {
+            future = publish.get();
+        } catch (RejectedExecutionException e) {
+            permits.release();
+            return CompletableFuture.failedFuture(new TuppariException(e));
+        }
+        return future.whenComplete((result, error) -> permits.release());
+    }
+
+    private <T> CompletableFuture<T> submitAsync(final Supplier<CompletableFuture<T>> publish, final ConcurrencyLimiter limiter) {
+        CompletableFuture<Boolean> slot = limiter.acquire();
+        if (slot.isDone()) {
+            return submitAsync(publish, limiter, slot.join());
+        }
+        // Queued for a slot, started by the release of another publish
+        return slot.thenCompose(acquired -> submitAsync(publish, limiter, acquired));
+    }
+
+    private <T> CompletableFuture<T> submitAsync(Supplier<CompletableFuture<T>> publish, ConcurrencyLimiter limiter, boolean acquired) {
+        if (!acquired) {
+            return CompletableFuture.failedFuture(new TuppariException(IN_FLIGHT_LIMIT_EXCEEDED + " (limit " + limiter.getLimit() + ")"));
+        }
+
+        final long start = System.nanoTime();
+        CompletableFuture<T> future;
+        try {
+            future = publish.get();
+        } catch (RejectedExecutionException e) {
+            limiter.release(System.nanoTime() - start, e);
+            return CompletableFuture.failedFuture(new TuppariException(e));
+        }
+        return future.whenComplete((result, error) -> limiter.release(System.nanoTime() - start, error));
+    }
+
+    /**
+     * Send signed request of the operation to the messages API.
+     * The request is retried and hedged according to the policies of this client.
+     *
+     * @param operation The operation name
+     * @param body The body of the request
+     * @return The response body
+     * @throws TuppariException if failed to send the request or the server returns error
+     */
+    String post(String operation, final Map<String, Object> body) {
+        return post(operation, () -> SignUtil.encodeBody(body));
+    }
+
+    /**
+     * Send signed request of the operation to the messages API.
+     *
+     * @param operation The operation name
+     * @param encoder Returns the UTF-8 encoded JSON body of the request, called once
+     * @return The response body
+     * @throws TuppariException if failed to send the request or the server returns error
+     * @see #post(String, java.util.Map)
+     */
+    String post(String operation, Supplier<byte[]> encoder) {
+        return post(operation, encoder, true);
+    }
+
+    /**
+     * Send signed request of the operation to the messages API.
+     * If the response body is not read, only the status is checked and the body of a successful response
+     * is drained without being decoded (fire-and-confirm).
+     *
+     * @param operation The operation name
+     * @param encoder Returns the UTF-8 encoded JSON body of the request, called once
+     * @param readBody false to discard the body of a successful response
+     * @return The response body, or null if not read
+     * @throws TuppariException if failed to send the request or the server returns error
+     */
+    String post(String operation, final Supplier<byte[]> encoder, boolean readBody) {
+        return postBuffer(operation, pool -> PooledByteBuffer.wrap(encoder.get()), readBody);
+    }
+
+    /**
+     * Send signed request of the operation to the messages API, with the body encoded into a buffer.
+     *
+     * @param operation The operation name
+     * @param encoder Returns the encoded body, given the buffer pool of this client or null if there is none;
+     *                called once, and the returned lease is released by this method
+     * @param readBody false to discard the body of a successful response
+     * @return The response body, or null if not read
+     * @throws TuppariException if failed to send the request or the server returns error
+     * @see #setBufferPool(ByteBufferPool)
+     */
+    String postBuffer(String operation, Function<ByteBufferPool, PooledByteBuffer> encoder, boolean readBody) {
+        TuppariMetrics m = metrics;
+        if (m == null) {
+            return post(operation, encoder, readBody, null);
+        }
+
+        long start = System.nanoTime();
+        m.onPublishStart();
+        boolean success = false;
+        try {
+            String result = post(operation, encoder, readBody, m);
+            success = true;
+            return result;
+        } finally {
+            m.onPublishEnd(System.nanoTime() - start, success);
+        }
+    }
+
+    /**
+     * Send signed request of the operation to the messages API without waiting for the response.
+     *
+     * @param operation The operation name
+     * @param encoder Returns the UTF-8 encoded JSON body of the request, called once
+     * @param readBody false to discard the body of a successful response
+     * @return Future of the response body, or of null if not read
+     * @see #postBufferAsync(String, Function, boolean)
+     */
+    CompletableFuture<String> postAsync(String operation, final Supplier<byte[]> encoder, boolean readBody) {
+        return postBufferAsync(operation, pool -> PooledByteBuffer.wrap(encoder.get()), readBody);
+    }
+
+    /**
+     * Send signed request of the operation to the messages API without waiting for the response.
+     * The body is encoded and signed on the executor of this client, then sent with the asynchronous methods of
+     * the transport, so with a non-blocking transport such as {@link HttpClientTransport} no thread waits for the
+     * response. Retries and hedged requests are scheduled after their delay instead of sleeping.
+     *
+     * @param operation The operation name
+     * @param encoder Returns the encoded body, given the buffer pool of this client or null if there is none;
+     *                called once, and the returned lease is released when the publish is completed
+     * @param readBody false to discard the body of a successful response
+     * @return Future of the response body, or of null if not read
+     * @see #postBuffer(String, Function, boolean)
+     */
+    CompletableFuture<String> postBufferAsync(final String operation, final Function<ByteBufferPool, PooledByteBuffer> encoder, final boolean readBody) {
+        final TuppariMetrics m = metrics;
+        final long start = m != null ? System.nanoTime() : 0;
+        if (m != null) {
+            m.onPublishStart();
+        }
+
+        final RetryPolicy retry = retryPolicy;
+        CompletableFuture<String> future;
+        try {
+            // The first attempt is started on the executor too, never on the caller, as the default
+            // asynchronous methods of a transport block until the response
+            future = CompletableFuture.supplyAsync(() -> {
+                final EncodedBody body = encode(encoder, m);
+                try {
+                    return postAsync(operation, body, readBody, retry, 1, m)
+                            .whenComplete((result, error) -> body.buffer.release());
+                } catch (RuntimeException e) {
+                    body.buffer.release();
+                    throw e;
+                }
+            }, getExecutor()).thenCompose(Function.identity());
+        } catch (RejectedExecutionException e) {
+            future = CompletableFuture.failedFuture(new TuppariException(e));
+        }
+        if (m != null) {
+            future = future.whenComplete((result, error) -> m.onPublishEnd(System.nanoTime() - start, error == null));
+        }
+        return future;
+    }
+
+    private String post(String operation, Function<ByteBufferPool, PooledByteBuffer> encoder, boolean readBody, TuppariMetrics m) {
+        EncodedBody body = encode(encoder, m);
+        try {
+            RetryPolicy retry = retryPolicy;
+            for (int attempt = 1; ; ++attempt) {
+                try {
+                    HedgingPolicy hedging = hedgingPolicy;
+                    return hedging != null ? postHedged(operation, body, readBody, hedging, m) : postTo(selectEndpoint(), operation, body, readBody, null, m);
+                } catch (TuppariException e) {
+                    if (retry == null || attempt >= retry.getMaxAttempts() || !retry.isRetryable(e)) {
+                        throw e;
+                    }
+                    sleep(retry.backoffMillis(attempt));
+                }
+            }
+        } finally {
+            body.buffer.release();
+        }
+    }
+
+    /**
+     * Send the request and retry it according to the retry policy, scheduling each retry after its backoff.
+     */
+    private CompletableFuture<String> postAsync(final String operation, final EncodedBody body, final boolean readBody, final RetryPolicy retry, final int attempt, final TuppariMetrics m) {
+        HedgingPolicy hedging = hedgingPolicy;
+        CompletableFuture<String> result = hedging != null ? postHedgedAsync(operation, body, readBody, hedging, m) : postToAsync(selectEndpoint(), operation, body, readBody, null, m);
+        if (retry == null || attempt >= retry.getMaxAttempts()) {
+            return result;
+        }
+        return result.handle((response, error) -> {
+            if (error == null) {
+                return CompletableFuture.completedFuture(response);
+            }
+            TuppariException e = toTuppariException(error);
+            if (!retry.isRetryable(e)) {
+                return CompletableFuture.<String>failedFuture(e);
+            }
+            return delay(retry.backoffMillis(attempt), TimeUnit.MILLISECONDS)
+                    .thenComposeAsync(v -> postAsync(operation, body, readBody, retry, attempt + 1, m), getExecutor());
+        }).thenCompose(Function.identity());
+    }
+
+    /**
+     * Encode the body, and compress it if it is at least {@link #getCompressionThreshold()} bytes long and
+     * compression makes it smaller.
+     */
+    private EncodedBody encode(Function<ByteBufferPool, PooledByteBuffer> encoder, TuppariMetrics m) {
+        PooledByteBuffer body;
+        try {
+            long start = m != null ? System.nanoTime() : 0;
+            body = encoder.apply(bufferPool);
+            if (m != null) {
+                m.onPhase(PublishPhase.ENCODE, System.nanoTime() - start);
+            }
+        } catch (RuntimeException e) {
+            throw new TuppariException(e);
+        }
+
+        try {
+            int threshold = compressionThreshold;
+            int length = body.buffer().remaining();
+            if (threshold > 0 && length >= threshold) {
+                long start = m != null ? System.nanoTime() : 0;
+                byte[] compressed = GzipEncoder.compress(body.buffer());
+                if (m != null) {
+                    m.onPhase(PublishPhase.COMPRESS, System.nanoTime() - start);
+                }
+                if (compressed.length < length) {
+                    body.release();
+                    return new EncodedBody(PooledByteBuffer.wrap(compressed), true);
+                }
+            }
+            return new EncodedBody(body, false);
+        } catch (RuntimeException e) {
+            body.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Sign and send the request once to the node, and track its load and health.
+     */
+    private String postTo(Endpoint endpoint, String operation, EncodedBody body, boolean readBody, HedgingPolicy hedging, TuppariMetrics m) {
+        RequestTemplate template = endpoint.getRequestTemplate(operation, body.gzip, accessKeyId, signer);
+        endpoint.onStart();
+        long start = System.nanoTime();
+        try {
+            String result = postOnce(template, body.buffer.buffer(), readBody, hedging, m);
+            endpoint.onSuccess(System.nanoTime() - start);
+            return result;
+        } catch (TuppariException e) {
+            endpoint.onFailure(e, ejectionThreshold, TimeUnit.MILLISECONDS.toNanos(ejectionMillis));
+            throw e;
+        }
+    }
+
+    /**
+     * Sign the request and send it once to the node with the asynchronous methods of the transport,
+     * and track the load and health of the node.
+     */
+    private CompletableFuture<String> postToAsync(final Endpoint endpoint, String operation, EncodedBody body, final boolean readBody, final HedgingPolicy hedging, final TuppariMetrics m) {
+        endpoint.onStart();
+        final long start = System.nanoTime();
+        CompletableFuture<TransportResponse> response;
+        final long sendStart;
+        try {
+            RequestTemplate template = endpoint.getRequestTemplate(operation, body.gzip, accessKeyId, signer);
+            ByteBuffer data = body.buffer.buffer();
+            Map<String, String> headers = sign(template, data, m);
+            sendStart = System.nanoTime();
+            Transport t = getTransport();
+            response = readBody ? t.postAsync(template.getUri(), headers, data.duplicate()) : t.postForStatusAsync(template.getUri(), headers, data.duplicate());
+        } catch (RuntimeException e) {
+            TuppariException error = onError(e, m);
+            endpoint.onFailure(error, ejectionThreshold, TimeUnit.MILLISECONDS.toNanos(ejectionMillis));
+            return CompletableFuture.failedFuture(error);
+        }
+        return response.handle((r, error) -> {
+            long end = System.nanoTime();
+            try {
+                if (error != null) {
+                    throw toTuppariException(error);
+                }
+                String result = onResponse(r, end - sendStart, readBody, hedging, m);
+                endpoint.onSuccess(end - start);
+                return result;
+            } catch (RuntimeException e) {
+                TuppariException failure = onError(e, m);
+                endpoint.onFailure(failure, ejectionThreshold, TimeUnit.MILLISECONDS.toNanos(ejectionMillis));
+                throw failure;
+            }
+        });
+    }
+
+    /**
+     * Returns the node with the fewest outstanding requests, and the lowest latency among equals,
+     * skipping ejected nodes unless all of them are ejected.
+     */
+    Endpoint selectEndpoint() {
+        Endpoint[] e = endpoints;
+        if (e.length == 1) {
+            return e[0];
+        }
+        long now = System.nanoTime();
+        int start = ThreadLocalRandom.current().nextInt(e.length);
+        Endpoint best = null;
+        Endpoint soonest = null;
+        for (int i = 0; i < e.length; ++i) {
+            Endpoint c = e[(start + i) % e.length];
+            if (c.isEjected(now)) {
+                if (soonest == null || c.getEjectedUntilNanos() - soonest.getEjectedUntilNanos() < 0) {
+                    soonest = c;
+                }
+                continue;
+            }
+            if (best == null) {
+                best = c;
+                continue;
+            }
+            int outstanding = c.getOutstanding();
+            int bestOutstanding = best.getOutstanding();
+            if (outstanding < bestOutstanding || (outstanding == bestOutstanding && c.getLatencyNanos() < best.getLatencyNanos())) {
+                best = c;
+            }
+        }
+        return best != null ? best : soonest;
+    }
+
+    /**
+     * Sign and send the request once. Signing is done for each attempt because the date is part of the signature.
+     */
+    private String postOnce(RequestTemplate template, ByteBuffer body, boolean readBody, HedgingPolicy hedging, TuppariMetrics m) {
+        try {
+            Map<String, String> headers = sign(template, body, m);
+            boolean timed = m != null || hedging != null;
+            long start = timed ? System.nanoTime() : 0;
+            Transport t = getTransport();
+            ByteBuffer data = body.duplicate();
+            TransportResponse response = readBody ? t.post(template.getUri(), headers, data) : t.postForStatus(template.getUri(), headers, data);
+            return onResponse(response, timed ? System.nanoTime() - start : 0, readBody, hedging, m);
+        } catch (RuntimeException e) {
+            throw onError(e, m);
+        }
+    }
+
+    private Map<String, String> sign(RequestTemplate template, ByteBuffer body, TuppariMetrics m) {
+        long start = m != null ? System.nanoTime() : 0;
+        Map<String, String> headers = template.sign(body, DateUtil.now(clock), m);
+        if (m != null) {
+            m.onPhase(PublishPhase.SIGN, System.nanoTime() - start);
+            m.onBytesSent(body.remaining());
+        }
+        return headers;
+    }
+
+    /**
+     * Check the response of a request sent in the elapsed time, and return its body if read.
+     *
+     * @throws TuppariException if the server returns error
+     */
+    private static String onResponse(TransportResponse response, long elapsed, boolean readBody, HedgingPolicy hedging, TuppariMetrics m) {
+        if (m != null) {
+            m.onPhase(PublishPhase.ROUND_TRIP, elapsed);
+            m.onBytesReceived(response.getBodyLength());
+        }
+        if (!response.isSuccess()) {
+            throw new TuppariException(response.getBody(), response.getStatus());
+        }
+        if (hedging != null) {
+            hedging.record(TimeUnit.NANOSECONDS.toMillis(elapsed));
+        }
+        return readBody ? response.getBody() : null;
+    }
+
+    /**
+     * Count the failure of a request, and return it as {@link TuppariException}.
+     */
+    private static TuppariException onError(RuntimeException e, TuppariMetrics m) {
+        TuppariException error = e instanceof TuppariException ? (TuppariException) e : new TuppariException(e);
+        if (m != null) {
+            m.onError(e instanceof TuppariException ? error.getStatus() : 0);
+        }
+        return error;
+    }
+
+    /**
+     * Send the request, and send a duplicate if no response arrives within the hedge delay.
+     * The first successful response wins; if both fail, the last failure is thrown.
+     * Each request holds a reference to the body, as the losing request may still be sending it after the return.
+     * With several nodes, the duplicate usually goes to another node than the slow request, as that one is still outstanding.
+     */
+    private String postHedged(final String operation, final EncodedBody body, final boolean readBody, final HedgingPolicy hedging, final TuppariMetrics m) {
+        final CompletableFuture<String> result = new CompletableFuture<String>();
+        final AtomicInteger pending = new AtomicInteger(1);
+        BiConsumer<String, Throwable> onComplete = (response, error) -> {
+            if (error == null) {
+                result.complete(response);
+            } else if (pending.decrementAndGet() == 0) {
+                result.completeExceptionally(error instanceof CompletionException ? error.getCause() : error);
+            }
+        };
+
+        final Executor e = getExecutor();
+        Runnable send = () -> {
+            body.buffer.retain();
+            try {
+                CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return postTo(selectEndpoint(), operation, body, readBody, hedging, m);
+                    } finally {
+                        body.buffer.release();
+                    }
+                }, e).whenComplete(onComplete);
+            } catch (RejectedExecutionException ex) {
+                body.buffer.release();
+                throw new TuppariException(ex);
+            }
+        };
+        send.run();
+        try {
+            return result.get(hedging.getDelayMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException timeout) {
+            if (!result.isDone() && pending.incrementAndGet() > 1) {
+                send.run();
+            }
+            return await(result);
+        } catch (ExecutionException ex) {
+            throw unwrap(ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new TuppariException(ex);
+        }
+    }
+
+    /**
+     * Send the request, and send a duplicate if no response arrives within the hedge delay, without blocking.
+     * The hedge timer and each request hold a reference to the body, as they may outlive the returned future.
+     *
+     * @see #postHedged(String, EncodedBody, boolean, HedgingPolicy, TuppariMetrics)
+     */
+    private CompletableFuture<String> postHedgedAsync(final String operation, final EncodedBody body, final boolean readBody, final HedgingPolicy hedging, final TuppariMetrics m) {
+        final CompletableFuture<String> result = new CompletableFuture<String>();
+        final AtomicInteger pending = new AtomicInteger(1);
+        final Runnable send = () -> {
+            body.buffer.retain();
+            postToAsync(selectEndpoint(), operation, body, readBody, hedging, m).whenComplete((response, error) -> {
+                body.buffer.release();
+                if (error == null) {
+                    result.complete(response);
+                } else if (pending.decrementAndGet() == 0) {
+                    result.completeExceptionally(toTuppariException(error));
+                }
+            });
+        };
+        send.run();
+
+        final Executor e = getExecutor();
+        body.buffer.retain();
+        delay(hedging.getDelayMillis(), TimeUnit.MILLISECONDS).thenRun(() -> {
+            try {
+                e.execute(() -> {
+                    try {
+                        if (!result.isDone() && pending.incrementAndGet() > 1) {
+                            send.run();
+                        }
+                    } finally {
+                        body.buffer.release();
+                    }
+                });
+            } catch (RejectedExecutionException ex) {
+                body.buffer.release();
+            }
+        });
+        return result;
+    }
+
+    private static String await(CompletableFuture<String> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException ex) {
+            throw unwrap(ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new TuppariException(ex);
+        }
+    }
+
+    private static TuppariException toTuppariException(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        return cause instanceof TuppariException ? (TuppariException) cause : new TuppariException(cause);
+    }
+
+    /**
+     * Returns a future completed after the delay, without holding a thread.
+     */
+    private static CompletableFuture<Void> delay(long delay, TimeUnit unit) {
+        return new CompletableFuture<Void>().completeOnTimeout(null, delay, unit);
+    }
+
+    private static TuppariException unwrap(ExecutionException ex) {
+        Throwable cause = ex.getCause();
+        return cause instanceof TuppariException ? (TuppariException) cause : new TuppariException(cause);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TuppariException(e);
+        }
     }
 
     URI getMessagesApiEndpoint() {
         return targetUri.resolve(TUPPARI_MESSAGE_PUBLISH_API_PATH);
     }
 
+    /**
+     * The encoded body of a publish, compressed with gzip or not.
+     */
+    private static final class EncodedBody {
+
+        final PooledByteBuffer buffer;
+
+        final boolean gzip;
+
+        EncodedBody(PooledByteBuffer buffer, boolean gzip) {
+            this.buffer = buffer;
+            this.gzip = gzip;
+        }
+
+    }
+
+    /**
+     * Permits of the in-flight limit, resized in place so that publishes in flight release to the same semaphore.
+     */
+    private static final class InFlightPermits extends Semaphore {
+
+        InFlightPermits(int permits) {
+            super(permits);
+        }
+
+        @Override
+        protected void reducePermits(int reduction) {
+            super.reducePermits(reduction);
+        }
+
+    }
+
+    private static class PublisherThreadFactory implements ThreadFactory {
+
+        private static final AtomicInteger poolNumber = new AtomicInteger(1);
+
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        private final String namePrefix = "tuppari-publisher-" + poolNumber.getAndIncrement() + "-";
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, namePrefix + threadNumber.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        }
+
+    }
+
 }
@@ -2,6 +2,8 @@ package com.tuppari;
 
 public class TuppariException extends RuntimeException {
 
+    private int status;
+
     public TuppariException() {
     }
 
@@ -9,6 +11,15 @@ public class TuppariException extends RuntimeException {
         super(s);
     }
 
+    /**
+     * @param s      The response body returned from server
+     * @param status HTTP status code of the response
+     */
+    public TuppariException(String s, int status) {
+        super(s);
+        this.status = status;
+    }
+
     public TuppariException(String s, Throwable throwable) {
         super(s, throwable);
     }
@@ -16,4 +27,11 @@ public class TuppariException extends RuntimeException {
     public TuppariException(Throwable throwable) {
         super(throwable);
     }
+
+    /**
+     * @return HTTP status code of the error response, or 0 if no response was received
+     */
+    public int getStatus() {
+        return status;
+    }
 }
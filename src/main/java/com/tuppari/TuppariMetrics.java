@@ -0,0 +1,64 @@
+package com.tuppari;
+
+/**
+ * Listener of publish metrics.
+ *
+ * Set to {@link TuppariClient#setMetrics(TuppariMetrics)} to receive events. When no listener is set,
+ * the client does not even read the clock. Methods are called from publishing threads, so
+ * implementations must be thread safe and fast.
+ *
+ * @see PublishMetrics
+ */
+public interface TuppariMetrics {
+
+    /**
+     * Called when a phase of a publish is finished.
+     *
+     * @param phase The phase
+     * @param nanos Elapsed time in nanoseconds
+     */
+    void onPhase(PublishPhase phase, long nanos);
+
+    /**
+     * Called when a publish is started.
+     */
+    void onPublishStart();
+
+    /**
+     * Called when a publish is finished (after all retries).
+     *
+     * @param nanos   Elapsed time in nanoseconds
+     * @param success true if the publish succeeded
+     */
+    void onPublishEnd(long nanos, boolean success);
+
+    /**
+     * Called when a request body is sent.
+     *
+     * @param bytes The number of bytes
+     */
+    void onBytesSent(long bytes);
+
+    /**
+     * Called when a response body is received.
+     *
+     * @param bytes The number of bytes
+     */
+    void onBytesReceived(long bytes);
+
+    /**
+     * Called when a request attempt failed.
+     *
+     * @param status HTTP status code of the error response, or 0 if no response was received
+     */
+    void onError(int status);
+
+    /**
+     * Called when the derived signing key of a request is looked up in the {@link SigningKeyCache}.
+     *
+     * @param hit true if the key was cached
+     */
+    default void onSigningKeyCacheLookup(boolean hit) {
+    }
+
+}
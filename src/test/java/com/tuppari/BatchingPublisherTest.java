@@ -0,0 +1,235 @@
+package com.tuppari;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import net.arnx.jsonic.JSON;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class BatchingPublisherTest {
+
+    private HttpServer server;
+
+    private TuppariClient client;
+
+    private final List<String> operations = Collections.synchronizedList(new ArrayList<String>());
+
+    private final List<Map<String, Object>> messages = Collections.synchronizedList(new ArrayList<Map<String, Object>>());
+
+    /**
+     * Stand-in endpoint that unpacks the PublishMessages envelope and echoes the messages.
+     */
+    @Before
+    public void before() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/messages", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String operation = exchange.getRequestHeaders().getFirst("X-Tuppari-Operation");
+                Map<String, Object> body = JSON.decode(new String(readAll(exchange.getRequestBody()), StandardCharsets.UTF_8));
+                operations.add(operation);
+
+                Object response;
+                if ("PublishMessages".equals(operation)) {
+                    List<Map<String, Object>> results = new ArrayList<Map<String, Object>>();
+                    for (Map<String, Object> m : (List<Map<String, Object>>) body.get("messages")) {
+                        m.put("applicationId", body.get("applicationId"));
+                        m.put("channel", body.get("channel"));
+                        results.add(m);
+                    }
+                    messages.addAll(results);
+                    response = Collections.singletonMap("messages", results);
+                } else {
+                    messages.add(body);
+                    response = body;
+                }
+
+                byte[] data = JSON.encode(response).getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(200, data.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(data);
+                out.close();
+            }
+        });
+        server.start();
+        client = new TuppariClient("appId", "accessKey", "secretKey", URI.create("http://127.0.0.1:" + server.getAddress().getPort()));
+    }
+
+    @After
+    public void after() {
+        client.close();
+        server.stop(0);
+    }
+
+    @Test
+    public void testPublish_whenBatchIsFull() throws Exception {
+        BatchingPublisher publisher = new BatchingPublisher(client, 3, TimeUnit.HOURS.toMillis(1));
+        try {
+            List<CompletableFuture<PublishResult>> futures = new ArrayList<CompletableFuture<PublishResult>>();
+            for (int i = 0; i < 3; ++i) {
+                futures.add(publisher.publish("channel", "event", "message" + i));
+            }
+            for (int i = 0; i < 3; ++i) {
+                PublishResult result = futures.get(i).get(5, TimeUnit.SECONDS);
+                assertThat(result.getChannel(), is("channel"));
+                assertThat(result.getMessage(), is("message" + i));
+            }
+            assertThat(operations, is(Collections.singletonList("PublishMessages")));
+            assertThat(messages.size(), is(3));
+        } finally {
+            publisher.close();
+        }
+    }
+
+    @Test
+    public void testPublish_afterLinger() throws Exception {
+        BatchingPublisher publisher = new BatchingPublisher(client, 100, 50);
+        try {
+            CompletableFuture<PublishResult> first = publisher.publish("channel", "event", "message1");
+            CompletableFuture<PublishResult> second = publisher.publish("channel", "event", "message2");
+
+            assertThat(first.get(5, TimeUnit.SECONDS).getMessage(), is("message1"));
+            assertThat(second.get(5, TimeUnit.SECONDS).getMessage(), is("message2"));
+            assertThat(operations, is(Collections.singletonList("PublishMessages")));
+        } finally {
+            publisher.close();
+        }
+    }
+
+    @Test
+    public void testPublish_perChannel() throws Exception {
+        BatchingPublisher publisher = new BatchingPublisher(client, 100, TimeUnit.HOURS.toMillis(1));
+        try {
+            CompletableFuture<PublishResult> a = publisher.publish("a", "event", "message");
+            CompletableFuture<PublishResult> b = publisher.publish("b", "event", "message");
+            publisher.flush();
+
+            assertThat(a.get(5, TimeUnit.SECONDS).getChannel(), is("a"));
+            assertThat(b.get(5, TimeUnit.SECONDS).getChannel(), is("b"));
+            assertThat("A single message is sent as PublishMessage", operations, is(Arrays.asList("PublishMessage", "PublishMessage")));
+        } finally {
+            publisher.close();
+        }
+    }
+
+    @Test
+    public void testClose_flushesPendingMessages() throws Exception {
+        BatchingPublisher publisher = new BatchingPublisher(client, 100, TimeUnit.HOURS.toMillis(1));
+        CompletableFuture<PublishResult> first = publisher.publish("channel", "event", "message1");
+        CompletableFuture<PublishResult> second = publisher.publish("channel", "event", "message2");
+        publisher.close();
+
+        first.get(5, TimeUnit.SECONDS);
+        second.get(5, TimeUnit.SECONDS);
+        assertThat(messages.size(), is(2));
+        assertThat(publisher.publish("channel", "event", "message3").isCompletedExceptionally(), is(true));
+    }
+
+    @Test
+    public void testClose_withoutFlush() {
+        BatchingPublisher publisher = new BatchingPublisher(client, 100, TimeUnit.HOURS.toMillis(1));
+        publisher.setFlushOnClose(false);
+        CompletableFuture<PublishResult> future = publisher.publish("channel", "event", "message");
+        publisher.close();
+
+        assertThat(future.isCompletedExceptionally(), is(true));
+        assertThat(messages.size(), is(0));
+    }
+
+    @Test
+    public void testPublish_removesSentBatches() throws Exception {
+        BatchingPublisher publisher = new BatchingPublisher(client, 2, TimeUnit.HOURS.toMillis(1));
+        try {
+            List<CompletableFuture<PublishResult>> futures = new ArrayList<CompletableFuture<PublishResult>>();
+            for (int i = 0; i < 10; ++i) {
+                futures.add(publisher.publish("channel" + i, "event", "message"));
+                futures.add(publisher.publish("channel" + i, "event", "message"));
+            }
+            futures.add(publisher.publish("pending", "event", "message"));
+            assertThat("Only the channel with a pending message has a batch", publisher.getBatchCount(), is(1));
+
+            publisher.flush();
+            for (CompletableFuture<PublishResult> future : futures) {
+                future.get(5, TimeUnit.SECONDS);
+            }
+            assertThat(publisher.getBatchCount(), is(0));
+            assertThat(messages.size(), is(21));
+        } finally {
+            publisher.close();
+        }
+    }
+
+    @Test
+    public void testPublish_boundedByInFlightLimit() throws Exception {
+        client.setMaxInFlight(1);
+        BatchingPublisher publisher = new BatchingPublisher(client, 2, TimeUnit.HOURS.toMillis(1));
+        try {
+            client.getInFlightPermits().acquire();
+            CompletableFuture<PublishResult> first = publisher.publish("channel", "event", "message1");
+            CompletableFuture<PublishResult> second = publisher.publish("channel", "event", "message2");
+            Thread.sleep(100);
+            assertThat("Waiting for a slot", first.isDone(), is(false));
+            assertThat(second.isDone(), is(false));
+            assertThat(messages.size(), is(0));
+
+            client.getInFlightPermits().release();
+            assertThat(first.get(5, TimeUnit.SECONDS).getMessage(), is("message1"));
+            assertThat(second.get(5, TimeUnit.SECONDS).getMessage(), is("message2"));
+            assertThat(operations, is(Arrays.asList("PublishMessages")));
+        } finally {
+            publisher.close();
+        }
+    }
+
+    @Test
+    public void testFlush_moreChannelsThanInFlightLimit() throws Exception {
+        client.setMaxInFlight(4);
+        BatchingPublisher publisher = new BatchingPublisher(client, 100, TimeUnit.HOURS.toMillis(1));
+        List<CompletableFuture<PublishResult>> futures = new ArrayList<CompletableFuture<PublishResult>>();
+        try {
+            for (int i = 0; i < 40; ++i) {
+                futures.add(publisher.publish("channel" + i, "event", "message" + i));
+                futures.add(publisher.publish("channel" + i, "event", "message" + i));
+            }
+        } finally {
+            publisher.close();
+        }
+
+        for (CompletableFuture<PublishResult> future : futures) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+        assertThat(operations.size(), is(40));
+        assertThat(messages.size(), is(80));
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[4096];
+        int n;
+        while ((n = in.read(buf)) != -1) {
+            out.write(buf, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+}
@@ -0,0 +1,119 @@
+package com.tuppari;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ByteBufferPoolTest {
+
+    @Test
+    public void testAcquire() {
+        ByteBufferPool pool = new ByteBufferPool(1024, 4);
+
+        PooledByteBuffer lease = pool.acquire(100);
+        ByteBuffer buffer = lease.buffer();
+        assertTrue(lease.isPooled());
+        assertTrue(buffer.isDirect());
+        assertThat(buffer.position(), is(0));
+        assertThat(buffer.limit(), is(100));
+        lease.release();
+        assertThat(pool.getPooledCount(), is(1));
+
+        PooledByteBuffer reused = pool.acquire(200);
+        assertThat(reused.buffer(), sameInstance(buffer));
+        assertThat(reused.buffer().limit(), is(200));
+        reused.release();
+        assertThat(pool.getAllocatedCount(), is(1L));
+    }
+
+    @Test
+    public void testAcquire_largerThanBufferSize() {
+        ByteBufferPool pool = new ByteBufferPool(1024, 4);
+
+        PooledByteBuffer lease = pool.acquire(2048);
+        assertFalse(lease.isPooled());
+        assertThat(lease.buffer().remaining(), is(2048));
+        lease.release();
+
+        assertThat(pool.getPooledCount(), is(0));
+        assertThat(pool.getAllocatedCount(), is(0L));
+    }
+
+    @Test
+    public void testRelease_boundedByMaxPooled() {
+        ByteBufferPool pool = new ByteBufferPool(64, 2);
+        List<PooledByteBuffer> leases = new ArrayList<PooledByteBuffer>();
+        for (int i = 0; i < 5; ++i) {
+            leases.add(pool.acquire(64));
+        }
+        for (PooledByteBuffer lease : leases) {
+            lease.release();
+        }
+        assertThat(pool.getPooledCount(), is(2));
+        assertThat(pool.getAllocatedCount(), is(5L));
+    }
+
+    @Test
+    public void testRetain() {
+        ByteBufferPool pool = new ByteBufferPool(64, 2);
+        PooledByteBuffer lease = pool.acquire(10).retain();
+
+        lease.release();
+        assertThat("Still referenced", pool.getPooledCount(), is(0));
+        lease.release();
+        assertThat(pool.getPooledCount(), is(1));
+
+        try {
+            lease.release();
+            fail("IllegalStateException is expected");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        try {
+            lease.retain();
+            fail("IllegalStateException is expected");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testLeakDetection() throws InterruptedException {
+        ByteBufferPool pool = new ByteBufferPool(64, 2);
+        pool.setLeakDetection(true);
+        final AtomicReference<Throwable> leak = new AtomicReference<Throwable>();
+        pool.setLeakListener(leak::set);
+
+        pool.acquire(10).release();
+        leakBuffer(pool);
+
+        for (int i = 0; i < 100 && pool.getLeakCount() == 0; ++i) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        assertThat(pool.getLeakCount(), is(1L));
+        assertThat(leak.get(), notNullValue());
+        assertThat(leak.get().getStackTrace()[1].getMethodName(), is("leakBuffer"));
+    }
+
+    private static void leakBuffer(ByteBufferPool pool) {
+        pool.acquire(10);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructor_withZeroBufferSize() {
+        new ByteBufferPool(0, 1);
+    }
+
+}
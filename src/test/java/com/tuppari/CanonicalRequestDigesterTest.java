@@ -0,0 +1,116 @@
+package com.tuppari;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.Test;
+
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class CanonicalRequestDigesterTest {
+
+    @Test
+    public void testCanonicalQueryString_matchesUrlDecoderAndEncoder() throws Exception {
+        String[] queries = {
+                "a=b",
+                "c=d&a=b&c=e",
+                "b=v2&a=v1",
+                "a",
+                "a=",
+                "a=b=c",
+                "&a=b",
+                "a=b&&c=d",
+                "a=b&",
+                "a=hello+world",
+                "a=%E3%81%82%20b&b=*-._~!",
+                "%E3%81%82=1&z=2",
+                "a=%F0%9F%98%80",
+                "q=a%2Bb%26c",
+        };
+        for (String query : queries) {
+            assertThat(query, CanonicalRequestDigester.canonicalQueryString(query), is(referenceCanonicalQueryString(query)));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCanonicalQueryString_withIncompleteEscape() {
+        CanonicalRequestDigester.canonicalQueryString("a=%4");
+    }
+
+    @Test
+    public void testDigest() {
+        Map<String, String> headers = new LinkedHashMap<String, String>();
+        headers.put("Host", "api.tuppari.com");
+        headers.put("Content-type", " application/json ");
+        headers.put("X-Tuppari-Operation", "CreateApplication");
+        byte[] body = "{\"applicationName\":\"example1\"}".getBytes(StandardCharsets.UTF_8);
+
+        String canonicalRequest = CanonicalRequestDigester.toString("POST", "test", "b=v2&a=v1", headers, body);
+        String hash = CanonicalRequestDigester.digest("POST", "test", "b=v2&a=v1", headers, body);
+
+        assertThat(canonicalRequest, is("" +
+                "POST\n" +
+                "/test\n" +
+                "a=v1&b=v2\n" +
+                "content-type:application/json\n" +
+                "host:api.tuppari.com\n" +
+                "x-tuppari-operation:CreateApplication\n" +
+                "content-type;host;x-tuppari-operation\n" +
+                "8f2d5fe4a93000d3546e578d265fc936806f6ef6dc6f7ee87715e1a5c514c168"));
+        assertThat(hash, is(DigestUtils.sha256Hex(canonicalRequest)));
+    }
+
+    @Test
+    public void testDigest_withLargeInput() {
+        StringBuilder query = new StringBuilder();
+        for (int i = 0; i < 500; ++i) {
+            query.append("key").append(i % 7).append("=value%20").append(i).append('&');
+        }
+        Map<String, String> headers = new LinkedHashMap<String, String>();
+        headers.put("Host", "api.tuppari.com");
+
+        String canonicalRequest = CanonicalRequestDigester.toString("GET", "/", query.toString(), headers, null);
+        String hash = CanonicalRequestDigester.digest("GET", "/", query.toString(), headers, null);
+
+        assertThat(hash, is(DigestUtils.sha256Hex(canonicalRequest)));
+    }
+
+    /**
+     * The original split and URLDecoder based implementation.
+     */
+    private static String referenceCanonicalQueryString(String query) throws Exception {
+        Map<String, List<String>> params = new LinkedHashMap<String, List<String>>();
+        for (String param : query.split("&")) {
+            String[] pair = param.split("=");
+            String key = URLDecoder.decode(pair[0], "UTF-8");
+            String value = pair.length > 1 ? URLDecoder.decode(pair[1], "UTF-8") : "";
+            List<String> values = params.get(key);
+            if (values == null) {
+                values = new ArrayList<String>();
+                params.put(key, values);
+            }
+            values.add(value);
+        }
+        List<String> keys = new ArrayList<String>(params.keySet());
+        Collections.sort(keys);
+        StringBuilder sb = new StringBuilder();
+        for (String key : keys) {
+            for (String value : params.get(key)) {
+                if (sb.length() > 0) {
+                    sb.append('&');
+                }
+                sb.append(key).append('=').append(URLEncoder.encode(value, "UTF-8"));
+            }
+        }
+        return sb.toString();
+    }
+
+}
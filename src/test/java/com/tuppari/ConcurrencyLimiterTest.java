@@ -0,0 +1,154 @@
+package com.tuppari;
+
+import org.junit.Test;
+
+import java.net.SocketTimeoutException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class ConcurrencyLimiterTest {
+
+    private static final long MILLIS = 1000000L;
+
+    @Test
+    public void testOnSample_increasesWhenUsed() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(10, 1, 100);
+        long now = 0;
+        for (int i = 0; i < 5; ++i) {
+            limiter.onSample(10 * MILLIS, 10, false, now += 10 * MILLIS);
+        }
+        assertThat(limiter.getLimit(), is(15));
+        assertThat(limiter.getShortRttNanos(), is(10 * MILLIS));
+    }
+
+    @Test
+    public void testOnSample_doesNotIncreaseWhenIdle() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(10, 1, 100);
+        long now = 0;
+        for (int i = 0; i < 5; ++i) {
+            limiter.onSample(10 * MILLIS, 1, false, now += 10 * MILLIS);
+        }
+        assertThat(limiter.getLimit(), is(10));
+    }
+
+    @Test
+    public void testOnSample_decreasesOnRttGradient() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(100, 1, 1000);
+        long now = 0;
+        for (int i = 0; i < 100; ++i) {
+            limiter.onSample(10 * MILLIS, 1, false, now += 10 * MILLIS);
+        }
+        assertThat(limiter.getLimit(), is(100));
+
+        for (int i = 0; i < 10; ++i) {
+            limiter.onSample(100 * MILLIS, 100, false, now += 100 * MILLIS);
+        }
+        assertTrue(limiter.getLimit() < 100);
+        assertTrue(limiter.getShortRttNanos() > limiter.getLongRttNanos());
+    }
+
+    @Test
+    public void testOnSample_decreasesOncePerRtt() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(100, 1, 1000);
+        long now = 1000 * MILLIS;
+        limiter.onSample(10 * MILLIS, 1, false, now);
+        limiter.onSample(10 * MILLIS, 100, true, now);
+        assertThat(limiter.getLimit(), is(90));
+
+        limiter.onSample(10 * MILLIS, 100, true, now + MILLIS);
+        assertThat(limiter.getLimit(), is(90));
+
+        limiter.onSample(10 * MILLIS, 100, true, now + 10 * MILLIS);
+        assertThat(limiter.getLimit(), is(81));
+    }
+
+    @Test
+    public void testOnSample_clamped() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(2, 2, 3);
+        long now = 0;
+        for (int i = 0; i < 10; ++i) {
+            limiter.onSample(MILLIS, 3, false, now += MILLIS);
+        }
+        assertThat(limiter.getLimit(), is(3));
+        for (int i = 0; i < 10; ++i) {
+            limiter.onSample(MILLIS, 3, true, now += 10 * MILLIS);
+        }
+        assertThat(limiter.getLimit(), is(2));
+    }
+
+    @Test
+    public void testTryAcquire_failsFast() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(2, 1, 10);
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+        assertThat(limiter.getInFlight(), is(2));
+        assertThat(limiter.getRejectedCount(), is(1L));
+
+        limiter.release(MILLIS, new TuppariException("error"));
+        assertThat(limiter.getInFlight(), is(1));
+        assertTrue(limiter.tryAcquire());
+    }
+
+    @Test
+    public void testTryAcquire_doesNotWait() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 10);
+        limiter.setQueueTimeoutMillis(5000);
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+    }
+
+    @Test
+    public void testAcquire_waitsForSlot() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 10);
+        limiter.setQueueTimeoutMillis(5000);
+        assertTrue(limiter.acquire().get());
+
+        CompletableFuture<Boolean> first = limiter.acquire();
+        CompletableFuture<Boolean> second = limiter.acquire();
+        assertFalse("Queued without blocking", first.isDone());
+        assertFalse(limiter.tryAcquire());
+
+        limiter.release(MILLIS, new SocketTimeoutException());
+        assertTrue(first.get(5, TimeUnit.SECONDS));
+        assertFalse("Slots are given in order", second.isDone());
+        assertThat(limiter.getInFlight(), is(1));
+
+        limiter.release(MILLIS, null);
+        assertTrue(second.get(5, TimeUnit.SECONDS));
+        assertThat(limiter.getInFlight(), is(1));
+    }
+
+    @Test
+    public void testAcquire_queueTimeout() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 10);
+        limiter.setQueueTimeoutMillis(10);
+        assertTrue(limiter.acquire().get());
+        assertFalse(limiter.acquire().get(5, TimeUnit.SECONDS));
+        assertThat(limiter.getRejectedCount(), is(1L));
+
+        limiter.release(MILLIS, null);
+        assertThat("The slot is not given to the timed out waiter", limiter.getInFlight(), is(0));
+        assertTrue(limiter.tryAcquire());
+    }
+
+    @Test
+    public void testAcquire_failsFastByDefault() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 10);
+        assertTrue(limiter.acquire().get());
+        CompletableFuture<Boolean> rejected = limiter.acquire();
+        assertTrue(rejected.isDone());
+        assertFalse(rejected.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructor_withInvalidLimits() {
+        new ConcurrencyLimiter(10, 20, 100);
+    }
+
+}
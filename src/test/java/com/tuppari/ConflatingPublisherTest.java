@@ -0,0 +1,153 @@
+package com.tuppari;
+
+import net.arnx.jsonic.JSON;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ConflatingPublisherTest {
+
+    private TuppariClient client;
+
+    private final List<String> messages = Collections.synchronizedList(new ArrayList<String>());
+
+    private volatile CountDownLatch gate = new CountDownLatch(0);
+
+    private volatile int status = 200;
+
+    /**
+     * Transport that records "channel/event/message" of each request, and waits for the gate before responding.
+     */
+    @Before
+    public void before() {
+        client = new TuppariClient("appId", "accessKey", "secretKey", URI.create("http://localhost:5100"));
+        client.setTransport(new Transport() {
+            @Override
+            public TransportResponse post(URI uri, Map<String, String> headers, byte[] body) {
+                Map<String, Object> json = JSON.decode(new String(body, StandardCharsets.UTF_8));
+                messages.add(json.get("channel") + "/" + json.get("event") + "/" + json.get("message"));
+                try {
+                    gate.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new TuppariException(e);
+                }
+                return new TransportResponse(status, body);
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+    }
+
+    @After
+    public void after() {
+        client.close();
+    }
+
+    @Test
+    public void testPublish_conflatesWhileInFlight() throws Exception {
+        gate = new CountDownLatch(1);
+        ConflatingPublisher publisher = new ConflatingPublisher(client);
+        try {
+            CompletableFuture<Void> first = publisher.publish("prices", "ABC", "1");
+            awaitMessages(1);
+
+            CompletableFuture<Void> second = publisher.publish("prices", "ABC", "2");
+            CompletableFuture<Void> third = publisher.publish("prices", "ABC", "3");
+            CompletableFuture<Void> other = publisher.publish("prices", "XYZ", "1");
+            assertThat(third, sameInstance(second));
+
+            gate.countDown();
+            first.get(5, TimeUnit.SECONDS);
+            third.get(5, TimeUnit.SECONDS);
+            other.get(5, TimeUnit.SECONDS);
+        } finally {
+            publisher.close();
+        }
+
+        assertThat(messages.size(), is(3));
+        assertTrue(messages.contains("prices/ABC/1"));
+        assertTrue(messages.contains("prices/ABC/3"));
+        assertTrue(messages.contains("prices/XYZ/1"));
+        assertThat(publisher.getPublishedCount(), is(4L));
+        assertThat(publisher.getSentCount(), is(3L));
+        assertThat(publisher.getConflatedCount(), is(1L));
+        assertThat(publisher.getKeyCount(), is(2));
+    }
+
+    @Test
+    public void testPublish_conflatesWithinInterval() throws Exception {
+        ConflatingPublisher publisher = new ConflatingPublisher(client, 200);
+        try {
+            publisher.publish("status", "server", "up").get(5, TimeUnit.SECONDS);
+            CompletableFuture<Void> last = null;
+            for (int i = 0; i < 100; ++i) {
+                last = publisher.publish("status", "server", "load" + i);
+            }
+            assertThat(messages.size(), is(1));
+
+            last.get(5, TimeUnit.SECONDS);
+        } finally {
+            publisher.close();
+        }
+        assertThat(messages.size(), is(2));
+        assertThat(messages.get(1), is("status/server/load99"));
+        assertThat(publisher.getConflatedCount(), is(99L));
+    }
+
+    @Test
+    public void testClose_flushesPending() throws Exception {
+        ConflatingPublisher publisher = new ConflatingPublisher(client, 60000);
+        publisher.publish("status", "server", "up").get(5, TimeUnit.SECONDS);
+        CompletableFuture<Void> pending = publisher.publish("status", "server", "down");
+        assertThat(messages.size(), is(1));
+
+        publisher.close();
+        pending.get(5, TimeUnit.SECONDS);
+        assertThat(messages.get(1), is("status/server/down"));
+        assertTrue(publisher.publish("status", "server", "up").isCompletedExceptionally());
+    }
+
+    @Test
+    public void testPublish_failure() throws Exception {
+        status = 400;
+        ConflatingPublisher publisher = new ConflatingPublisher(client);
+        try {
+            publisher.publish("status", "server", "up").get(5, TimeUnit.SECONDS);
+            fail("ExecutionException is expected");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(TuppariException.class));
+            assertThat(((TuppariException) e.getCause()).getStatus(), is(400));
+        } finally {
+            publisher.close();
+        }
+    }
+
+    private void awaitMessages(int n) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (messages.size() < n && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertThat(messages.size(), is(n));
+    }
+
+}
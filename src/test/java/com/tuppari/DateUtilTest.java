@@ -3,10 +3,15 @@ package com.tuppari;
 import org.junit.Test;
 
 import java.text.SimpleDateFormat;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
 import java.util.Date;
 import java.util.SimpleTimeZone;
 
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.junit.Assert.assertThat;
 
 public class DateUtilTest {
@@ -41,4 +46,33 @@ public class DateUtilTest {
         DateUtil.formatAsRFC3339(null);
     }
 
+    @Test
+    public void testNow() {
+        Clock clock = Clock.fixed(Instant.parse("2012-01-02T12:23:34.567Z"), ZoneOffset.UTC);
+
+        RequestDate now = DateUtil.now(clock);
+        assertThat(now.getEpochSecond(), is(1325507014L));
+        assertThat(now.getISO8601(), is("20120102T122334Z"));
+        assertThat(now.getRFC1123(), is("Mon, 02 Jan 2012 12:23:34 GMT"));
+        assertThat("Same second shares formatted strings", DateUtil.now(clock), sameInstance(now));
+    }
+
+    @Test
+    public void testNow_beforeEpoch() {
+        Clock clock = Clock.fixed(Instant.parse("1969-12-31T23:59:59.500Z"), ZoneOffset.UTC);
+        assertThat(DateUtil.now(clock).getISO8601(), is("19691231T235959Z"));
+    }
+
+    @Test
+    public void testParseRFC1123() {
+        RequestDate date = DateUtil.parseRFC1123("Mon, 02 Jan 2012 12:23:34 GMT");
+        assertThat(date.getEpochSecond(), is(1325507014L));
+        assertThat(date.getISO8601(), is("20120102T122334Z"));
+    }
+
+    @Test(expected = DateTimeParseException.class)
+    public void testParseRFC1123_malformed() {
+        DateUtil.parseRFC1123("2012-01-02T12:23:34Z");
+    }
+
 }
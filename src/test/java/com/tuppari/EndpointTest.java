@@ -0,0 +1,130 @@
+package com.tuppari;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class EndpointTest {
+
+    private TuppariStubServer first;
+
+    private TuppariStubServer second;
+
+    @Before
+    public void before() throws IOException {
+        first = new TuppariStubServer().addCredentials("accessKey", "secretKey").start();
+        second = new TuppariStubServer().addCredentials("accessKey", "secretKey").start();
+    }
+
+    @After
+    public void after() {
+        first.close();
+        second.close();
+    }
+
+    @Test
+    public void testPublish_signsForEachNode() {
+        TuppariClient client = new TuppariClient("appId", "accessKey", "secretKey", Arrays.asList(first.getUri(), second.getUri()));
+        try {
+            TuppariChannel channel = client.join("channelName");
+            for (int i = 0; i < 20; ++i) {
+                channel.publish("eventName", "message" + i);
+            }
+        } finally {
+            client.close();
+        }
+        // The stubs verify that the signature covers their own host
+        assertThat(first.getAcceptedCount() + second.getAcceptedCount(), is(20L));
+        assertThat(first.getRejectedCount() + second.getRejectedCount(), is(0L));
+        assertThat(client.getEndpoints().get(0).getRequestCount() + client.getEndpoints().get(1).getRequestCount(), is(20L));
+    }
+
+    @Test
+    public void testSelectEndpoint_leastOutstanding() {
+        TuppariClient client = new TuppariClient("appId", "accessKey", "secretKey", Arrays.asList(first.getUri(), second.getUri()));
+        List<Endpoint> endpoints = client.getEndpoints();
+        endpoints.get(0).onStart();
+        for (int i = 0; i < 10; ++i) {
+            assertThat(client.selectEndpoint(), sameInstance(endpoints.get(1)));
+        }
+
+        endpoints.get(0).onSuccess(1000000);
+        endpoints.get(1).onStart();
+        endpoints.get(1).onSuccess(5000000);
+        for (int i = 0; i < 10; ++i) {
+            assertThat("Lower latency among equals", client.selectEndpoint(), sameInstance(endpoints.get(0)));
+        }
+    }
+
+    @Test
+    public void testPublish_ejectsFailingNode() throws IOException {
+        URI down;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            down = URI.create("http://127.0.0.1:" + socket.getLocalPort());
+        }
+        TuppariClient client = new TuppariClient("appId", "accessKey", "secretKey", Arrays.asList(down, first.getUri()));
+        client.setRetryPolicy(new RetryPolicy(3, 0, 0));
+        client.setEjectionThreshold(2);
+        client.setEjectionMillis(60000);
+        try {
+            TuppariChannel channel = client.join("channelName");
+            for (int i = 0; i < 20; ++i) {
+                channel.publish("eventName", "message" + i);
+            }
+        } finally {
+            client.close();
+        }
+        assertThat(first.getAcceptedCount(), is(20L));
+
+        Endpoint ejected = client.getEndpoints().get(0);
+        assertTrue(ejected.isEjected());
+        assertThat(ejected.getFailureCount(), is(2L));
+        assertThat(ejected.getOutstanding(), is(0));
+        assertFalse(client.getEndpoints().get(1).isEjected());
+    }
+
+    @Test
+    public void testOnFailure_allNodesEjected() {
+        TuppariClient client = new TuppariClient("appId", "accessKey", "secretKey", Arrays.asList(first.getUri(), second.getUri()));
+        List<Endpoint> endpoints = client.getEndpoints();
+        TuppariException unavailable = new TuppariException("unavailable", 503);
+        endpoints.get(1).onStart();
+        endpoints.get(1).onFailure(unavailable, 1, 60000000000L);
+        endpoints.get(0).onStart();
+        endpoints.get(0).onFailure(unavailable, 1, 120000000000L);
+
+        assertThat("The node back first is used", client.selectEndpoint(), sameInstance(endpoints.get(1)));
+
+        endpoints.get(1).onStart();
+        endpoints.get(1).onSuccess(1000000);
+        assertFalse(endpoints.get(1).isEjected());
+        assertThat(endpoints.get(1).getConsecutiveFailures(), is(0));
+    }
+
+    @Test
+    public void testIsNodeFailure() {
+        assertTrue(Endpoint.isNodeFailure(new TuppariException("", 503)));
+        assertTrue(Endpoint.isNodeFailure(new TuppariException("", 429)));
+        assertTrue(Endpoint.isNodeFailure(new TuppariException(new IOException())));
+        assertFalse(Endpoint.isNodeFailure(new TuppariException("", 401)));
+        assertFalse(Endpoint.isNodeFailure(new TuppariException("Rate limit exceeded")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructor_withoutTargetUris() {
+        new TuppariClient("appId", "accessKey", "secretKey", Arrays.<URI>asList());
+    }
+
+}
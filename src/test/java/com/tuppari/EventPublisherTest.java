@@ -0,0 +1,168 @@
+package com.tuppari;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+
+public class EventPublisherTest {
+
+    private TuppariStubServer stub;
+
+    private TuppariClient client;
+
+    @Before
+    public void before() throws IOException {
+        stub = new TuppariStubServer().addCredentials("accessKeyId", "secretKey").start();
+        client = new TuppariClient("appId", "accessKeyId", "secretKey", stub.getUri());
+    }
+
+    @After
+    public void after() {
+        client.close();
+        stub.close();
+    }
+
+    @Test
+    public void testEncodeBody_matchesJsonic() {
+        StringBuilder all = new StringBuilder();
+        for (char c = 0; c < 0x100; ++c) {
+            all.append(c);
+        }
+        String[] messages = {
+                "",
+                "hello",
+                "{\"price\":123,\"symbol\":\"ABC\"}",
+                "back\\slash/and\"quote",
+                all.toString(),
+                "あいう    ￿",
+                "😀 surrogate pair",
+                "unpaired \uD83D high and \uDE00 low",
+                null
+        };
+
+        EventPublisher publisher = client.join("channel\"name").event("event\nname");
+        for (String message : messages) {
+            Map<String, Object> body = new LinkedHashMap<String, Object>();
+            body.put("applicationId", "appId");
+            body.put("channel", "channel\"name");
+            body.put("event", "event\nname");
+            body.put("message", message);
+            assertArrayEquals(String.valueOf(message), SignUtil.encodeBody(body), publisher.encodeBody(message));
+        }
+    }
+
+    @Test
+    public void testSend() {
+        EventPublisher publisher = client.join("channelName").event("eventName");
+        assertThat(publisher.getEventName(), is("eventName"));
+        assertThat(publisher.getChannel().getChannelName(), is("channelName"));
+
+        Map<String, String> result = publisher.send("message");
+
+        assertThat(result.get("applicationId"), is("appId"));
+        assertThat(result.get("channel"), is("channelName"));
+        assertThat(result.get("event"), is("eventName"));
+        assertThat(result.get("message"), is("message"));
+        assertThat(stub.getRejectedCount(), is(0L));
+    }
+
+    @Test
+    public void testSendAsync() {
+        EventPublisher publisher = client.join("channelName").event("eventName");
+        List<CompletableFuture<PublishResult>> futures = new ArrayList<CompletableFuture<PublishResult>>();
+        for (int i = 0; i < 20; ++i) {
+            futures.add(publisher.sendAsync("message" + i));
+        }
+        for (int i = 0; i < futures.size(); ++i) {
+            assertThat(futures.get(i).join().getMessage(), is("message" + i));
+        }
+        assertThat(stub.getAcceptedCount(), is(20L));
+    }
+
+
+    @Test
+    public void testEncodeBody_withBufferPool() {
+        ByteBufferPool pool = new ByteBufferPool(256, 2);
+        EventPublisher publisher = client.join("channelName").event("eventName");
+
+        for (String message : new String[]{"message", "あいう\n\u2028", null}) {
+            PooledByteBuffer body = publisher.encodeBody(message, pool);
+            assertThat(body.isPooled(), is(true));
+            byte[] bytes = new byte[body.buffer().remaining()];
+            body.buffer().duplicate().get(bytes);
+            assertArrayEquals(publisher.encodeBody(message), bytes);
+            body.release();
+        }
+
+        char[] chars = new char[300];
+        Arrays.fill(chars, 'x');
+        PooledByteBuffer large = publisher.encodeBody(new String(chars), pool);
+        assertThat("Larger than the buffer size", large.isPooled(), is(false));
+        assertArrayEquals(publisher.encodeBody(new String(chars)), large.buffer().array());
+    }
+
+    @Test
+    public void testSend_withBufferPool() {
+        assertSendWithBufferPool();
+        client.setTransport(new HttpClientTransport());
+        try {
+            assertSendWithBufferPool();
+        } finally {
+            client.getTransport().close();
+        }
+    }
+
+    private void assertSendWithBufferPool() {
+        ByteBufferPool pool = new ByteBufferPool(1024, 4);
+        pool.setLeakDetection(true);
+        client.setBufferPool(pool);
+        EventPublisher publisher = client.join("channelName").event("eventName");
+
+        for (int i = 0; i < 10; ++i) {
+            assertThat(publisher.send("message" + i).get("message"), is("message" + i));
+            publisher.publish("message" + i);
+        }
+        char[] chars = new char[2000];
+        Arrays.fill(chars, 'x');
+        assertThat(publisher.send(new String(chars)).get("message"), is(new String(chars)));
+
+        assertThat(pool.getAllocatedCount(), is(1L));
+        assertThat(pool.getPooledCount(), is(1));
+        assertThat(stub.getRejectedCount(), is(0L));
+    }
+
+    @Test
+    public void testSend_withBufferPoolAndHedging() throws Exception {
+        ByteBufferPool pool = new ByteBufferPool(1024, 4);
+        client.setBufferPool(pool);
+        client.setHedgingPolicy(new HedgingPolicy(0.5, 1, 1));
+        stub.setLatency(20, 20);
+        EventPublisher publisher = client.join("channelName").event("eventName");
+
+        for (int i = 0; i < 5; ++i) {
+            assertThat(publisher.send("message" + i).get("message"), is("message" + i));
+        }
+
+        // Losing hedged requests release their reference when they complete
+        for (int i = 0; i < 100 && stub.getRequestCount() > stub.getAcceptedCount(); ++i) {
+            Thread.sleep(20);
+        }
+        Thread.sleep(100);
+        assertThat(stub.getRequestCount(), is(10L));
+        assertThat(pool.getPooledCount() > 0, is(true));
+        assertThat(stub.getRejectedCount(), is(0L));
+    }
+
+}
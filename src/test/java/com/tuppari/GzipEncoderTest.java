@@ -0,0 +1,61 @@
+package com.tuppari;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class GzipEncoderTest {
+
+    @Test
+    public void testCompress() throws IOException {
+        StringBuilder json = new StringBuilder("{\"messages\":[");
+        for (int i = 0; i < 1000; ++i) {
+            json.append("{\"symbol\":\"ABC\",\"price\":").append(i).append("},");
+        }
+        json.append("{}]}");
+        byte[] data = json.toString().getBytes(StandardCharsets.UTF_8);
+
+        byte[] compressed = GzipEncoder.compress(data);
+
+        assertTrue(compressed.length < data.length / 4);
+        assertArrayEquals(data, gunzip(compressed));
+    }
+
+    @Test
+    public void testCompress_empty() throws IOException {
+        assertThat(gunzip(GzipEncoder.compress(new byte[0])).length, is(0));
+    }
+
+    @Test
+    public void testCompress_reusesEncoder() throws IOException {
+        Random random = new Random(1);
+        for (int size : new int[]{1, 100, 10000, 1000000, 10, 100000}) {
+            byte[] data = new byte[size];
+            random.nextBytes(data);
+            assertArrayEquals("size " + size, data, gunzip(GzipEncoder.compress(data)));
+        }
+    }
+
+    private static byte[] gunzip(byte[] data) throws IOException {
+        InputStream in = new GZIPInputStream(new ByteArrayInputStream(data));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[4096];
+        int n;
+        while ((n = in.read(buf)) != -1) {
+            out.write(buf, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+}
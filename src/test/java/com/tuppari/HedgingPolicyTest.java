@@ -0,0 +1,45 @@
+package com.tuppari;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class HedgingPolicyTest {
+
+    @Test
+    public void testGetDelayMillis_beforeWarmUp() {
+        HedgingPolicy policy = new HedgingPolicy(0.95, 10, 1000);
+        policy.record(20);
+        assertThat(policy.getDelayMillis(), is(1000L));
+    }
+
+    @Test
+    public void testGetDelayMillis() {
+        HedgingPolicy policy = new HedgingPolicy(0.9, 10, 1000);
+        for (int i = 1; i <= 64; ++i) {
+            policy.record(i);
+        }
+        assertThat(policy.getDelayMillis(), is(58L));
+    }
+
+    @Test
+    public void testGetDelayMillis_clamped() {
+        HedgingPolicy policy = new HedgingPolicy(0.5, 10, 100);
+        for (int i = 0; i < 64; ++i) {
+            policy.record(1);
+        }
+        assertThat(policy.getDelayMillis(), is(10L));
+
+        for (int i = 0; i < 1024; ++i) {
+            policy.record(5000);
+        }
+        assertThat(policy.getDelayMillis(), is(100L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructor_withInvalidPercentile() {
+        new HedgingPolicy(1.0, 10, 100);
+    }
+
+}
@@ -0,0 +1,230 @@
+package com.tuppari;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class HttpClientTransportTest {
+
+    private HttpServer server;
+
+    private URI uri;
+
+    private volatile String lastOperation;
+
+    private volatile String lastHost;
+
+    @Before
+    public void before() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/messages", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                lastOperation = exchange.getRequestHeaders().getFirst("X-Tuppari-Operation");
+                lastHost = exchange.getRequestHeaders().getFirst("Host");
+                byte[] body = exchange.getRequestBody().readAllBytes();
+                int status = "Fail".equals(lastOperation) ? 400 : 200;
+                exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        server.start();
+        uri = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/messages");
+    }
+
+    @After
+    public void after() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testPost() {
+        HttpClientTransport transport = new HttpClientTransport();
+        try {
+            Map<String, String> headers = new HashMap<String, String>();
+            headers.put("Host", "127.0.0.1:" + server.getAddress().getPort());
+            headers.put("Content-Type", "application/json");
+            headers.put("X-Tuppari-Operation", "PublishMessage");
+
+            TransportResponse response = transport.post(uri, headers, "{\"a\":\"b\"}".getBytes(StandardCharsets.UTF_8));
+
+            assertTrue(response.isSuccess());
+            assertThat(response.getStatus(), is(200));
+            assertThat(response.getBody(), is("{\"a\":\"b\"}"));
+            assertThat(response.getContentLength(), is(9L));
+            assertThat(lastOperation, is("PublishMessage"));
+            assertThat("Host is derived from the URI", lastHost, is("127.0.0.1:" + server.getAddress().getPort()));
+        } finally {
+            transport.close();
+        }
+    }
+
+    @Test
+    public void testPost_withErrorStatus() {
+        HttpClientTransport transport = new HttpClientTransport();
+        try {
+            Map<String, String> headers = new HashMap<String, String>();
+            headers.put("X-Tuppari-Operation", "Fail");
+
+            TransportResponse response = transport.post(uri, headers, "error".getBytes(StandardCharsets.UTF_8));
+
+            assertThat(response.isSuccess(), is(false));
+            assertThat(response.getStatus(), is(400));
+            assertThat(response.getBody(), is("error"));
+        } finally {
+            transport.close();
+        }
+    }
+
+    @Test
+    public void testPostForStatus() {
+        HttpClientTransport transport = new HttpClientTransport();
+        try {
+            Map<String, String> headers = new HashMap<String, String>();
+            TransportResponse response = transport.postForStatus(uri, headers, "{\"a\":\"b\"}".getBytes(StandardCharsets.UTF_8));
+            assertThat(response.getStatus(), is(200));
+            assertThat(response.getBody(), is(""));
+            assertThat(response.getContentLength(), is(9L));
+
+            headers.put("X-Tuppari-Operation", "Fail");
+            response = transport.postForStatus(uri, headers, "error".getBytes(StandardCharsets.UTF_8));
+            assertThat(response.getStatus(), is(400));
+            assertThat(response.getBody(), is("error"));
+        } finally {
+            transport.close();
+        }
+    }
+
+    @Test
+    public void testPost_withByteBuffer() {
+        HttpClientTransport transport = new HttpClientTransport();
+        try {
+            ByteBuffer body = ByteBuffer.allocateDirect(64);
+            body.put("xx{\"a\":\"b\"}".getBytes(StandardCharsets.UTF_8)).flip().position(2);
+
+            assertThat(transport.post(uri, new HashMap<String, String>(), body).getBody(), is("{\"a\":\"b\"}"));
+            assertThat(transport.postForStatus(uri, new HashMap<String, String>(), body).getContentLength(), is(9L));
+            assertThat("Position is not changed", body.position(), is(2));
+        } finally {
+            transport.close();
+        }
+    }
+
+    @Test
+    public void testPost_withHttp11() {
+        HttpClientTransport transport = new HttpClientTransport(new TransportConfig(), HttpClient.Version.HTTP_1_1);
+        try {
+            assertThat(transport.post(uri, new HashMap<String, String>(), "x".getBytes(StandardCharsets.UTF_8)).getBody(), is("x"));
+        } finally {
+            transport.close();
+        }
+    }
+
+    @Test
+    public void testPostAsync() throws Exception {
+        HttpClientTransport transport = new HttpClientTransport();
+        try {
+            List<CompletableFuture<TransportResponse>> futures = new ArrayList<CompletableFuture<TransportResponse>>();
+            for (int i = 0; i < 20; ++i) {
+                futures.add(transport.postAsync(uri, new HashMap<String, String>(), ("body" + i).getBytes(StandardCharsets.UTF_8)));
+            }
+            for (int i = 0; i < futures.size(); ++i) {
+                assertThat(futures.get(i).get().getBody(), is("body" + i));
+            }
+        } finally {
+            transport.close();
+        }
+    }
+
+    @Test
+    public void testPostAsync_toInvalidHost() throws Exception {
+        HttpClientTransport transport = new HttpClientTransport();
+        try {
+            transport.postAsync(URI.create("http://invalid/messages"), new HashMap<String, String>(), new byte[0]).get();
+            fail("ExecutionException must be thrown");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(TuppariException.class));
+        } finally {
+            transport.close();
+        }
+    }
+
+    @Test(expected = TuppariException.class)
+    public void testPost_toInvalidHost() {
+        HttpClientTransport transport = new HttpClientTransport();
+        try {
+            transport.post(URI.create("http://invalid/messages"), new HashMap<String, String>(), new byte[0]);
+        } finally {
+            transport.close();
+        }
+    }
+
+    @Test
+    public void testSend_withStubServer() throws IOException {
+        TuppariStubServer stub = new TuppariStubServer().addCredentials("accessKey", "secretKey").start();
+        TuppariClient client = new TuppariClient("appId", "accessKey", "secretKey", stub.getUri());
+        HttpClientTransport transport = new HttpClientTransport();
+        client.setTransport(transport);
+        try {
+            Map<String, String> result = client.join("channelName").send("eventName", "message");
+            assertThat(result.get("message"), is("message"));
+            assertThat("Signature is valid without sending Host explicitly", stub.getRejectedCount(), is(0L));
+        } finally {
+            transport.close();
+            client.close();
+            stub.close();
+        }
+    }
+
+    @Test
+    public void testSend_withDefaultPort() {
+        TuppariStubServer stub = new TuppariStubServer(80, 2).addCredentials("accessKey", "secretKey");
+        try {
+            stub.start();
+        } catch (IOException e) {
+            Assume.assumeNoException(e);
+        }
+        URI uri = URI.create("http://127.0.0.1:80");
+        TuppariClient client = new TuppariClient("appId", "accessKey", "secretKey", uri);
+        TuppariClient jerseyClient = new TuppariClient("appId", "accessKey", "secretKey", uri);
+        HttpClientTransport transport = new HttpClientTransport();
+        client.setTransport(transport);
+        try {
+            client.join("channelName").send("eventName", "message");
+            jerseyClient.join("channelName").send("eventName", "message");
+            assertThat("Signed host matches the Host header without the default port", stub.getAcceptedCount(), is(2L));
+        } finally {
+            transport.close();
+            client.close();
+            jerseyClient.close();
+            stub.close();
+        }
+    }
+
+}
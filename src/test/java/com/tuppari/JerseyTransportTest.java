@@ -0,0 +1,171 @@
+package com.tuppari;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class JerseyTransportTest {
+
+    private HttpServer server;
+
+    private URI uri;
+
+    private volatile String lastOperation;
+
+    @Before
+    public void before() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/messages", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                lastOperation = exchange.getRequestHeaders().getFirst("X-Tuppari-Operation");
+                byte[] body = readAll(exchange.getRequestBody());
+                int status = "Fail".equals(lastOperation) ? 400 : 200;
+                exchange.sendResponseHeaders(status, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        server.start();
+        uri = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/messages");
+    }
+
+    @After
+    public void after() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testPost() {
+        JerseyTransport transport = new JerseyTransport();
+        try {
+            Map<String, String> headers = new HashMap<String, String>();
+            headers.put("Content-Type", "application/json");
+            headers.put("X-Tuppari-Operation", "PublishMessage");
+
+            TransportResponse response = transport.post(uri, headers, "{\"a\":\"b\"}".getBytes(StandardCharsets.UTF_8));
+
+            assertTrue(response.isSuccess());
+            assertThat(response.getStatus(), is(200));
+            assertThat(response.getBody(), is("{\"a\":\"b\"}"));
+            assertThat(lastOperation, is("PublishMessage"));
+        } finally {
+            transport.close();
+        }
+    }
+
+    @Test
+    public void testPost_withErrorStatus() {
+        JerseyTransport transport = new JerseyTransport();
+        try {
+            Map<String, String> headers = new HashMap<String, String>();
+            headers.put("X-Tuppari-Operation", "Fail");
+
+            TransportResponse response = transport.post(uri, headers, "error".getBytes(StandardCharsets.UTF_8));
+
+            assertThat(response.isSuccess(), is(false));
+            assertThat(response.getStatus(), is(400));
+            assertThat(response.getBody(), is("error"));
+        } finally {
+            transport.close();
+        }
+    }
+
+    @Test
+    public void testPost_reusesConnection() {
+        TransportConfig config = new TransportConfig();
+        config.setMaxConnectionsPerHost(1);
+        JerseyTransport transport = new JerseyTransport(config);
+        try {
+            Map<String, String> headers = new HashMap<String, String>();
+            for (int i = 0; i < 10; ++i) {
+                transport.post(uri, headers, new byte[0]);
+            }
+            assertThat(transport.getConnectionsInPool(), is(1));
+        } finally {
+            transport.close();
+        }
+    }
+
+    @Test
+    public void testPostForStatus() {
+        PublishMetrics metrics = new PublishMetrics();
+        TransportConfig config = new TransportConfig();
+        config.setMaxConnectionsPerHost(1);
+        JerseyTransport transport = new JerseyTransport(config);
+        transport.setMetrics(metrics);
+        try {
+            Map<String, String> headers = new HashMap<String, String>();
+            for (int i = 0; i < 10; ++i) {
+                TransportResponse response = transport.postForStatus(uri, headers, "{\"a\":\"b\"}".getBytes(StandardCharsets.UTF_8));
+                assertThat(response.getStatus(), is(200));
+                assertThat(response.getBody(), is(""));
+                assertThat(response.getContentLength(), is(9L));
+            }
+            assertThat("Drained connections are reused", metrics.snapshot().getPhase(PublishPhase.CONNECTION_OPEN).getCount(), is(1L));
+
+            headers.put("X-Tuppari-Operation", "Fail");
+            TransportResponse response = transport.postForStatus(uri, headers, "error".getBytes(StandardCharsets.UTF_8));
+            assertThat(response.getStatus(), is(400));
+            assertThat(response.getBody(), is("error"));
+        } finally {
+            transport.close();
+        }
+    }
+
+    @Test
+    public void testPost_withMetrics() {
+        PublishMetrics metrics = new PublishMetrics();
+        JerseyTransport transport = new JerseyTransport();
+        transport.setMetrics(metrics);
+        try {
+            transport.post(uri, new HashMap<String, String>(), new byte[0]);
+            transport.post(uri, new HashMap<String, String>(), new byte[0]);
+
+            MetricsSnapshot snapshot = metrics.snapshot();
+            assertThat(snapshot.getPhase(PublishPhase.CONNECTION_LEASE).getCount(), is(2L));
+            assertThat("Second request reuses the connection", snapshot.getPhase(PublishPhase.CONNECTION_OPEN).getCount(), is(1L));
+        } finally {
+            transport.close();
+        }
+    }
+
+    @Test(expected = TuppariException.class)
+    public void testPost_toInvalidHost() {
+        JerseyTransport transport = new JerseyTransport();
+        try {
+            transport.post(URI.create("http://invalid/messages"), new HashMap<String, String>(), new byte[0]);
+        } finally {
+            transport.close();
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[4096];
+        int n;
+        while ((n = in.read(buf)) != -1) {
+            out.write(buf, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+}
@@ -0,0 +1,49 @@
+package com.tuppari;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testIndexOf() {
+        assertThat(LatencyHistogram.indexOf(0), is(0));
+        assertThat(LatencyHistogram.indexOf(15), is(15));
+        assertThat(LatencyHistogram.indexOf(16), is(16));
+        assertThat(LatencyHistogram.indexOf(17), is(16));
+        assertThat(LatencyHistogram.indexOf(18), is(17));
+        assertThat(LatencyHistogram.indexOf(32), is(24));
+        assertThat(LatencyHistogram.upperBoundOf(16), is(17L));
+        assertThat(LatencyHistogram.upperBoundOf(LatencyHistogram.indexOf(Long.MAX_VALUE)), is(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testSnapshot() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; ++i) {
+            histogram.record(i * 1000L);
+        }
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertThat(snapshot.getCount(), is(1000L));
+        assertThat(snapshot.getMax(), is(1000000L));
+        assertThat(snapshot.getMean(), is(500500.0));
+
+        long p50 = snapshot.getPercentile(0.5);
+        long p99 = snapshot.getPercentile(0.99);
+        assertTrue("p50=" + p50, p50 >= 500000 && p50 <= 500000 * 1.125);
+        assertTrue("p99=" + p99, p99 >= 990000 && p99 <= 1000000);
+        assertThat(snapshot.getPercentile(1.0), is(1000000L));
+    }
+
+    @Test
+    public void testSnapshot_empty() {
+        LatencyHistogram.Snapshot snapshot = new LatencyHistogram().snapshot();
+        assertThat(snapshot.getCount(), is(0L));
+        assertThat(snapshot.getPercentile(0.99), is(0L));
+    }
+
+}
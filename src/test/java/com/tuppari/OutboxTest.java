@@ -0,0 +1,331 @@
+package com.tuppari;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import net.arnx.jsonic.JSON;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class OutboxTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private HttpServer server;
+
+    private TuppariClient client;
+
+    private File directory;
+
+    private volatile int status = 200;
+
+    private final List<String> messages = Collections.synchronizedList(new ArrayList<String>());
+
+    /**
+     * Stand-in endpoint that records the messages it accepts, or fails with the configured status.
+     */
+    @Before
+    public void before() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/messages", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                byte[] data = readAll(exchange.getRequestBody());
+                int s = status;
+                if (s == 200) {
+                    Map<String, Object> body = JSON.decode(new String(data, StandardCharsets.UTF_8));
+                    messages.add((String) body.get("message"));
+                } else {
+                    data = "{}".getBytes(StandardCharsets.UTF_8);
+                }
+                exchange.sendResponseHeaders(s, data.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(data);
+                out.close();
+            }
+        });
+        server.start();
+        client = new TuppariClient("appId", "accessKey", "secretKey", URI.create("http://127.0.0.1:" + server.getAddress().getPort()));
+        directory = folder.newFolder("outbox");
+    }
+
+    @After
+    public void after() {
+        client.close();
+        server.stop(0);
+    }
+
+    @Test
+    public void testAppend_deliversInOrder() throws Exception {
+        Outbox outbox = newOutbox().start();
+        try {
+            for (int i = 0; i < 100; ++i) {
+                outbox.append("channel", "event", "message" + i);
+            }
+            awaitBacklog(outbox, 0);
+        } finally {
+            outbox.close();
+        }
+
+        assertThat(messages.size(), is(100));
+        for (int i = 0; i < 100; ++i) {
+            assertThat(messages.get(i), is("message" + i));
+        }
+        assertThat(outbox.getAppendedCount(), is(100L));
+        assertThat(outbox.getSentCount(), is(100L));
+    }
+
+    @Test
+    public void testAppend_retriesDuringOutage() throws Exception {
+        status = 503;
+        Outbox outbox = newOutbox().start();
+        try {
+            outbox.append("channel", "event", "message1");
+            outbox.append("channel", "event", "message2");
+            Thread.sleep(100);
+            assertThat(messages.size(), is(0));
+            assertThat(outbox.getBacklog(), is(2L));
+
+            status = 200;
+            awaitBacklog(outbox, 0);
+        } finally {
+            outbox.close();
+        }
+
+        assertThat(messages.get(0), is("message1"));
+        assertThat(messages.get(1), is("message2"));
+        assertThat(outbox.getDroppedCount(), is(0L));
+    }
+
+    @Test
+    public void testStart_replaysUndeliveredMessages() throws Exception {
+        status = 503;
+        Outbox outbox = newOutbox().start();
+        outbox.append("channel", "event", "message1");
+        outbox.append("channel", "event", "message2");
+        outbox.close();
+        assertThat(messages.size(), is(0));
+
+        status = 200;
+        outbox = newOutbox().start();
+        try {
+            assertThat(outbox.getRecoveredCount(), is(2L));
+            outbox.append("channel", "event", "message3");
+            awaitBacklog(outbox, 0);
+        } finally {
+            outbox.close();
+        }
+        assertThat(messages.size(), is(3));
+        assertThat(messages.get(2), is("message3"));
+
+        // Everything is checkpointed, nothing is sent again
+        outbox = newOutbox().start();
+        try {
+            assertThat(outbox.getRecoveredCount(), is(0L));
+        } finally {
+            outbox.close();
+        }
+    }
+
+    @Test
+    public void testAppend_rollsAndDeletesSegments() throws Exception {
+        Outbox outbox = newOutbox();
+        outbox.setSegmentSize(1024);
+        outbox.setCheckpointIntervalMillis(10);
+        outbox.start();
+        try {
+            StringBuilder message = new StringBuilder();
+            for (int i = 0; i < 300; ++i) {
+                message.append('x');
+            }
+            for (int i = 0; i < 20; ++i) {
+                outbox.append("channel", "event", message.toString());
+            }
+            awaitBacklog(outbox, 0);
+            long deadline = System.currentTimeMillis() + 5000;
+            while (outbox.getSegmentCount() > 1 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertThat(outbox.getSegmentCount(), is(1));
+        } finally {
+            outbox.close();
+        }
+        assertThat(messages.size(), is(20));
+        assertThat(segmentFiles().length, is(1));
+    }
+
+    @Test
+    public void testStart_erasesTornRecord() throws Exception {
+        status = 503;
+        Outbox outbox = newOutbox().start();
+        outbox.append("channel", "event", "message1");
+        long position = outbox.append("channel", "event", "message2");
+        outbox.close();
+
+        // Corrupt the body of the last record, as if the machine crashed while writing it
+        try (RandomAccessFile raf = new RandomAccessFile(segmentFiles()[0], "rw")) {
+            raf.seek(position + 10);
+            raf.write('!');
+        }
+
+        status = 200;
+        outbox = newOutbox().start();
+        try {
+            assertThat(outbox.getRecoveredCount(), is(1L));
+            outbox.append("channel", "event", "message3");
+            awaitBacklog(outbox, 0);
+        } finally {
+            outbox.close();
+        }
+        assertThat(messages.size(), is(2));
+        assertThat(messages.get(0), is("message1"));
+        assertThat(messages.get(1), is("message3"));
+    }
+
+    @Test
+    public void testStart_skipsCorruptedSegment() throws Exception {
+        status = 503;
+        Outbox outbox = newOutbox();
+        outbox.setSegmentSize(1024);
+        outbox.start();
+        StringBuilder padding = new StringBuilder();
+        for (int i = 0; i < 300; ++i) {
+            padding.append('x');
+        }
+        long[] positions = new long[6];
+        for (int i = 0; i < positions.length; ++i) {
+            positions[i] = outbox.append("channel", "event", "message" + i + padding);
+        }
+        outbox.close();
+        File[] files = segmentFiles();
+        assertTrue("Several segments", files.length >= 3);
+        assertThat("The second record is in the first segment", positions[1] < 1024, is(true));
+
+        // Corrupt the body of the second record of the first segment
+        try (RandomAccessFile raf = new RandomAccessFile(files[0], "rw")) {
+            raf.seek(positions[1] + 10);
+            raf.write('!');
+        }
+
+        List<String> expected = new ArrayList<String>();
+        for (int i = 0; i < positions.length; ++i) {
+            if (i == 0 || positions[i] >= 1024) {
+                expected.add("message" + i + padding);
+            }
+        }
+
+        outbox = newOutbox().start();
+        try {
+            assertThat(outbox.getCorruptedSegmentCount(), is(1L));
+            assertThat(outbox.getRecoveredCount(), is((long) expected.size()));
+            assertThat("The later segments are kept", segmentFiles().length, is(files.length));
+        } finally {
+            outbox.close();
+        }
+
+        status = 200;
+        outbox = newOutbox().start();
+        try {
+            awaitBacklog(outbox, 0);
+        } finally {
+            outbox.close();
+        }
+        assertThat(messages, is(expected));
+    }
+
+    @Test
+    public void testAppend_dropsNonRetryableFailure() throws Exception {
+        status = 400;
+        final List<String> dropped = Collections.synchronizedList(new ArrayList<String>());
+        Outbox outbox = newOutbox();
+        outbox.setDropListener((body, e) -> {
+            assertThat(e.getStatus(), is(400));
+            dropped.add(body);
+        });
+        outbox.start();
+        try {
+            outbox.append("channel", "event", "message1");
+            awaitBacklog(outbox, 0);
+        } finally {
+            outbox.close();
+        }
+        assertThat(outbox.getDroppedCount(), is(1L));
+        assertThat(dropped.size(), is(1));
+        assertTrue(dropped.get(0).contains("\"message1\""));
+    }
+
+    @Test
+    public void testAppend_withSyncAlways() throws Exception {
+        Outbox outbox = newOutbox();
+        outbox.setSyncPolicy(OutboxSyncPolicy.ALWAYS);
+        outbox.setSenders(4);
+        outbox.start();
+        try {
+            for (int i = 0; i < 50; ++i) {
+                outbox.append("channel", "event", "message" + i);
+            }
+            awaitBacklog(outbox, 0);
+        } finally {
+            outbox.close();
+        }
+        assertThat(messages.size(), is(50));
+    }
+
+    @Test(expected = TuppariException.class)
+    public void testAppend_notStarted() {
+        newOutbox().append("channel", "event", "message");
+    }
+
+    private Outbox newOutbox() {
+        Outbox outbox = new Outbox(client, directory);
+        outbox.setRetryPolicy(new RetryPolicy(Integer.MAX_VALUE, 10, 20));
+        return outbox;
+    }
+
+    private File[] segmentFiles() {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(Outbox.SEGMENT_SUFFIX));
+        java.util.Arrays.sort(files);
+        return files;
+    }
+
+    private static void awaitBacklog(Outbox outbox, long backlog) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (outbox.getBacklog() != backlog && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertThat(outbox.getBacklog(), is(backlog));
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[4096];
+        int n;
+        while ((n = in.read(buf)) != -1) {
+            out.write(buf, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+}
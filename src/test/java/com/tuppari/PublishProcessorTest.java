@@ -0,0 +1,313 @@
+package com.tuppari;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.reactivestreams.FlowAdapters;
+import org.reactivestreams.Processor;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class PublishProcessorTest {
+
+    private TuppariClient client;
+
+    private final AtomicInteger concurrent = new AtomicInteger();
+
+    private final AtomicInteger maxConcurrent = new AtomicInteger();
+
+    /**
+     * Transport that fails messages containing "fail" with 400, and records the concurrency of requests.
+     */
+    @Before
+    public void before() {
+        client = new TuppariClient("appId", "accessKey", "secretKey", URI.create("http://localhost:5100"));
+        client.setTransport(new Transport() {
+            @Override
+            public TransportResponse post(URI uri, Map<String, String> headers, byte[] body) {
+                int n = concurrent.incrementAndGet();
+                maxConcurrent.accumulateAndGet(n, Math::max);
+                try {
+                    Thread.sleep(2);
+                } catch (InterruptedException e) {
+                    throw new TuppariException(e);
+                } finally {
+                    concurrent.decrementAndGet();
+                }
+                String json = new String(body, StandardCharsets.UTF_8);
+                return new TransportResponse(json.contains("fail") ? 400 : 200, body);
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+    }
+
+    @After
+    public void after() {
+        client.close();
+    }
+
+    @Test
+    public void testPublish_boundedConcurrency() throws Exception {
+        PublishProcessor processor = new PublishProcessor(client, 4);
+        Collector collector = new Collector();
+        processor.subscribe(collector);
+
+        try (SubmissionPublisher<Message> upstream = new SubmissionPublisher<Message>()) {
+            upstream.subscribe(processor);
+            for (int i = 0; i < 100; ++i) {
+                upstream.submit(new Message("channel", "event", i == 50 ? "fail" : "message" + i));
+            }
+        }
+
+        assertTrue(collector.done.await(10, TimeUnit.SECONDS));
+        assertThat(collector.outcomes.size(), is(100));
+        assertThat(collector.error, nullValue());
+        assertTrue("max concurrency " + maxConcurrent.get(), maxConcurrent.get() <= 4);
+
+        int failed = 0;
+        for (PublishOutcome outcome : collector.outcomes) {
+            if (outcome.isSuccess()) {
+                assertThat(outcome.getResult().getMessage(), is(outcome.getMessage().getMessage()));
+            } else {
+                assertThat(outcome.getError().getStatus(), is(400));
+                assertThat(outcome.getMessage().getMessage(), is("fail"));
+                ++failed;
+            }
+        }
+        assertThat(failed, is(1));
+        assertThat(processor.getInFlight(), is(0));
+    }
+
+    @Test
+    public void testPublish_boundedByConcurrencyLimiter() throws Exception {
+        client.setConcurrencyLimiter(new ConcurrencyLimiter(2, 1, 2));
+        PublishProcessor processor = new PublishProcessor(client, 16);
+        Collector collector = new Collector();
+        processor.subscribe(collector);
+
+        try (SubmissionPublisher<Message> upstream = new SubmissionPublisher<Message>()) {
+            upstream.subscribe(processor);
+            for (int i = 0; i < 20; ++i) {
+                upstream.submit(new Message("channel", "event", "message" + i));
+            }
+        }
+
+        assertTrue(collector.done.await(10, TimeUnit.SECONDS));
+        assertThat(collector.outcomes.size(), is(20));
+        for (PublishOutcome outcome : collector.outcomes) {
+            assertTrue("Not rejected by the limiter", outcome.isSuccess());
+        }
+        assertTrue(maxConcurrent.get() <= 2);
+    }
+
+    @Test
+    public void testPublish_waitsForSlotsHeldByOtherPublishes() throws Exception {
+        client.setMaxInFlight(4);
+        client.getInFlightPermits().acquire(4);
+        PublishProcessor processor = new PublishProcessor(client, 4);
+        Collector collector = new Collector();
+        processor.subscribe(collector);
+
+        try (SubmissionPublisher<Message> upstream = new SubmissionPublisher<Message>()) {
+            upstream.subscribe(processor);
+            for (int i = 0; i < 20; ++i) {
+                upstream.submit(new Message("channel", "event", "message" + i));
+            }
+            Thread.sleep(100);
+            assertThat("No demand while the client has no free slot", collector.outcomes.size(), is(0));
+            client.getInFlightPermits().release(4);
+        }
+
+        assertTrue(collector.done.await(10, TimeUnit.SECONDS));
+        assertThat(collector.outcomes.size(), is(20));
+        for (PublishOutcome outcome : collector.outcomes) {
+            assertTrue("Not rejected by the in-flight limit", outcome.isSuccess());
+        }
+    }
+
+    @Test
+    public void testPublish_retriesWhenOtherPublishesTakeSlots() throws Exception {
+        client.setMaxInFlight(4);
+        PublishProcessor processor = new PublishProcessor(client, 4);
+        Collector collector = new Collector();
+        processor.subscribe(collector);
+
+        final TuppariChannel channel = client.join("other");
+        final AtomicInteger rejected = new AtomicInteger();
+        final CountDownLatch stop = new CountDownLatch(1);
+        Thread other = new Thread(() -> {
+            while (stop.getCount() > 0) {
+                channel.sendAsync("event", "other").whenComplete((result, error) -> {
+                    if (error != null) {
+                        rejected.incrementAndGet();
+                    }
+                });
+                Thread.yield();
+            }
+        });
+        other.start();
+        try (SubmissionPublisher<Message> upstream = new SubmissionPublisher<Message>()) {
+            upstream.subscribe(processor);
+            for (int i = 0; i < 50; ++i) {
+                upstream.submit(new Message("channel", "event", "message" + i));
+            }
+        }
+
+        try {
+            assertTrue(collector.done.await(10, TimeUnit.SECONDS));
+        } finally {
+            stop.countDown();
+            other.join();
+        }
+        assertThat(collector.outcomes.size(), is(50));
+        for (PublishOutcome outcome : collector.outcomes) {
+            assertTrue("Not rejected by the in-flight limit", outcome.isSuccess());
+        }
+        assertTrue("The other publishes contended for the slots", rejected.get() > 0);
+        assertTrue(maxConcurrent.get() <= 4);
+    }
+
+    @Test
+    public void testClose_failsMessagesWaitingForSlot() throws Exception {
+        client.setMaxInFlight(2);
+        client.getInFlightPermits().acquire(2);
+        PublishProcessor processor = new PublishProcessor(client, 4);
+        Collector collector = new Collector();
+        processor.subscribe(collector);
+        processor.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+            }
+
+            @Override
+            public void cancel() {
+            }
+        });
+
+        // The messages arrive after the slots were taken by other publishes
+        processor.onNext(new Message("channel", "event", "message1"));
+        processor.onNext(new Message("channel", "event", "message2"));
+        Thread.sleep(50);
+        assertThat("Waiting for a slot", processor.getInFlight(), is(2));
+        processor.close();
+
+        assertTrue(collector.done.await(10, TimeUnit.SECONDS));
+        assertThat(collector.outcomes.size(), is(2));
+        for (PublishOutcome outcome : collector.outcomes) {
+            assertTrue(outcome.getError().getMessage().startsWith(TuppariClient.IN_FLIGHT_LIMIT_EXCEEDED));
+        }
+        assertThat(processor.getInFlight(), is(0));
+        assertThat("Never sent", maxConcurrent.get(), is(0));
+    }
+
+    @Test
+    public void testOnError_propagatesAfterInFlight() throws Exception {
+        PublishProcessor processor = new PublishProcessor(client, 4);
+        Collector collector = new Collector();
+        processor.subscribe(collector);
+
+        SubmissionPublisher<Message> upstream = new SubmissionPublisher<Message>();
+        upstream.subscribe(processor);
+        upstream.submit(new Message("channel", "event", "message"));
+        // SubmissionPublisher drops buffered items on closeExceptionally, so wait for the processor to receive it
+        long deadline = System.currentTimeMillis() + 5000;
+        while (processor.getInFlight() == 0 && collector.outcomes.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        upstream.closeExceptionally(new IllegalStateException("upstream failed"));
+
+        assertTrue(collector.done.await(10, TimeUnit.SECONDS));
+        assertThat(processor.getInFlight(), is(0));
+        assertThat(collector.error.getMessage(), is("upstream failed"));
+    }
+
+    @Test
+    public void testReactiveStreamsAdapter() throws Exception {
+        Processor<Message, PublishOutcome> processor = FlowAdapters.toProcessor(new PublishProcessor(client));
+        final List<PublishOutcome> outcomes = Collections.synchronizedList(new ArrayList<PublishOutcome>());
+        final CountDownLatch done = new CountDownLatch(1);
+        processor.subscribe(new Subscriber<PublishOutcome>() {
+            @Override
+            public void onSubscribe(Subscription s) {
+                s.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(PublishOutcome outcome) {
+                outcomes.add(outcome);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                done.countDown();
+            }
+
+            @Override
+            public void onComplete() {
+                done.countDown();
+            }
+        });
+
+        try (SubmissionPublisher<Message> upstream = new SubmissionPublisher<Message>()) {
+            FlowAdapters.toFlowPublisher(FlowAdapters.toPublisher(upstream)).subscribe(FlowAdapters.toFlowSubscriber(processor));
+            for (int i = 0; i < 10; ++i) {
+                upstream.submit(new Message("channel", "event", "message" + i));
+            }
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertThat(outcomes.size(), is(10));
+    }
+
+    private static class Collector implements Flow.Subscriber<PublishOutcome> {
+
+        final List<PublishOutcome> outcomes = Collections.synchronizedList(new ArrayList<PublishOutcome>());
+
+        final CountDownLatch done = new CountDownLatch(1);
+
+        volatile Throwable error;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(PublishOutcome item) {
+            outcomes.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+            done.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            done.countDown();
+        }
+
+    }
+
+}
@@ -0,0 +1,81 @@
+package com.tuppari;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class RateLimiterTest {
+
+    private final AtomicLong now = new AtomicLong(1000000000L);
+
+    @Test
+    public void testTryAcquire_burst() {
+        RateLimiter limiter = new RateLimiter(10, 3, now::get);
+        assertThat(limiter.getAvailablePermits(), is(3));
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+        assertThat(limiter.getAvailablePermits(), is(0));
+        assertThat(limiter.getRejectedCount(), is(1L));
+    }
+
+    @Test
+    public void testTryAcquire_refill() {
+        RateLimiter limiter = new RateLimiter(10, 2, now::get);
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+
+        // The bucket does not fill beyond the burst
+        now.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        assertThat(limiter.getAvailablePermits(), is(2));
+    }
+
+    @Test
+    public void testReserve_withinWait() {
+        RateLimiter limiter = new RateLimiter(10, 1, now::get);
+        assertThat(limiter.reserve(0), is(0L));
+        assertThat(limiter.reserve(TimeUnit.MILLISECONDS.toNanos(50)), is(-1L));
+        assertThat(limiter.reserve(TimeUnit.MILLISECONDS.toNanos(100)), is(TimeUnit.MILLISECONDS.toNanos(100)));
+        assertThat("Waiters are served in order", limiter.reserve(Long.MAX_VALUE), is(TimeUnit.MILLISECONDS.toNanos(200)));
+    }
+
+    @Test
+    public void testTryAcquire_timedWait() throws Exception {
+        RateLimiter limiter = new RateLimiter(50, 1);
+        assertTrue(limiter.tryAcquire());
+        long start = System.nanoTime();
+        assertTrue(limiter.tryAcquire(1, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(15));
+        assertFalse(limiter.tryAcquire(1, TimeUnit.MILLISECONDS));
+
+        limiter.acquire();
+    }
+
+    @Test
+    public void testIsFull() {
+        RateLimiter limiter = new RateLimiter(10, 2, now::get);
+        assertTrue(limiter.isFull());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.isFull());
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+        assertTrue(limiter.isFull());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructor_withZeroRate() {
+        new RateLimiter(0, 1);
+    }
+
+}
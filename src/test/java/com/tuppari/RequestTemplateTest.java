@@ -0,0 +1,57 @@
+package com.tuppari;
+
+import org.junit.Test;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class RequestTemplateTest {
+
+    private static final Clock CLOCK = Clock.fixed(Instant.parse("2012-01-02T12:23:34Z"), ZoneOffset.UTC);
+
+    @Test
+    public void testSign_matchesSignUtil() {
+        assertSameAsSignUtil(URI.create("https://api.tuppari.com/messages"), "PublishMessage");
+        assertSameAsSignUtil(URI.create("http://localhost:5100/messages"), "PublishMessages");
+        assertSameAsSignUtil(URI.create("http://localhost:5100/messages?b=2&a=1&a=0"), "PublishMessage");
+        assertSameAsSignUtil(URI.create("http://localhost:5100"), "PublishMessage");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void assertSameAsSignUtil(URI uri, String operation) {
+        Signer signer = new Signer("secretKey");
+        byte[] body = "{\"message\":\"hello\"}".getBytes(StandardCharsets.UTF_8);
+
+        Map<String, Object> config = SignUtil.createSignedRequestConfig("POST", uri, operation, body, "accessKeyId", signer, CLOCK);
+        Map<String, String> headers = new RequestTemplate(uri, operation, "accessKeyId", signer).sign(body, DateUtil.now(CLOCK));
+
+        assertThat(uri.toString(), headers, is((Map<String, String>) config.get("headers")));
+    }
+
+
+    @Test
+    public void testSign_withContentEncoding() {
+        URI uri = URI.create("http://localhost:5100/messages");
+        Signer signer = new Signer("secretKey");
+        byte[] body = GzipEncoder.compress("{\"message\":\"hello\"}".getBytes(StandardCharsets.UTF_8));
+        RequestDate date = DateUtil.now(CLOCK);
+
+        Map<String, String> headers = new RequestTemplate(uri, "PublishMessage", "gzip", "accessKeyId", signer).sign(body, date);
+
+        assertThat(headers.get("Content-Encoding"), is("gzip"));
+        Map<String, String> signedHeaders = new HashMap<String, String>(headers);
+        String authorization = signedHeaders.remove("Authorization");
+        assertThat(authorization, is(SignUtil.createAuthorizationHeader("POST", "localhost:5100", "/messages", null, signedHeaders, body, date.toDate(), "accessKeyId", signer)));
+        assertTrue(authorization.contains("SignedHeaders=content-encoding;content-type;host;x-tuppari-date;x-tuppari-operation,"));
+    }
+
+}
@@ -0,0 +1,54 @@
+package com.tuppari;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.UnknownHostException;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class RetryPolicyTest {
+
+    @Test
+    public void testIsRetryable() {
+        RetryPolicy policy = new RetryPolicy(3);
+
+        assertThat(policy.isRetryable(new TuppariException("", 500)), is(true));
+        assertThat(policy.isRetryable(new TuppariException("", 503)), is(true));
+        assertThat(policy.isRetryable(new TuppariException("", 429)), is(true));
+        assertThat(policy.isRetryable(new TuppariException("", 408)), is(true));
+        assertThat(policy.isRetryable(new TuppariException("", 501)), is(false));
+        assertThat(policy.isRetryable(new TuppariException("", 400)), is(false));
+        assertThat(policy.isRetryable(new TuppariException("", 401)), is(false));
+
+        assertThat(policy.isRetryable(new TuppariException(new RuntimeException(new ConnectException()))), is(true));
+        assertThat(policy.isRetryable(new TuppariException(new RuntimeException(new UnknownHostException()))), is(false));
+        assertThat(policy.isRetryable(new TuppariException(new IllegalStateException())), is(false));
+    }
+
+    @Test
+    public void testBackoffMillis() {
+        RetryPolicy policy = new RetryPolicy(10, 100, 1000);
+        for (int i = 0; i < 100; ++i) {
+            assertTrue(policy.backoffMillis(1) <= 100);
+            assertTrue(policy.backoffMillis(2) <= 200);
+            assertTrue(policy.backoffMillis(3) <= 400);
+            assertTrue(policy.backoffMillis(9) <= 1000);
+            assertTrue(policy.backoffMillis(9) >= 0);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructor_withZeroAttempts() {
+        new RetryPolicy(0);
+    }
+
+    @Test
+    public void testIsRetryable_withIOException() {
+        assertThat(new RetryPolicy(2).isRetryable(new TuppariException(new IOException())), is(true));
+    }
+
+}
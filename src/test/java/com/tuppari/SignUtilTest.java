@@ -4,13 +4,15 @@ import static org.junit.Assert.*;
 import static org.hamcrest.CoreMatchers.*;
 
 import net.arnx.jsonic.JSON;
-import org.junit.After;
-import org.junit.Before;
 import org.junit.Test;
 
 
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
@@ -18,15 +20,7 @@ import java.util.Map;
 
 public class SignUtilTest {
 
-    @Before
-    public void before() {
-        DateUtil.setDummyTime("1970-01-01 00:00:00 GMT");
-    }
-
-    @After
-    public void after() {
-        DateUtil.clearDummyTime();
-    }
+    private static final Clock CLOCK = Clock.fixed(Instant.EPOCH, ZoneOffset.UTC);
 
     @Test
     public void testHmac() {
@@ -42,6 +36,16 @@ public class SignUtilTest {
         assertThat(result, is("8f16771f9f8851b26f4d460fa17de93e2711c7e51337cb8a608a0f81e1c1b6ae"));
     }
 
+    @Test
+    public void testCreateHostHeader() {
+        assertThat(SignUtil.createHostHeader(URI.create("http://localhost")), is("localhost"));
+        assertThat(SignUtil.createHostHeader(URI.create("http://localhost:80")), is("localhost"));
+        assertThat(SignUtil.createHostHeader(URI.create("https://localhost:443/messages")), is("localhost"));
+        assertThat(SignUtil.createHostHeader(URI.create("http://localhost:443")), is("localhost:443"));
+        assertThat(SignUtil.createHostHeader(URI.create("https://localhost:80")), is("localhost:80"));
+        assertThat(SignUtil.createHostHeader(URI.create("http://localhost:5100")), is("localhost:5100"));
+    }
+
     @Test
     public void testCreateCannicalUri() {
         assertThat(SignUtil.createCanonicalUri(null), is("/"));
@@ -106,6 +110,24 @@ public class SignUtilTest {
         assertThat(SignUtil.createBodyHash(body), is("b85c7da93e8790518898c280e15e3f1af5d46bf4aaa4407690f0f0a3b0316478"));
     }
 
+    @Test
+    public void testCreateEncodedBodyHash() {
+        assertThat(SignUtil.createEncodedBodyHash(null), is("e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855"));
+        assertThat(SignUtil.createEncodedBodyHash("{\"a\":\"b\",\"c\":\"d\"}".getBytes(StandardCharsets.UTF_8)), is("b85c7da93e8790518898c280e15e3f1af5d46bf4aaa4407690f0f0a3b0316478"));
+    }
+
+    @Test
+    public void testCreateSignedRequestConfig_withEncodedBody() {
+        byte[] body = "{\"applicationName\":\"example1\"}".getBytes(StandardCharsets.UTF_8);
+        URI uri = URI.create("http://api.tuppari.com/test?a=v1&b=v2");
+
+        Map<String, Object> config = SignUtil.createSignedRequestConfig("POST", uri, "CreateApplication", body, "accessKeyId", new Signer("accessSecretKey"), CLOCK);
+
+        assertThat("The same bytes are sent", (byte[]) config.get("body"), sameInstance(body));
+        Map<String, String> headers = (Map<String, String>) config.get("headers");
+        assertThat(headers.get("Authorization"), is("HMAC-SHA256 Credential=accessKeyId,SignedHeaders=content-type;host;x-tuppari-date;x-tuppari-operation,Signature=f35767c9fdba4ba5d5bbbf1c622fceed0dbaeb210303bb56b419c6a51bcf1e5d"));
+    }
+
     @Test
     public void testCreateCanonicalRequest() {
         String method = "POST";
@@ -145,7 +167,7 @@ public class SignUtilTest {
                 "content-type;host;x-tuppari-operation\n" +
                 "8f2d5fe4a93000d3546e578d265fc936806f6ef6dc6f7ee87715e1a5c514c168";
 
-        Date now = DateUtil.now();
+        Date now = Date.from(CLOCK.instant());
         String result = SignUtil.createStringToSign(canonicalRequest, now);
         assertThat(result, is("" +
                 "SHA256\n" +
@@ -161,7 +183,7 @@ public class SignUtilTest {
                 "19700101T000000Z\n" +
                 "152176000cc08c7d9d0558bc3a50368aa38619a695ad20f50bec1344429cb315";
 
-        Date now = DateUtil.now();
+        Date now = Date.from(CLOCK.instant());
         String host = "api.tuppari.com";
         String expectedSignature = "4815ff1681a278e7c852902ea3604f17831a80a78dc0ff82f5142598a034509b";
 
@@ -172,6 +194,20 @@ public class SignUtilTest {
         }
     }
 
+    @Test
+    public void testCreateSignature_usesSigningKeyCache() {
+        SigningKeyCache cache = SignUtil.getSigningKeyCache();
+        cache.clear();
+
+        Date now = Date.from(CLOCK.instant());
+        String first = SignUtil.createSignature("secretKey1", "stringToSign1", now, "api.tuppari.com");
+        String second = SignUtil.createSignature("secretKey1", "stringToSign2", now, "api.tuppari.com");
+
+        assertThat(first, not(equalTo(second)));
+        assertThat(cache.getMissCount(), is(1L));
+        assertThat(cache.getHitCount(), is(1L));
+    }
+
     @Test
     public void testCreateSignature_2() throws ParseException {
         String secretKey1 = "secretKey1";
@@ -182,7 +218,7 @@ public class SignUtilTest {
                 "19700101T000000Z\n" +
                 "152176000cc08c7d9d0558bc3a50368aa38619a695ad20f50bec1344429cb315";
 
-        Date now = DateUtil.now();
+        Date now = Date.from(CLOCK.instant());
         String host = "api.tuppari.com";
         String expectedSignature = "4815ff1681a278e7c852902ea3604f17831a80a78dc0ff82f5142598a034509b";
 
@@ -194,7 +230,7 @@ public class SignUtilTest {
 
     @Test
     public void testCreateSignedRequestConfig() throws ParseException {
-        Date now = DateUtil.now();
+        Date now = Date.from(CLOCK.instant());
 
         String method = "POST";
         URI uri = URI.create("http://api.tuppari.com/test?a=v1&b=v2");
@@ -204,10 +240,10 @@ public class SignUtilTest {
         String accessKeyId = "accessKeyId";
         String accessSecretKey = "accessSecretKey";
 
-        Map<String, Object> config = SignUtil.createSignedRequestConfig(method, uri, operation, body, accessKeyId, accessSecretKey);
+        Map<String, Object> config = SignUtil.createSignedRequestConfig(method, uri, operation, body, accessKeyId, new Signer(accessSecretKey), CLOCK);
 
         assertThat((URI) config.get("uri"), is(uri));
-        assertThat((String) config.get("body"), is(JSON.encode(body)));
+        assertThat(new String((byte[]) config.get("body"), StandardCharsets.UTF_8), is(JSON.encode(body)));
 
         Map<String, String> headers = (Map<String, String>) config.get("headers");
         assertThat(headers.get("Host"), is("api.tuppari.com"));
@@ -219,7 +255,7 @@ public class SignUtilTest {
 
     @Test
     public void testCreateAuthorizationHeader() {
-        Date now = DateUtil.now();
+        Date now = Date.from(CLOCK.instant());
 
         String method = "POST";
         String hostname = "api.tuppari.com";
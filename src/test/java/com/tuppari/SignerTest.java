@@ -0,0 +1,78 @@
+package com.tuppari;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+public class SignerTest {
+
+    private static final String STRING_TO_SIGN =
+            "SHA256\n" +
+            "19700101T000000Z\n" +
+            "152176000cc08c7d9d0558bc3a50368aa38619a695ad20f50bec1344429cb315";
+
+    private static final String EXPECTED_SIGNATURE = "4815ff1681a278e7c852902ea3604f17831a80a78dc0ff82f5142598a034509b";
+
+    @Test
+    public void testHmacHex() {
+        byte[] result = Signer.hmacHex("123".getBytes(StandardCharsets.UTF_8), "abc".getBytes(StandardCharsets.UTF_8));
+        assertThat(new String(result, StandardCharsets.US_ASCII), is("8f16771f9f8851b26f4d460fa17de93e2711c7e51337cb8a608a0f81e1c1b6ae"));
+    }
+
+    @Test
+    public void testSign() {
+        Signer signer = new Signer("secretKey1", new SigningKeyCache());
+        assertThat(signer.sign(STRING_TO_SIGN, "19700101T000000Z", "api.tuppari.com"), is(EXPECTED_SIGNATURE));
+        assertThat("Cached signing key gives same signature", signer.sign(STRING_TO_SIGN, "19700101T000000Z", "api.tuppari.com"), is(EXPECTED_SIGNATURE));
+        assertThat(signer.sign(STRING_TO_SIGN, "19700101T000000Z", "localhost"), not(equalTo(EXPECTED_SIGNATURE)));
+    }
+
+    @Test
+    public void testSign_withDifferentSigners() {
+        SigningKeyCache cache = new SigningKeyCache();
+        Signer signer1 = new Signer("secretKey1", cache);
+        Signer signer2 = new Signer("secretKey2", cache);
+
+        assertThat(signer1.sign(STRING_TO_SIGN, "19700101T000000Z", "api.tuppari.com"), is(EXPECTED_SIGNATURE));
+        assertThat(signer2.sign(STRING_TO_SIGN, "19700101T000000Z", "api.tuppari.com"), not(equalTo(EXPECTED_SIGNATURE)));
+        assertThat(signer1.sign(STRING_TO_SIGN, "19700101T000000Z", "api.tuppari.com"), is(EXPECTED_SIGNATURE));
+    }
+
+    @Test
+    public void testForSecretKey() {
+        assertThat(Signer.forSecretKey("secretKey1"), sameInstance(Signer.forSecretKey("secretKey1")));
+        assertThat(Signer.forSecretKey("secretKey1"), not(sameInstance(Signer.forSecretKey("secretKey2"))));
+    }
+
+    @Test
+    public void testSign_concurrently() throws Exception {
+        final Signer signer = new Signer("secretKey1", new SigningKeyCache());
+        final AtomicInteger wrong = new AtomicInteger();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < 8; ++t) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 2000; ++i) {
+                        if (!EXPECTED_SIGNATURE.equals(signer.sign(STRING_TO_SIGN, "19700101T000000Z", "api.tuppari.com"))) {
+                            wrong.incrementAndGet();
+                        }
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertThat(wrong.get(), is(0));
+    }
+
+}
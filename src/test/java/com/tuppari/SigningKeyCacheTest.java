@@ -0,0 +1,89 @@
+package com.tuppari;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+public class SigningKeyCacheTest {
+
+    private static final byte[] KEY = "key".getBytes();
+
+    private static final byte[] KEY1 = "key1".getBytes();
+
+    private static final byte[] KEY2 = "key2".getBytes();
+
+    @Test
+    public void testGetAndPut() {
+        SigningKeyCache cache = new SigningKeyCache();
+
+        assertNull(cache.get("secret", "19700101T000000Z", "api.tuppari.com"));
+        cache.put("secret", "19700101T000000Z", "api.tuppari.com", KEY);
+
+        assertThat(cache.get("secret", "19700101T000000Z", "api.tuppari.com"), sameInstance(KEY));
+        assertNull(cache.get("secret", "19700101T000001Z", "api.tuppari.com"));
+        assertNull(cache.get("secret2", "19700101T000000Z", "api.tuppari.com"));
+        assertNull(cache.get("secret", "19700101T000000Z", "localhost"));
+
+        assertThat(cache.getHitCount(), is(1L));
+        assertThat(cache.getMissCount(), is(4L));
+        assertThat(cache.getHitRate(), is(0.2));
+    }
+
+    @Test
+    public void testBounded() {
+        SigningKeyCache cache = new SigningKeyCache(1);
+        cache.put("secret", "19700101T000000Z", "api.tuppari.com", KEY1);
+        cache.put("secret", "19700101T000001Z", "api.tuppari.com", KEY2);
+
+        assertNull("Older entry is replaced", cache.get("secret", "19700101T000000Z", "api.tuppari.com"));
+        assertThat(cache.get("secret", "19700101T000001Z", "api.tuppari.com"), sameInstance(KEY2));
+    }
+
+    @Test
+    public void testClear() {
+        SigningKeyCache cache = new SigningKeyCache();
+        cache.put("secret", "19700101T000000Z", "api.tuppari.com", KEY);
+        cache.get("secret", "19700101T000000Z", "api.tuppari.com");
+        cache.clear();
+
+        assertThat(cache.getHitCount(), is(0L));
+        assertNull(cache.get("secret", "19700101T000000Z", "api.tuppari.com"));
+    }
+
+    @Test
+    public void testConcurrentAccess() throws Exception {
+        final SigningKeyCache cache = new SigningKeyCache(4);
+        final AtomicInteger wrong = new AtomicInteger();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < 8; ++t) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 10000; ++i) {
+                        String date = "date" + (i % 16);
+                        byte[] key = cache.get("secret", date, "host");
+                        if (key == null) {
+                            cache.put("secret", date, "host", ("key-" + date).getBytes());
+                        } else if (!new String(key).equals("key-" + date)) {
+                            wrong.incrementAndGet();
+                        }
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertThat(wrong.get(), is(0));
+        assertThat(cache.getHitCount() + cache.getMissCount(), is(80000L));
+    }
+
+}
@@ -0,0 +1,60 @@
+package com.tuppari;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class ThreadLocalPoolTest {
+
+    private final AtomicInteger created = new AtomicInteger();
+
+    private final Supplier<Object> factory = new Supplier<Object>() {
+        @Override
+        public Object get() {
+            created.incrementAndGet();
+            return new Object();
+        }
+    };
+
+    @Test
+    public void testAcquire_onPlatformThread() {
+        ThreadLocalPool<Object> pool = new ThreadLocalPool<Object>(factory, 4);
+        Object first = pool.acquire();
+        pool.release(first);
+        assertThat(pool.acquire(), sameInstance(first));
+        assertThat(created.get(), is(1));
+    }
+
+    @Test
+    public void testAcquireShared() {
+        ThreadLocalPool<Object> pool = new ThreadLocalPool<Object>(factory, 4);
+        Object first = pool.acquireShared();
+        Object second = pool.acquireShared();
+        assertThat(second, not(sameInstance(first)));
+        assertThat(created.get(), is(2));
+
+        pool.releaseShared(first);
+        assertThat("Released instance is reused", pool.acquireShared(), sameInstance(first));
+        assertThat(created.get(), is(2));
+    }
+
+    @Test
+    public void testReleaseShared_whenFull() {
+        ThreadLocalPool<Object> pool = new ThreadLocalPool<Object>(factory, 2);
+        for (int i = 0; i < 3; ++i) {
+            pool.releaseShared(new Object());
+        }
+        pool.acquireShared();
+        pool.acquireShared();
+        int before = created.get();
+        pool.acquireShared();
+        assertThat("Only the pool capacity is retained", created.get(), is(before + 1));
+    }
+
+}
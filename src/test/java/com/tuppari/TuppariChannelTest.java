@@ -1,19 +1,38 @@
 package com.tuppari;
 
-import org.junit.After;
-import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
 import java.io.IOException;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class TuppariChannelTest {
 
@@ -23,6 +42,8 @@ public class TuppariChannelTest {
     private static String accessKeyId;
     private static String accessSecretKey;
 
+    private static final Clock CLOCK = Clock.fixed(Instant.EPOCH, ZoneOffset.UTC);
+
     @BeforeClass
     public static void beforeClass() throws IOException {
         props = new Properties();
@@ -34,27 +55,25 @@ public class TuppariChannelTest {
         accessSecretKey = props.getProperty("ACCESS_SECRET_KEY");
     }
 
-    @Before
-    public void before() {
-        DateUtil.setDummyTime("1970-01-01 00:00:00 GMT");
-    }
-
-    @After
-    public void after() {
-        DateUtil.clearDummyTime();
-    }
-
     @Test
-    public void testSend() {
+    public void testSend() throws IOException {
         String channelName = "channelName";
         String eventName = "eventName";
         String message = "message";
 
-        TuppariClient client = new TuppariClient(applicationId, accessKeyId, accessSecretKey, URI.create("http://localhost:5100"));
+        TuppariStubServer stub = new TuppariStubServer().addCredentials(accessKeyId, accessSecretKey).start();
+        TuppariClient client = new TuppariClient(applicationId, accessKeyId, accessSecretKey, stub.getUri());
         client.setReadTimeout(5000);
+        client.setClock(CLOCK);
         TuppariChannel channel = client.join(channelName);
 
-        Map<String, String> result = channel.send(eventName, message);
+        Map<String, String> result;
+        try {
+            result = channel.send(eventName, message);
+        } finally {
+            client.close();
+            stub.close();
+        }
 
         assertNotNull(result);
         assertThat((String) result.get("applicationId"), is(applicationId));
@@ -63,6 +82,197 @@ public class TuppariChannelTest {
         assertThat((String) result.get("message"), is(message));
     }
 
+    @Test
+    public void testSend_withTransport() {
+        final Map<String, String> sentHeaders = new HashMap<String, String>();
+        final List<String> sentBodies = new ArrayList<String>();
+        TuppariClient client = new TuppariClient("appId", "accessKey", "secretKey", URI.create("http://localhost:5100"));
+        client.setTransport(new Transport() {
+            @Override
+            public TransportResponse post(URI uri, Map<String, String> headers, byte[] body) {
+                sentHeaders.putAll(headers);
+                String json = new String(body, StandardCharsets.UTF_8);
+                sentBodies.add(json);
+                return new TransportResponse(200, json);
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+
+        client.setClock(CLOCK);
+        Map<String, String> result = client.join("channelName").send("eventName", "message");
+
+        assertThat(sentHeaders.get("X-Tuppari-Date"), is("Thu, 01 Jan 1970 00:00:00 GMT"));
+        assertThat(sentBodies.get(0), is("{\"applicationId\":\"appId\",\"channel\":\"channelName\",\"event\":\"eventName\",\"message\":\"message\"}"));
+        assertThat(sentHeaders.get("X-Tuppari-Operation"), is("PublishMessage"));
+        assertThat(sentHeaders.get("Host"), is("localhost:5100"));
+        assertThat(result.get("event"), is("eventName"));
+    }
+
+    @Test(expected = TuppariException.class)
+    public void testSend_withErrorResponse() {
+        TuppariClient client = new TuppariClient("appId", "accessKey", "secretKey", URI.create("http://localhost:5100"));
+        client.setTransport(new Transport() {
+            @Override
+            public TransportResponse post(URI uri, Map<String, String> headers, byte[] body) {
+                return new TransportResponse(401, "{\"reason\":\"invalid\"}");
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+
+        client.join("channelName").send("eventName", "message");
+    }
+
+    @Test
+    public void testSend_withRetry() {
+        final List<String> dates = new ArrayList<String>();
+        TuppariClient client = new TuppariClient("appId", "accessKey", "secretKey", URI.create("http://localhost:5100"));
+        client.setRetryPolicy(new RetryPolicy(3, 1, 1));
+        client.setClock(new Clock() {
+            private long seconds = 0;
+
+            @Override
+            public ZoneId getZone() {
+                return ZoneOffset.UTC;
+            }
+
+            @Override
+            public Clock withZone(ZoneId zone) {
+                return this;
+            }
+
+            @Override
+            public Instant instant() {
+                return Instant.ofEpochSecond(seconds++);
+            }
+        });
+        client.setTransport(new Transport() {
+            @Override
+            public TransportResponse post(URI uri, Map<String, String> headers, byte[] body) {
+                dates.add(headers.get("X-Tuppari-Date"));
+                if (dates.size() < 3) {
+                    return new TransportResponse(503, "unavailable");
+                }
+                return new TransportResponse(200, new String(body, StandardCharsets.UTF_8));
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+
+        Map<String, String> result = client.join("channelName").send("eventName", "message");
+
+        assertThat(result.get("message"), is("message"));
+        assertThat(dates.size(), is(3));
+        assertThat("Each attempt is signed again", dates.get(2), is("Thu, 01 Jan 1970 00:00:02 GMT"));
+    }
+
+    @Test
+    public void testSend_withRetry_notRetryable() {
+        final AtomicInteger attempts = new AtomicInteger();
+        TuppariClient client = new TuppariClient("appId", "accessKey", "secretKey", URI.create("http://localhost:5100"));
+        client.setRetryPolicy(new RetryPolicy(3, 1, 1));
+        client.setTransport(new Transport() {
+            @Override
+            public TransportResponse post(URI uri, Map<String, String> headers, byte[] body) {
+                attempts.incrementAndGet();
+                return new TransportResponse(401, "unauthorized");
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+
+        try {
+            client.join("channelName").send("eventName", "message");
+            fail("TuppariException is expected");
+        } catch (TuppariException e) {
+            assertThat(e.getStatus(), is(401));
+        }
+        assertThat(attempts.get(), is(1));
+    }
+
+    @Test
+    public void testSend_withHedging() {
+        final AtomicInteger attempts = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+        TuppariClient client = new TuppariClient("appId", "accessKey", "secretKey", URI.create("http://localhost:5100"));
+        client.setHedgingPolicy(new HedgingPolicy(0.95, 10, 50));
+        client.setTransport(new Transport() {
+            @Override
+            public TransportResponse post(URI uri, Map<String, String> headers, byte[] body) {
+                if (attempts.incrementAndGet() == 1) {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        throw new TuppariException(e);
+                    }
+                    return new TransportResponse(200, "{\"message\":\"slow\"}");
+                }
+                return new TransportResponse(200, "{\"message\":\"hedged\"}");
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+
+        try {
+            Map<String, String> result = client.join("channelName").send("eventName", "message");
+            assertThat(result.get("message"), is("hedged"));
+            assertThat(attempts.get(), is(2));
+        } finally {
+            release.countDown();
+            client.close();
+        }
+    }
+
+    @Test
+    public void testSend_withMetrics() {
+        final AtomicInteger attempts = new AtomicInteger();
+        PublishMetrics metrics = new PublishMetrics();
+        TuppariClient client = new TuppariClient("appId", "accessKey", "secretKey", URI.create("http://localhost:5100"));
+        client.setMetrics(metrics);
+        client.setClock(CLOCK);
+        client.setRetryPolicy(new RetryPolicy(2, 1, 1));
+        client.setTransport(new Transport() {
+            @Override
+            public TransportResponse post(URI uri, Map<String, String> headers, byte[] body) {
+                if (attempts.incrementAndGet() == 1) {
+                    return new TransportResponse(503, "unavailable");
+                }
+                return new TransportResponse(200, "{\"message\":\"\u00e9\"}");
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+
+        client.join("channelName").send("eventName", "message");
+
+        MetricsSnapshot snapshot = metrics.snapshot();
+        assertThat(snapshot.getInFlight(), is(0L));
+        assertThat(snapshot.getSucceeded(), is(1L));
+        assertThat(snapshot.getFailed(), is(0L));
+        assertThat(snapshot.getPhase(PublishPhase.ENCODE).getCount(), is(1L));
+        assertThat(snapshot.getPhase(PublishPhase.SIGN).getCount(), is(2L));
+        assertThat(snapshot.getPhase(PublishPhase.ROUND_TRIP).getCount(), is(2L));
+        assertThat(snapshot.getPhase(PublishPhase.TOTAL).getCount(), is(1L));
+        assertThat(snapshot.getErrorsByStatus().get(503), is(1L));
+        assertThat(snapshot.getBytesSent(), is(2L * "{\"applicationId\":\"appId\",\"channel\":\"channelName\",\"event\":\"eventName\",\"message\":\"message\"}".length()));
+        assertThat("UTF-8 bytes, not chars", snapshot.getBytesReceived(), is((long) ("unavailable".length() + "{\"message\":\"\"}".length() + 2)));
+        assertThat("Only the lookups of this client", snapshot.getSigningKeyCacheHits() + snapshot.getSigningKeyCacheMisses(), is(2L));
+        assertTrue("Same date and host", snapshot.getSigningKeyCacheHits() >= 1);
+    }
+
     @Test(expected = TuppariException.class)
     public void testSend_toInValidHost() {
         String channelName = "channelName";
@@ -71,6 +281,7 @@ public class TuppariChannelTest {
 
         TuppariClient client = new TuppariClient(applicationId, accessKeyId, accessSecretKey, URI.create("http://invalid"));
         client.setReadTimeout(5000);
+        client.setClock(CLOCK);
         TuppariChannel channel = client.join(channelName);
 
         channel.send(eventName, message);
@@ -84,9 +295,319 @@ public class TuppariChannelTest {
 
         TuppariClient client = new TuppariClient("invalid", accessKeyId, accessSecretKey, URI.create("http://127.0.0.1:5100"));
         client.setReadTimeout(5000);
+        client.setClock(CLOCK);
         TuppariChannel channel = client.join(channelName);
 
         channel.send(eventName, message);
     }
 
+    @Test
+    public void testSendAsync_toInValidHost() throws Exception {
+        TuppariClient client = new TuppariClient(applicationId, accessKeyId, accessSecretKey, URI.create("http://invalid"));
+        client.setReadTimeout(5000);
+        client.setClock(CLOCK);
+        TuppariChannel channel = client.join("channelName");
+
+        CompletableFuture<PublishResult> future = channel.sendAsync("eventName", "message");
+        try {
+            future.get();
+            fail("ExecutionException is expected");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(TuppariException.class));
+        }
+    }
+
+    @Test
+    public void testSendAsync_overMaxInFlight() throws Exception {
+        final List<Runnable> tasks = new ArrayList<Runnable>();
+        TuppariClient client = new TuppariClient(applicationId, accessKeyId, accessSecretKey, URI.create("http://invalid"));
+        client.setMaxInFlight(1);
+        client.setExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                tasks.add(command);
+            }
+        });
+        TuppariChannel channel = client.join("channelName");
+
+        CompletableFuture<PublishResult> first = channel.sendAsync("eventName", "message");
+        CompletableFuture<PublishResult> second = channel.sendAsync("eventName", "message");
+
+        assertFalse(first.isDone());
+        assertTrue(second.isCompletedExceptionally());
+        assertThat(tasks.size(), is(1));
+
+        tasks.get(0).run();
+        assertTrue(first.isCompletedExceptionally());
+
+        CompletableFuture<PublishResult> third = channel.sendAsync("eventName", "message");
+        assertFalse("Permit is released after completion", third.isDone());
+    }
+
+    @Test
+    public void testSendAsync_overConcurrencyLimit() throws Exception {
+        final List<Runnable> tasks = new ArrayList<Runnable>();
+        TuppariClient client = new TuppariClient(applicationId, accessKeyId, accessSecretKey, URI.create("http://invalid"));
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 10);
+        client.setConcurrencyLimiter(limiter);
+        client.setExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                tasks.add(command);
+            }
+        });
+        TuppariChannel channel = client.join("channelName");
+
+        CompletableFuture<PublishResult> first = channel.sendAsync("eventName", "message");
+        CompletableFuture<PublishResult> second = channel.sendAsync("eventName", "message");
+
+        assertFalse(first.isDone());
+        assertTrue(second.isCompletedExceptionally());
+        assertThat(limiter.getInFlight(), is(1));
+        assertThat(limiter.getRejectedCount(), is(1L));
+
+        tasks.get(0).run();
+        assertTrue(first.isCompletedExceptionally());
+        assertThat(limiter.getInFlight(), is(0));
+    }
+
+
+    @Test
+    public void testSendAsync_decodesLazily() throws Exception {
+        TuppariClient client = new TuppariClient("appId", "accessKey", "secretKey", URI.create("http://localhost:5100"));
+        client.setTransport(new Transport() {
+            @Override
+            public TransportResponse post(URI uri, Map<String, String> headers, byte[] body) {
+                return new TransportResponse(200, "not json".getBytes(StandardCharsets.UTF_8));
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+
+        PublishResult result = client.join("channelName").sendAsync("eventName", "message").get();
+        try {
+            result.getMessage();
+            fail("TuppariException is expected");
+        } catch (TuppariException e) {
+            // The body is decoded on first access only
+        } finally {
+            client.close();
+        }
+    }
+
+    @Test
+    public void testPublish_withTransport() {
+        final AtomicInteger statusOnly = new AtomicInteger();
+        TuppariClient client = new TuppariClient("appId", "accessKey", "secretKey", URI.create("http://localhost:5100"));
+        client.setTransport(new Transport() {
+            @Override
+            public TransportResponse post(URI uri, Map<String, String> headers, byte[] body) {
+                throw new AssertionError("The body must not be read");
+            }
+
+            @Override
+            public TransportResponse postForStatus(URI uri, Map<String, String> headers, byte[] body) {
+                statusOnly.incrementAndGet();
+                return TransportResponse.discarded(200, 0);
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+
+        TuppariChannel channel = client.join("channelName");
+        channel.publish("eventName", "message");
+        channel.event("eventName").publish("message");
+        assertThat(statusOnly.get(), is(2));
+    }
+
+    @Test
+    public void testPublish_withErrorResponse() throws Exception {
+        TuppariStubServer stub = new TuppariStubServer().addCredentials(accessKeyId, accessSecretKey).start();
+        TuppariClient client = new TuppariClient(applicationId, accessKeyId, accessSecretKey, stub.getUri());
+        stub.setErrorInjection(1.0, 503);
+        try {
+            client.join("channelName").publishAsync("eventName", "message").get();
+            fail("ExecutionException is expected");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(TuppariException.class));
+            assertThat(((TuppariException) e.getCause()).getStatus(), is(503));
+        } finally {
+            client.close();
+            stub.close();
+        }
+    }
+
+    @Test
+    public void testPublishAsync() throws Exception {
+        TuppariStubServer stub = new TuppariStubServer().addCredentials(accessKeyId, accessSecretKey).start();
+        TuppariClient client = new TuppariClient(applicationId, accessKeyId, accessSecretKey, stub.getUri());
+        try {
+            TuppariChannel channel = client.join("channelName");
+            List<CompletableFuture<Void>> futures = new ArrayList<CompletableFuture<Void>>();
+            for (int i = 0; i < 10; ++i) {
+                futures.add(channel.publishAsync("eventName", "message" + i));
+                futures.add(channel.event("eventName").publishAsync("message" + i));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get();
+            assertThat(stub.getAcceptedCount(), is(20L));
+        } finally {
+            client.close();
+            stub.close();
+        }
+    }
+
+
+    @Test
+    public void testSend_withCompression() throws Exception {
+        assertCompressedSend(null);
+        assertCompressedSend(new HttpClientTransport());
+    }
+
+    private static void assertCompressedSend(Transport transport) throws Exception {
+        char[] chars = new char[4096];
+        Arrays.fill(chars, 'x');
+        String largeMessage = new String(chars);
+
+        TuppariStubServer stub = new TuppariStubServer().addCredentials(accessKeyId, accessSecretKey).start();
+        TuppariClient client = new TuppariClient(applicationId, accessKeyId, accessSecretKey, stub.getUri());
+        if (transport != null) {
+            client.setTransport(transport);
+        }
+        PublishMetrics metrics = new PublishMetrics();
+        client.setMetrics(metrics);
+        client.setCompressionThreshold(1024);
+        try {
+            TuppariChannel channel = client.join("channelName");
+            assertThat(channel.send("eventName", "small").get("message"), is("small"));
+            assertThat(stub.getCompressedCount(), is(0L));
+
+            assertThat(channel.send("eventName", largeMessage).get("message"), is(largeMessage));
+            channel.event("eventName").publish(largeMessage);
+            channel.publishAsync("eventName", largeMessage).get();
+            assertThat(stub.getCompressedCount(), is(3L));
+            assertThat(stub.getRejectedCount(), is(0L));
+            assertThat(metrics.snapshot().getPhase(PublishPhase.COMPRESS).getCount(), is(3L));
+            assertTrue("Compressed bytes are sent", metrics.snapshot().getBytesSent() < 4 * 1024);
+        } finally {
+            client.close();
+            stub.close();
+            if (transport != null) {
+                transport.close();
+            }
+        }
+    }
+
+    @Test
+    public void testSendAsync_withoutHoldingThread() throws Exception {
+        final List<CompletableFuture<TransportResponse>> responses = new CopyOnWriteArrayList<CompletableFuture<TransportResponse>>();
+        TuppariClient client = new TuppariClient("appId", "accessKey", "secretKey", URI.create("http://localhost:5100"));
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        client.setExecutor(executor);
+        client.setTransport(new Transport() {
+            @Override
+            public TransportResponse post(URI uri, Map<String, String> headers, byte[] body) {
+                throw new AssertionError("Asynchronous publishes use postAsync");
+            }
+
+            @Override
+            public CompletableFuture<TransportResponse> postAsync(URI uri, Map<String, String> headers, ByteBuffer body) {
+                CompletableFuture<TransportResponse> response = new CompletableFuture<TransportResponse>();
+                responses.add(response);
+                return response;
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+
+        try {
+            TuppariChannel channel = client.join("channelName");
+            List<CompletableFuture<PublishResult>> futures = new ArrayList<CompletableFuture<PublishResult>>();
+            for (int i = 0; i < 5; ++i) {
+                futures.add(channel.sendAsync("eventName", "message" + i));
+            }
+            long deadline = System.currentTimeMillis() + 5000;
+            while (responses.size() < 5 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+            }
+            assertThat("All requests are in flight on a single thread", responses.size(), is(5));
+
+            for (CompletableFuture<TransportResponse> response : responses) {
+                response.complete(new TransportResponse(200, "{\"message\":\"ok\"}"));
+            }
+            for (CompletableFuture<PublishResult> future : futures) {
+                assertThat(future.get().getMessage(), is("ok"));
+            }
+            assertThat(client.getInFlightPermits().availablePermits(), is(TuppariClient.DEFAULT_MAX_IN_FLIGHT));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testSendAsync_withRetry() throws Exception {
+        final AtomicInteger attempts = new AtomicInteger();
+        TuppariClient client = new TuppariClient("appId", "accessKey", "secretKey", URI.create("http://localhost:5100"));
+        client.setRetryPolicy(new RetryPolicy(3, 1, 1));
+        client.setTransport(new Transport() {
+            @Override
+            public TransportResponse post(URI uri, Map<String, String> headers, byte[] body) {
+                if (attempts.incrementAndGet() < 3) {
+                    return new TransportResponse(503, "unavailable");
+                }
+                return new TransportResponse(200, new String(body, StandardCharsets.UTF_8));
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+
+        try {
+            assertThat(client.join("channelName").sendAsync("eventName", "message").get().getMessage(), is("message"));
+            assertThat(attempts.get(), is(3));
+        } finally {
+            client.close();
+        }
+    }
+
+    @Test
+    public void testSendAsync_withHedging() throws Exception {
+        final AtomicInteger attempts = new AtomicInteger();
+        final CompletableFuture<TransportResponse> slow = new CompletableFuture<TransportResponse>();
+        TuppariClient client = new TuppariClient("appId", "accessKey", "secretKey", URI.create("http://localhost:5100"));
+        client.setHedgingPolicy(new HedgingPolicy(0.95, 10, 50));
+        client.setTransport(new Transport() {
+            @Override
+            public TransportResponse post(URI uri, Map<String, String> headers, byte[] body) {
+                throw new AssertionError("Asynchronous publishes use postAsync");
+            }
+
+            @Override
+            public CompletableFuture<TransportResponse> postAsync(URI uri, Map<String, String> headers, ByteBuffer body) {
+                if (attempts.incrementAndGet() == 1) {
+                    return slow;
+                }
+                return CompletableFuture.completedFuture(new TransportResponse(200, "{\"message\":\"hedged\"}"));
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+
+        try {
+            assertThat(client.join("channelName").sendAsync("eventName", "message").get().getMessage(), is("hedged"));
+            assertThat(attempts.get(), is(2));
+        } finally {
+            slow.complete(new TransportResponse(200, "{\"message\":\"slow\"}"));
+            client.close();
+        }
+    }
+
 }
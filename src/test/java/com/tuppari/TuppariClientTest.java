@@ -1,8 +1,14 @@
 package com.tuppari;
 
+import org.junit.Assume;
 import org.junit.Test;
 
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.hamcrest.CoreMatchers.*;
 import static org.junit.Assert.*;
@@ -18,6 +24,8 @@ public class TuppariClientTest {
         assertThat(client.getAccessSecretKey(), is("secretKey"));
         assertThat(client.getConnectTimeout(), is(0));
         assertThat(client.getReadTimeout(), is(0));
+        assertThat(client.getMaxInFlight(), is(TuppariClient.DEFAULT_MAX_IN_FLIGHT));
+        assertNotNull(client.getExecutor());
         assertThat(client.getTargetUri(), is(URI.create("https://api.tuppari.com")));
         assertThat(client.getMessagesApiEndpoint(), is(URI.create("https://api.tuppari.com/messages")));
     }
@@ -42,4 +50,268 @@ public class TuppariClientTest {
         assertNotNull(channel);
     }
 
+    @Test(expected = IllegalArgumentException.class)
+    public void testSetMaxInFlight_withZero() {
+        TuppariClient client = new TuppariClient("appId", "accessKey", "secretKey");
+        client.setMaxInFlight(0);
+    }
+
+    @Test
+    public void testSetMaxInFlight_countsPublishesInFlight() {
+        TuppariClient client = new TuppariClient("appId", "accessKey", "secretKey");
+        client.setMaxInFlight(4);
+        List<CompletableFuture<Void>> inFlight = new ArrayList<CompletableFuture<Void>>();
+        for (int i = 0; i < 4; ++i) {
+            CompletableFuture<Void> publish = new CompletableFuture<Void>();
+            client.submitAsync(() -> publish);
+            inFlight.add(publish);
+        }
+
+        client.setMaxInFlight(6);
+        assertThat(client.getAvailableInFlight(), is(2));
+        client.setMaxInFlight(2);
+        assertThat(client.getAvailableInFlight(), is(0));
+        assertTrue(client.submitAsync(() -> new CompletableFuture<Void>()).isCompletedExceptionally());
+
+        inFlight.get(0).complete(null);
+        inFlight.get(1).complete(null);
+        assertThat("Still at the new limit", client.getAvailableInFlight(), is(0));
+        inFlight.get(2).complete(null);
+        assertThat(client.getAvailableInFlight(), is(1));
+        inFlight.get(3).complete(null);
+        assertThat(client.getAvailableInFlight(), is(2));
+    }
+
+    @Test
+    public void testSubmitAsync_refundsPermitWhenInFlightLimitReached() throws Exception {
+        TuppariClient client = new TuppariClient("appId", "accessKey", "secretKey");
+        client.setMaxInFlight(1);
+        client.setRateLimiter(new RateLimiter(1, 2));
+        client.getInFlightPermits().acquire();
+
+        CompletableFuture<Object> rejected = client.submitAsync("channelName", () -> new CompletableFuture<Object>());
+        assertTrue(rejected.isCompletedExceptionally());
+        assertThat(client.getRateLimiter().getAvailablePermits(), is(2));
+    }
+
+    @Test
+    public void testSubmitAsync_queuedByConcurrencyLimiter() throws Exception {
+        TuppariClient client = new TuppariClient("appId", "accessKey", "secretKey");
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 1);
+        limiter.setQueueTimeoutMillis(5000);
+        client.setConcurrencyLimiter(limiter);
+
+        CompletableFuture<String> first = new CompletableFuture<String>();
+        client.submitAsync(() -> first);
+        final AtomicLong started = new AtomicLong();
+        CompletableFuture<String> second = client.submitAsync(() -> {
+            started.incrementAndGet();
+            return CompletableFuture.completedFuture("second");
+        });
+        assertFalse("Queued without blocking the caller", second.isDone());
+        assertThat(started.get(), is(0L));
+
+        first.complete("first");
+        assertThat(second.get(5, TimeUnit.SECONDS), is("second"));
+        assertThat(limiter.getInFlight(), is(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSetCompressionThreshold_withNegative() {
+        TuppariClient client = new TuppariClient("appId", "accessKey", "secretKey");
+        client.setCompressionThreshold(-1);
+    }
+
+    @Test
+    public void testGetTransport() {
+        TuppariClient client = new TuppariClient("appId", "accessKey", "secretKey");
+        client.setConnectTimeout(1000);
+        client.setReadTimeout(2000);
+
+        Transport transport = client.getTransport();
+        assertThat(transport, instanceOf(JerseyTransport.class));
+        assertThat("Transport is shared", client.getTransport(), sameInstance(transport));
+        assertThat(client.getTransportConfig().getConnectTimeout(), is(1000));
+        assertThat(client.getTransportConfig().getReadTimeout(), is(2000));
+
+        client.close();
+    }
+
+    @Test
+    public void testSetTransport() {
+        TuppariClient client = new TuppariClient("appId", "accessKey", "secretKey");
+        JerseyTransport transport = new JerseyTransport();
+        client.setTransport(transport);
+        assertThat(client.getTransport(), sameInstance((Transport) transport));
+        transport.close();
+    }
+
+    @Test
+    public void testSetVirtualThreads() throws Exception {
+        TuppariClient client = new TuppariClient("appId", "accessKey", "secretKey");
+        if (!TuppariClient.isVirtualThreadSupported()) {
+            try {
+                client.setVirtualThreads(true);
+                fail("UnsupportedOperationException must be thrown");
+            } catch (UnsupportedOperationException e) {
+                assertFalse(client.isVirtualThreads());
+            }
+            return;
+        }
+
+        client.setVirtualThreads(true);
+        assertTrue(client.isVirtualThreads());
+        CompletableFuture<Boolean> virtual = CompletableFuture.supplyAsync(VirtualThreads::isCurrentThreadVirtual, client.getExecutor());
+        assertTrue(virtual.get());
+
+        client.setVirtualThreads(false);
+        CompletableFuture<Boolean> platform = CompletableFuture.supplyAsync(VirtualThreads::isCurrentThreadVirtual, client.getExecutor());
+        assertFalse(platform.get());
+        client.close();
+    }
+
+    @Test
+    public void testSendAsync_withVirtualThreads() throws Exception {
+        Assume.assumeTrue(TuppariClient.isVirtualThreadSupported());
+
+        TuppariStubServer stub = new TuppariStubServer().addCredentials("accessKey", "secretKey").start();
+        TuppariClient client = new TuppariClient("appId", "accessKey", "secretKey", stub.getUri());
+        client.setVirtualThreads(true);
+        client.setMaxInFlight(1000);
+        try {
+            TuppariChannel channel = client.join("channelName");
+            List<CompletableFuture<PublishResult>> futures = new ArrayList<CompletableFuture<PublishResult>>();
+            for (int i = 0; i < 1000; ++i) {
+                futures.add(channel.sendAsync("eventName", "message" + i));
+            }
+            for (int i = 0; i < futures.size(); ++i) {
+                assertThat(futures.get(i).get().getMessage(), is("message" + i));
+            }
+            assertThat(stub.getAcceptedCount(), is(1000L));
+        } finally {
+            client.close();
+            stub.close();
+        }
+    }
+
+    @Test
+    public void testPublish_withRateLimit() throws Exception {
+        TuppariStubServer stub = new TuppariStubServer().addCredentials("accessKey", "secretKey").start();
+        TuppariClient client = new TuppariClient("appId", "accessKey", "secretKey", stub.getUri());
+        client.setRateLimiter(new RateLimiter(1, 3));
+        client.setChannelRateLimit(1, 2);
+        try {
+            TuppariChannel first = client.join("first");
+            first.publish("eventName", "message");
+            first.send("eventName", "message");
+            try {
+                first.event("eventName").publish("message");
+                fail("TuppariException is expected");
+            } catch (TuppariException e) {
+                assertThat(e.getMessage(), is("Rate limit exceeded for channel first"));
+            }
+
+            TuppariChannel second = client.join("second");
+            second.publish("eventName", "message");
+            try {
+                second.sendAsync("eventName", "message").get();
+                fail("ExecutionException is expected");
+            } catch (java.util.concurrent.ExecutionException e) {
+                assertThat(e.getCause().getMessage(), is("Rate limit exceeded for application appId"));
+            }
+            assertThat("Rejected publishes are not sent", stub.getRequestCount(), is(3L));
+            assertThat(client.getChannelRateLimiter("first").getRejectedCount(), is(1L));
+            assertThat(client.getRateLimiter().getRejectedCount(), is(1L));
+        } finally {
+            client.close();
+            stub.close();
+        }
+    }
+
+    @Test
+    public void testPublish_withRateLimitWait() throws Exception {
+        TuppariStubServer stub = new TuppariStubServer().addCredentials("accessKey", "secretKey").start();
+        TuppariClient client = new TuppariClient("appId", "accessKey", "secretKey", stub.getUri());
+        client.setRateLimiter(new RateLimiter(50, 1));
+        client.setRateLimitWaitMillis(1000);
+        try {
+            TuppariChannel channel = client.join("channelName");
+            for (int i = 0; i < 3; ++i) {
+                channel.publish("eventName", "message" + i);
+            }
+            assertThat(stub.getAcceptedCount(), is(3L));
+        } finally {
+            client.close();
+            stub.close();
+        }
+    }
+
+    @Test
+    public void testAcquirePermit_refundsApplicationPermitAfterChannelWait() {
+        AtomicLong now = new AtomicLong();
+        TuppariClient client = new TuppariClient("appId", "accessKey", "secretKey");
+        client.setRateLimiter(new RateLimiter(1, 5, now::get));
+        client.setChannelRateLimit(1, 1);
+        client.acquirePermit("channelName", 10);
+        assertThat(client.getRateLimiter().getAvailablePermits(), is(4));
+        try {
+            client.acquirePermit("channelName", 10);
+            fail("TuppariException is expected");
+        } catch (TuppariException e) {
+            assertThat(e.getMessage(), is("Rate limit exceeded for channel channelName"));
+        }
+        assertThat("The application permit is returned", client.getRateLimiter().getAvailablePermits(), is(4));
+    }
+
+    @Test
+    public void testSendAsync_rateLimitWaitDoesNotHoldInFlightSlot() throws Exception {
+        TuppariStubServer stub = new TuppariStubServer().addCredentials("accessKey", "secretKey").start();
+        TuppariClient client = new TuppariClient("appId", "accessKey", "secretKey", stub.getUri());
+        client.setMaxInFlight(1);
+        try {
+            TuppariChannel channel = client.join("channelName");
+            channel.publish("eventName", "warm up");
+
+            client.setRateLimiter(new RateLimiter(4, 1));
+            client.setRateLimitWaitMillis(2000);
+            List<CompletableFuture<PublishResult>> futures = new ArrayList<CompletableFuture<PublishResult>>();
+            for (int i = 0; i < 3; ++i) {
+                futures.add(channel.sendAsync("eventName", "message" + i));
+            }
+            for (CompletableFuture<PublishResult> future : futures) {
+                future.get();
+            }
+            assertThat("Waiting publishes take their slot after the wait", stub.getAcceptedCount(), is(4L));
+        } finally {
+            client.close();
+            stub.close();
+        }
+    }
+
+    @Test
+    public void testEvictChannelRateLimiters() {
+        TuppariClient client = new TuppariClient("appId", "accessKey", "secretKey");
+        client.setChannelRateLimit(1, 1);
+        for (int i = 0; i < 10; ++i) {
+            client.getChannelRateLimiter("channel" + i);
+        }
+        RateLimiter busy = client.getChannelRateLimiter("busy");
+        assertTrue(busy.tryAcquire());
+        assertThat(client.getChannelRateLimiterCount(), is(11));
+
+        client.evictChannelRateLimiters();
+        assertThat("Only limiters with a full bucket are dropped", client.getChannelRateLimiterCount(), is(1));
+        assertThat(client.getChannelRateLimiter("busy"), sameInstance(busy));
+    }
+
+    @Test
+    public void testGetChannelRateLimiter_manyChannels() {
+        TuppariClient client = new TuppariClient("appId", "accessKey", "secretKey");
+        client.setChannelRateLimit(1, 1);
+        for (int i = 0; i < 10 * TuppariClient.MIN_CHANNEL_RATE_LIMITER_SWEEP_SIZE; ++i) {
+            client.getChannelRateLimiter("channel" + i);
+        }
+        assertTrue(client.getChannelRateLimiterCount() <= TuppariClient.MIN_CHANNEL_RATE_LIMITER_SWEEP_SIZE);
+    }
+
 }
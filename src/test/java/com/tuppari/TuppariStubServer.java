@@ -0,0 +1,441 @@
+package com.tuppari;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * In-process stub of the Tuppari "/messages" endpoint for tests, load and soak testing.
+ * <p/>
+ * Every request is authenticated by recomputing the Authorization header with {@link SignUtil}
+ * from the signed headers, the X-Tuppari-Date header and the raw body, and the body is echoed back
+ * on success, like the real server does for PublishMessage. Latency and errors can be injected.
+ * Gzip compressed bodies are verified as received and decompressed before being echoed.
+ * Delayed responses are completed by a scheduler, so the injected latency does not hold a worker
+ * thread and the stub keeps its throughput under load.
+ * <pre>
+ * TuppariStubServer stub = new TuppariStubServer();
+ * stub.addCredentials("accessKeyId", "secretKey");
+ * stub.start();
+ * TuppariClient client = new TuppariClient("appId", "accessKeyId", "secretKey", stub.getUri());
+ * </pre>
+ */
+public class TuppariStubServer implements Closeable {
+
+    static {
+        // Respond without waiting for the delayed ACK of the client, must be set before the first HttpServer is created
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private static final String AUTHORIZATION_PREFIX = "HMAC-SHA256 ";
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private final Map<String, Signer> credentials = new ConcurrentHashMap<String, Signer>();
+
+    private final LongAdder requests = new LongAdder();
+
+    private final LongAdder accepted = new LongAdder();
+
+    private final LongAdder rejected = new LongAdder();
+
+    private final LongAdder injectedErrors = new LongAdder();
+
+    private final LongAdder compressed = new LongAdder();
+
+    private final int port;
+
+    private final int threads;
+
+    private volatile boolean verifySignature = true;
+
+    private volatile long minLatencyMillis;
+
+    private volatile long maxLatencyMillis;
+
+    private volatile double errorRate;
+
+    private volatile int errorStatus = 503;
+
+    private HttpServer server;
+
+    private ExecutorService workers;
+
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Construct the stub listening on an ephemeral port of the loopback interface.
+     */
+    public TuppariStubServer() {
+        this(0, Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    /**
+     * @param port The port to listen on, or 0 for an ephemeral port
+     * @param threads The number of worker threads
+     */
+    public TuppariStubServer(int port, int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("threads must be greater than 0");
+        }
+        this.port = port;
+        this.threads = threads;
+    }
+
+    /**
+     * Register the access key id and its secret key accepted by the stub.
+     *
+     * @param accessKeyId The access key id
+     * @param accessSecretKey The access secret key
+     * @return This stub
+     */
+    public TuppariStubServer addCredentials(String accessKeyId, String accessSecretKey) {
+        credentials.put(accessKeyId, new Signer(accessSecretKey));
+        return this;
+    }
+
+    /**
+     * Enable or disable the verification of Authorization header, enabled by default.
+     *
+     * @param verifySignature false to accept every request
+     */
+    public void setVerifySignature(boolean verifySignature) {
+        this.verifySignature = verifySignature;
+    }
+
+    /**
+     * Delay every response by a uniformly distributed latency.
+     *
+     * @param minMillis The minimum latency in milliseconds
+     * @param maxMillis The maximum latency in milliseconds
+     */
+    public void setLatency(long minMillis, long maxMillis) {
+        if (minMillis < 0 || maxMillis < minMillis) {
+            throw new IllegalArgumentException("latency must satisfy 0 <= minMillis <= maxMillis");
+        }
+        this.minLatencyMillis = minMillis;
+        this.maxLatencyMillis = maxMillis;
+    }
+
+    /**
+     * Fail the given fraction of authenticated requests with the given status.
+     *
+     * @param errorRate The fraction of requests to fail, between 0.0 and 1.0
+     * @param errorStatus The HTTP status of the injected errors
+     */
+    public void setErrorInjection(double errorRate, int errorStatus) {
+        if (errorRate < 0.0 || errorRate > 1.0) {
+            throw new IllegalArgumentException("errorRate must be between 0.0 and 1.0");
+        }
+        this.errorRate = errorRate;
+        this.errorStatus = errorStatus;
+    }
+
+    /**
+     * Start listening.
+     *
+     * @return This stub
+     * @throws IOException if the port cannot be bound
+     */
+    public synchronized TuppariStubServer start() throws IOException {
+        if (server != null) {
+            throw new IllegalStateException("Already started");
+        }
+        workers = Executors.newFixedThreadPool(threads, new DaemonThreadFactory("tuppari-stub-worker"));
+        scheduler = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("tuppari-stub-scheduler"));
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 4096);
+        server.createContext(TuppariClient.TUPPARI_MESSAGE_PUBLISH_API_PATH, new MessagesHandler());
+        server.setExecutor(workers);
+        server.start();
+        return this;
+    }
+
+    /**
+     * @return The base URI of the stub, to be passed to {@link TuppariClient}
+     */
+    public URI getUri() {
+        if (server == null) {
+            throw new IllegalStateException("Not started");
+        }
+        return URI.create("http://127.0.0.1:" + server.getAddress().getPort());
+    }
+
+    /**
+     * @return The number of requests received
+     */
+    public long getRequestCount() {
+        return requests.sum();
+    }
+
+    /**
+     * @return The number of requests answered with 200
+     */
+    public long getAcceptedCount() {
+        return accepted.sum();
+    }
+
+    /**
+     * @return The number of requests rejected because of a missing or invalid signature
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * @return The number of requests failed by error injection
+     */
+    public long getInjectedErrorCount() {
+        return injectedErrors.sum();
+    }
+
+    /**
+     * @return The number of requests received with a gzip compressed body
+     */
+    public long getCompressedCount() {
+        return compressed.sum();
+    }
+
+    /**
+     * Reset all counters to zero.
+     */
+    public void resetCounts() {
+        requests.reset();
+        accepted.reset();
+        rejected.reset();
+        injectedErrors.reset();
+        compressed.reset();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (server != null) {
+            server.stop(0);
+            scheduler.shutdownNow();
+            workers.shutdownNow();
+            server = null;
+        }
+    }
+
+    /**
+     * Verify the Authorization header of the request.
+     *
+     * @return null if the signature is valid, otherwise the reason of the rejection
+     */
+    String verify(String method, URI uri, Map<String, String> requestHeaders, byte[] body) {
+        String authorization = requestHeaders.get("authorization");
+        if (authorization == null || !authorization.startsWith(AUTHORIZATION_PREFIX)) {
+            return "Missing Authorization header";
+        }
+
+        String credential = null;
+        String signedHeaders = null;
+        for (String part : authorization.substring(AUTHORIZATION_PREFIX.length()).split(",")) {
+            if (part.startsWith("Credential=")) {
+                credential = part.substring("Credential=".length());
+            } else if (part.startsWith("SignedHeaders=")) {
+                signedHeaders = part.substring("SignedHeaders=".length());
+            }
+        }
+        if (credential == null || signedHeaders == null) {
+            return "Malformed Authorization header";
+        }
+
+        Signer signer = credentials.get(credential);
+        if (signer == null) {
+            return "Unknown access key id";
+        }
+
+        Map<String, String> headers = new HashMap<String, String>();
+        for (String name : signedHeaders.split(";")) {
+            String value = requestHeaders.get(name);
+            if (value == null) {
+                return "Missing signed header: " + name;
+            }
+            headers.put(name, value);
+        }
+
+        if (requestHeaders.containsKey("content-encoding") && !headers.containsKey("content-encoding")) {
+            return "Content-Encoding must be signed";
+        }
+
+        String host = headers.get("host");
+        String date = headers.get("x-tuppari-date");
+        if (host == null || date == null) {
+            return "Host and X-Tuppari-Date must be signed";
+        }
+
+        RequestDate requestDate;
+        try {
+            requestDate = DateUtil.parseRFC1123(date);
+        } catch (RuntimeException e) {
+            return "Malformed X-Tuppari-Date header";
+        }
+
+        String expected = SignUtil.createAuthorizationHeader(method, host, uri.getPath(), uri.getQuery(), headers, body, requestDate.toDate(), credential, signer);
+        if (!MessageDigest.isEqual(expected.getBytes(StandardCharsets.UTF_8), authorization.getBytes(StandardCharsets.UTF_8))) {
+            return "Signature mismatch";
+        }
+        return null;
+    }
+
+    private class MessagesHandler implements HttpHandler {
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            requests.increment();
+            try {
+                byte[] body = readAll(exchange.getRequestBody());
+
+                if (!"POST".equals(exchange.getRequestMethod())) {
+                    respond(exchange, 405, error("Method not allowed"));
+                    return;
+                }
+
+                if (verifySignature) {
+                    Map<String, String> headers = new HashMap<String, String>();
+                    for (Map.Entry<String, List<String>> header : exchange.getRequestHeaders().entrySet()) {
+                        headers.put(header.getKey().toLowerCase(), header.getValue().get(0));
+                    }
+                    String reason = verify(exchange.getRequestMethod(), exchange.getRequestURI(), headers, body);
+                    if (reason != null) {
+                        rejected.increment();
+                        respond(exchange, 401, error(reason));
+                        return;
+                    }
+                }
+
+                String encoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+                if (encoding != null) {
+                    if (!"gzip".equalsIgnoreCase(encoding)) {
+                        respond(exchange, 415, error("Unsupported Content-Encoding: " + encoding));
+                        return;
+                    }
+                    compressed.increment();
+                    try {
+                        body = readAll(new GZIPInputStream(new ByteArrayInputStream(body)));
+                    } catch (IOException e) {
+                        respond(exchange, 400, error("Malformed gzip body"));
+                        return;
+                    }
+                }
+
+                int status = 200;
+                byte[] response = body;
+                double rate = errorRate;
+                if (rate > 0.0 && ThreadLocalRandom.current().nextDouble() < rate) {
+                    injectedErrors.increment();
+                    status = errorStatus;
+                    response = error("Injected error");
+                } else {
+                    accepted.increment();
+                }
+
+                long min = minLatencyMillis;
+                long max = maxLatencyMillis;
+                long delay = max > min ? ThreadLocalRandom.current().nextLong(min, max + 1) : min;
+                if (delay > 0) {
+                    final int delayedStatus = status;
+                    final byte[] delayedResponse = response;
+                    scheduler.schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            workers.execute(new Runnable() {
+                                @Override
+                                public void run() {
+                                    try {
+                                        respond(exchange, delayedStatus, delayedResponse);
+                                    } catch (IOException e) {
+                                        exchange.close();
+                                    }
+                                }
+                            });
+                        }
+                    }, delay, TimeUnit.MILLISECONDS);
+                } else {
+                    respond(exchange, status, response);
+                }
+            } catch (IOException e) {
+                exchange.close();
+                throw e;
+            } catch (RuntimeException e) {
+                respond(exchange, 500, error(String.valueOf(e.getMessage())));
+            }
+        }
+
+    }
+
+    private static void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(body);
+        out.close();
+    }
+
+    private static byte[] error(String message) {
+        return ("{\"error\":\"" + message.replace("\\", "\\\\").replace("\"", "\\\"") + "\"}").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = null;
+            byte[] buf = new byte[4096];
+            int n;
+            while ((n = in.read(buf)) != -1) {
+                if (out == null) {
+                    out = new ByteArrayOutputStream(n < buf.length ? n : buf.length * 2);
+                }
+                out.write(buf, 0, n);
+            }
+            return out != null ? out.toByteArray() : EMPTY;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static class DaemonThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        private final String prefix;
+
+        DaemonThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, prefix + "-" + threadNumber.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        }
+
+    }
+
+}
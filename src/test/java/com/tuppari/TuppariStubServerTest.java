@@ -0,0 +1,129 @@
+package com.tuppari;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TuppariStubServerTest {
+
+    private TuppariStubServer stub;
+
+    private TuppariClient client;
+
+    @Before
+    public void before() throws IOException {
+        stub = new TuppariStubServer().addCredentials("accessKeyId", "secretKey").start();
+        client = new TuppariClient("appId", "accessKeyId", "secretKey", stub.getUri());
+    }
+
+    @After
+    public void after() {
+        client.close();
+        stub.close();
+    }
+
+    @Test
+    public void testSend() {
+        Map<String, String> result = client.join("channelName").send("eventName", "message");
+
+        assertThat(result.get("applicationId"), is("appId"));
+        assertThat(result.get("channel"), is("channelName"));
+        assertThat(result.get("event"), is("eventName"));
+        assertThat(result.get("message"), is("message"));
+        assertThat(stub.getRequestCount(), is(1L));
+        assertThat(stub.getAcceptedCount(), is(1L));
+        assertThat(stub.getRejectedCount(), is(0L));
+    }
+
+    @Test
+    public void testSend_withInvalidSecretKey() {
+        TuppariClient invalid = new TuppariClient("appId", "accessKeyId", "invalidSecretKey", stub.getUri());
+        try {
+            invalid.join("channelName").send("eventName", "message");
+            fail("TuppariException must be thrown");
+        } catch (TuppariException e) {
+            assertThat(e.getStatus(), is(401));
+            assertTrue(e.getMessage(), e.getMessage().contains("Signature mismatch"));
+        } finally {
+            invalid.close();
+        }
+        assertThat(stub.getRejectedCount(), is(1L));
+    }
+
+    @Test
+    public void testSend_withUnknownAccessKeyId() {
+        TuppariClient invalid = new TuppariClient("appId", "unknown", "secretKey", stub.getUri());
+        try {
+            invalid.join("channelName").send("eventName", "message");
+            fail("TuppariException must be thrown");
+        } catch (TuppariException e) {
+            assertThat(e.getStatus(), is(401));
+        } finally {
+            invalid.close();
+        }
+    }
+
+    @Test
+    public void testSend_withVerificationDisabled() {
+        stub.setVerifySignature(false);
+        TuppariClient other = new TuppariClient("appId", "unknown", "secretKey", stub.getUri());
+        try {
+            assertThat(other.join("channelName").send("eventName", "message").get("event"), is("eventName"));
+        } finally {
+            other.close();
+        }
+    }
+
+    @Test
+    public void testErrorInjection() {
+        stub.setErrorInjection(1.0, 503);
+        try {
+            client.join("channelName").send("eventName", "message");
+            fail("TuppariException must be thrown");
+        } catch (TuppariException e) {
+            assertThat(e.getStatus(), is(503));
+        }
+        assertThat(stub.getInjectedErrorCount(), is(1L));
+        assertThat(stub.getAcceptedCount(), is(0L));
+    }
+
+    @Test
+    public void testLatency() {
+        stub.setLatency(100, 100);
+        long start = System.nanoTime();
+        client.join("channelName").send("eventName", "message");
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+        assertTrue("elapsed=" + elapsedMillis, elapsedMillis >= 100);
+    }
+
+    @Test
+    public void testConcurrentSend() {
+        TuppariChannel channel = client.join("channelName");
+        List<CompletableFuture<PublishResult>> futures = new ArrayList<CompletableFuture<PublishResult>>();
+        for (int i = 0; i < 50; ++i) {
+            futures.add(channel.sendAsync("eventName", "message" + i));
+        }
+        for (int i = 0; i < futures.size(); ++i) {
+            assertThat(futures.get(i).join().getMessage(), is("message" + i));
+        }
+        assertThat(stub.getAcceptedCount(), is(50L));
+        assertThat(stub.getRejectedCount(), is(0L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSetErrorInjection_withInvalidRate() {
+        stub.setErrorInjection(1.5, 503);
+    }
+
+}